@@ -0,0 +1,66 @@
+package io.left.timesync;
+
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.TextView;
+
+import java.util.TimeZone;
+
+/**
+ * Adapter rendering the {@link LogBuffer} entries in a recycling list view.
+ * Must be accessed from the UI thread only.
+ */
+final class LogAdapter extends BaseAdapter {
+
+    private final LayoutInflater inflater;
+    private final LogBuffer buffer;
+    private final TimeFormatter formatter;
+    private final char[] timeChars = new char[TimeFormatter.LENGTH];
+    private final StringBuilder line = new StringBuilder();
+
+    /**
+     * Creates the adapter.
+     *
+     * @param inflater  The layout inflater used to create the rows.
+     * @param buffer    The displayed log entries.
+     * @param timeZone  The time zone used to format the entries timestamps.
+     */
+    LogAdapter(LayoutInflater inflater, LogBuffer buffer, TimeZone timeZone) {
+        this.inflater = inflater;
+        this.buffer = buffer;
+        this.formatter = new TimeFormatter(timeZone);
+    }
+
+    @Override
+    public int getCount() {
+        return buffer.size();
+    }
+
+    @Override
+    public Object getItem(int position) {
+        return buffer.getMessage(position);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return position;
+    }
+
+    @Override
+    public View getView(int position, View convertView, ViewGroup parent) {
+        TextView txt = (TextView) convertView;
+        if (txt == null) {
+            txt = (TextView) inflater.inflate(R.layout.item_log, parent, false);
+        }
+
+        int length = formatter.format(buffer.getTimeStamp(position), timeChars, 0);
+        line.setLength(0);
+        line.append('[').append(timeChars, 0, length).append("] ")
+                .append(buffer.getMessage(position));
+        txt.setText(line.toString());
+
+        return txt;
+    }
+}
@@ -0,0 +1,105 @@
+package io.left.timesync;
+
+/**
+ * Fixed capacity ring buffer of timestamped log entries.
+ * When the buffer is full the oldest entry is overwritten.
+ * The class is not thread safe, callers have to synchronize the access.
+ */
+final class LogBuffer {
+
+    private final long[] timeStamps;
+    private final String[] messages;
+    private int head = 0;
+    private int size = 0;
+
+    /**
+     * Creates the log buffer.
+     *
+     * @param capacity  The maximum number of entries kept.
+     */
+    LogBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        timeStamps = new long[capacity];
+        messages = new String[capacity];
+    }
+
+    /**
+     * Appends an entry, evicting the oldest one if the buffer is full.
+     *
+     * @param timeStamp The entry timestamp in ms.
+     * @param message   The entry text.
+     */
+    void add(long timeStamp, String message) {
+        int index = (head + size) % messages.length;
+        timeStamps[index] = timeStamp;
+        messages[index] = message;
+        if (size < messages.length) {
+            size++;
+        } else {
+            head = (head + 1) % messages.length;
+        }
+    }
+
+    /**
+     * Moves all entries of this buffer to the end of the target buffer.
+     *
+     * @param target    The buffer to move the entries to.
+     */
+    void drainTo(LogBuffer target) {
+        for (int i = 0; i < size; i++) {
+            int index = (head + i) % messages.length;
+            target.add(timeStamps[index], messages[index]);
+            messages[index] = null;
+        }
+        head = 0;
+        size = 0;
+    }
+
+    /**
+     * Removes all entries.
+     */
+    void clear() {
+        for (int i = 0; i < messages.length; i++) {
+            messages[i] = null;
+        }
+        head = 0;
+        size = 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the timestamp of the entry, 0 is the oldest one.
+     *
+     * @param position  The entry position.
+     * @return          The entry timestamp in ms.
+     */
+    long getTimeStamp(int position) {
+        return timeStamps[indexOf(position)];
+    }
+
+    /**
+     * Returns the text of the entry, 0 is the oldest one.
+     *
+     * @param position  The entry position.
+     * @return          The entry text.
+     */
+    String getMessage(int position) {
+        return messages[indexOf(position)];
+    }
+
+    private int indexOf(int position) {
+        if (position < 0 || position >= size) {
+            throw new IndexOutOfBoundsException("position: " + position + ", size: " + size);
+        }
+        return (head + position) % messages.length;
+    }
+}
@@ -5,11 +5,15 @@ import static io.left.rightmesh.mesh.MeshManager.REMOVED;
 
 import android.app.Activity;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.text.method.ScrollingMovementMethod;
 import android.util.Log;
 import android.view.View;
 import android.widget.Button;
 import android.widget.CheckBox;
+import android.widget.ListView;
 import android.widget.TextView;
 import android.widget.Toast;
 
@@ -20,16 +24,17 @@ import io.left.rightmesh.mesh.MeshManager;
 import io.left.rightmesh.mesh.MeshStateListener;
 import io.left.rightmesh.util.MeshUtility;
 import io.left.rightmesh.util.RightMeshException;
+import io.left.tpsn.ClockSyncManager;
+import io.left.tpsn.MonotonicClock;
+import io.left.tpsn.SyncStateStore;
 import io.left.tpsn.TpsnMessageFactory;
 import io.left.tpsn.TpsnSyncManager;
 import io.reactivex.functions.Consumer;
 
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.io.File;
 import java.util.HashSet;
 import java.util.TimeZone;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 
 //android:gravity="bottom"
@@ -42,8 +47,25 @@ public class MainActivity extends Activity
 
     private static final String PATTERN = "CLOCK_SYNC";
 
+    // File the synchronization state is persisted to, for a fast restart.
+    private static final String SYNC_STATE_FILE = "tpsn_state";
+
     private static final String TAG = TpsnSyncManager.class.getCanonicalName();
 
+    // Maximum number of log entries kept on the screen.
+    private static final int LOG_CAPACITY = 500;
+
+    // The log view is refreshed at most once per this period (ms), roughly a display frame.
+    private static final long LOG_FLUSH_INTERVAL = 16;
+
+    // Boot time clock, unlike System.nanoTime() it keeps counting in the deep sleep.
+    private static final MonotonicClock ELAPSED_REALTIME = new MonotonicClock() {
+        @Override
+        public long nanoTime() {
+            return SystemClock.elapsedRealtime() * 1000000;
+        }
+    };
+
     // MeshManager instance - interface to the mesh network.
     private AndroidMeshManager mMeshManager = null;
 
@@ -51,39 +73,84 @@ public class MainActivity extends Activity
     private HashSet<MeshId> mUsers = new HashSet<>();
 
     private ClockSyncManager mClockSyncManager;
-    private Timer mTimer = new Timer(true);
-    private TimerTask mTimerClockTask;
-    private SimpleDateFormat mSdf = new SimpleDateFormat("hh:mm:ss:SSS");
+
+    private final Handler mUiHandler = new Handler(Looper.getMainLooper());
+
+    // Log entries produced by any thread, waiting for the next log view refresh.
+    private final LogBuffer mPendingLog = new LogBuffer(LOG_CAPACITY);
+
+    // Log entries displayed by the log view, accessed from the UI thread only.
+    private final LogBuffer mDisplayedLog = new LogBuffer(LOG_CAPACITY);
+    private final AtomicBoolean mLogFlushScheduled = new AtomicBoolean(false);
+    private LogAdapter mLogAdapter;
+
+    private final Runnable mFlushLogTask = new Runnable() {
+        @Override
+        public void run() {
+            flushLog();
+        }
+    };
+
+    // The GUI clock is formatted into a reused buffer, no allocations per tick.
+    private TimeFormatter mClockFormatter;
+    private final char[] mClockChars = new char[TimeFormatter.LENGTH];
+    private TextView mTxtTime;
+
+    private final Runnable mClockTickTask = new Runnable() {
+        @Override
+        public void run() {
+            updateClock();
+        }
+    };
+
+    private final Runnable mRestartClockTickTask = new Runnable() {
+        @Override
+        public void run() {
+            startClockTick();
+        }
+    };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
 
-        TextView textView = findViewById(R.id.txtLog);
-        textView.setMovementMethod(new ScrollingMovementMethod());
-
-        textView = findViewById(R.id.txtStatus);
+        TextView textView = findViewById(R.id.txtStatus);
         textView.setMovementMethod(new ScrollingMovementMethod());
 
         final TimeZone timeZone = TimeZone.getTimeZone("PST");
-        this.mSdf.setTimeZone(timeZone);
+        mClockFormatter = new TimeFormatter(timeZone);
+        mTxtTime = findViewById(R.id.txtTime);
+
+        mLogAdapter = new LogAdapter(getLayoutInflater(), mDisplayedLog, timeZone);
+        ListView lstLog = findViewById(R.id.lstLog);
+        lstLog.setAdapter(mLogAdapter);
 
         mMeshManager = AndroidMeshManager.getInstance(MainActivity.this,
                 MainActivity.this, PATTERN);
-        mClockSyncManager = TpsnSyncManager.getInstance(mMeshManager, APP_PORT,
-                new TpsnMessageFactory());
+        TpsnSyncManager tpsnSyncManager = TpsnSyncManager.getInstance(
+                new RightMeshTransport(mMeshManager, APP_PORT), new TpsnMessageFactory());
+        mClockSyncManager = tpsnSyncManager;
         mClockSyncManager.registerEventListener(MainActivity.this);
+        //The manager outlives the activity, a recreated activity must not restore over it
+        if (tpsnSyncManager.getStateStore() == null) {
+            tpsnSyncManager.setMonotonicClock(ELAPSED_REALTIME);
+            tpsnSyncManager.setStateStore(new SyncStateStore(new File(getFilesDir(),
+                    SYNC_STATE_FILE)));
+        }
     }
 
     public void clear(View v) {
-        TextView log = findViewById(R.id.txtLog);
-        log.setText("");
+        synchronized (mPendingLog) {
+            mPendingLog.clear();
+        }
+        mDisplayedLog.clear();
+        mLogAdapter.notifyDataSetChanged();
     }
 
     @Override
     public void clockSyncOffsetChanged(long clockOffset) {
-        startClockTick();
+        mUiHandler.post(mRestartClockTickTask);
     }
 
     @Override
@@ -119,6 +186,11 @@ public class MainActivity extends Activity
                 Button btnSend = (Button) findViewById(R.id.btnReset);
                 btnConfigure.setEnabled(true);
                 btnSend.setEnabled(true);
+
+                // Resume the synchronization right away if restored from the persisted state.
+                if (((TpsnSyncManager) mClockSyncManager).hasRestoredState()) {
+                    startBtnClicked(null);
+                }
             } catch (RightMeshException e) {
                 String status = "Error initializing the library" + e.toString();
                 Toast.makeText(getApplicationContext(), status, Toast.LENGTH_SHORT).show();
@@ -237,9 +309,18 @@ public class MainActivity extends Activity
         startClockTick();
     }
 
+    /**
+     * Called when activity goes off screen. Stops the GUI clock.
+     */
+    @Override
+    protected void onPause() {
+        super.onPause();
+        mUiHandler.removeCallbacks(mClockTickTask);
+    }
+
     /**
      * Called when the app is being closed (not just navigated away from). Shuts down
-     * the {@link AndroidMeshManager} instance.
+     * the {@link AndroidMeshManager} instance and the clock synchronization.
      */
     @Override
     protected void onDestroy() {
@@ -254,58 +335,63 @@ public class MainActivity extends Activity
         }
 
         mClockSyncManager.unregisterEventListener(MainActivity.this);
+        mClockSyncManager.shutdown();
+        mUiHandler.removeCallbacks(mFlushLogTask);
     }
 
+    /**
+     * (Re)starts the GUI clock ticking. Called on the UI thread.
+     */
     private void startClockTick() {
-        if (mTimerClockTask != null) {
-            mTimerClockTask.cancel();
-        }
-
-        mTimerClockTask = new TimerTask() {
-            @Override
-            public void run() {
-                updateClock();
-            }
-        };
-
-        long clockOffset = mClockSyncManager.getClockOffset();
-        //Log.d(TAG, "--> clockOffset: "+clockOffset);
-        long droppedMillis = 1000 * (System.currentTimeMillis() / 1000);
-        droppedMillis += 3 * 1000;
-        droppedMillis -= (clockOffset % 1000);
-        mTimer.scheduleAtFixedRate(mTimerClockTask,  new Date(droppedMillis), 1000);
+        mUiHandler.removeCallbacks(mClockTickTask);
+        updateClock();
     }
 
     /**
-     * Updates the GUI Clock.
+     * Updates the GUI Clock and schedules the next tick. Called on the UI thread.
+     * The next tick is computed from the synchronized time on every update,
+     * so the clock never drifts and follows the offset changes.
      */
     private void updateClock() {
-        String timeStr = mSdf.format(new Date(System.currentTimeMillis()
-                + mClockSyncManager.getClockOffset()));
+        long now = System.currentTimeMillis() + mClockSyncManager.getClockOffset();
+        int length = mClockFormatter.format(now, mClockChars, 0);
+        mTxtTime.setText(mClockChars, 0, length);
 
-        if (timeStr == null) {
-            return;
+        long millis = now % 1000;
+        if (millis < 0) {
+            millis += 1000;
         }
-
-        final String fTimeStr = timeStr;
-        runOnUiThread(new Runnable() {
-            @Override
-            public void run() {
-                TextView txt = findViewById(R.id.txtTime);
-                txt.setText(fTimeStr);
-            }
-        });
+        mUiHandler.postAtTime(mClockTickTask, SystemClock.uptimeMillis() + 1000 - millis);
     }
 
+    /**
+     * Adds the text to the log view.
+     * May be called from any thread, the log view refresh is batched to once per frame.
+     *
+     * @param text The log text.
+     */
     private void print(String text) {
         Log.d(TAG, text);
-        final String ftext = "[" + mSdf.format(System.currentTimeMillis()) + "] " + text + "\n";
-        runOnUiThread(new Runnable() {
-            @Override
-            public void run() {
-                TextView txt = findViewById(R.id.txtLog);
-                txt.append(ftext);
+        synchronized (mPendingLog) {
+            mPendingLog.add(System.currentTimeMillis(), text);
+        }
+
+        if (mLogFlushScheduled.compareAndSet(false, true)) {
+            mUiHandler.postDelayed(mFlushLogTask, LOG_FLUSH_INTERVAL);
+        }
+    }
+
+    /**
+     * Moves the pending log entries to the log view. Called on the UI thread.
+     */
+    private void flushLog() {
+        mLogFlushScheduled.set(false);
+        synchronized (mPendingLog) {
+            if (mPendingLog.isEmpty()) {
+                return;
             }
-        });
+            mPendingLog.drainTo(mDisplayedLog);
+        }
+        mLogAdapter.notifyDataSetChanged();
     }
 }
\ No newline at end of file
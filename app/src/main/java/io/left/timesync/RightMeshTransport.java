@@ -0,0 +1,148 @@
+package io.left.timesync;
+
+import static io.left.rightmesh.mesh.MeshManager.DATA_RECEIVED;
+
+import io.left.rightmesh.id.MeshId;
+import io.left.rightmesh.mesh.MeshManager;
+import io.left.rightmesh.proto.MeshDnsProtos;
+import io.left.rightmesh.util.RightMeshException;
+import io.left.tpsn.TpsnTransport;
+import io.left.tpsn.TransportException;
+import io.reactivex.functions.Consumer;
+
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link TpsnTransport} over the RightMesh {@link MeshManager}, bound to an application port.
+ */
+public class RightMeshTransport implements TpsnTransport {
+
+    private final MeshManager meshManager;
+    private final int appPort;
+
+    // MeshIds of the known peers by their string Ids.
+    private final ConcurrentHashMap<String, MeshId> meshIds = new ConcurrentHashMap<>();
+    private volatile Receiver receiver;
+
+    /**
+     * Creates the transport.
+     *
+     * @param meshManager   The mesh manager object.
+     * @param appPort       The application port number.
+     */
+    public RightMeshTransport(MeshManager meshManager, int appPort) {
+        this.meshManager = meshManager;
+        this.appPort = appPort;
+
+        meshManager.on(DATA_RECEIVED, new Consumer() {
+            @Override
+            public void accept(Object o) throws Exception {
+                handleDataReceived((MeshManager.RightMeshEvent) o);
+            }
+        });
+    }
+
+    @Override
+    public String getOwnId() {
+        MeshId ownId = meshManager.getUuid();
+        return ownId == null ? null : toId(ownId);
+    }
+
+    @Override
+    public Set<String> getPeers() throws TransportException {
+        Set<MeshId> peers;
+        try {
+            peers = meshManager.getPeers(appPort);
+        } catch (RightMeshException e) {
+            throw new TransportException("Failed to get Peers.", e);
+        }
+
+        Set<String> peerIds = new HashSet<>();
+        if (peers != null) {
+            for (MeshId peerMeshId : peers) {
+                peerIds.add(toId(peerMeshId));
+            }
+        }
+        return peerIds;
+    }
+
+    @Override
+    public String getNextHopPeer(String peerId) throws TransportException {
+        try {
+            MeshId nextHop = meshManager.getNextHopPeer(toMeshId(peerId));
+            return nextHop == null ? null : toId(nextHop);
+        } catch (RightMeshException e) {
+            throw new TransportException("Failed to getNextHopPeer for node: " + peerId, e);
+        }
+    }
+
+    @Override
+    public Set<Role> getRoles(String peerId) throws TransportException {
+        HashMap<String, MeshDnsProtos.MeshRequest.Role> meshRoles;
+        try {
+            meshRoles = meshManager.getRole(toMeshId(peerId));
+        } catch (RightMeshException e) {
+            throw new TransportException("Failed to get Role for node: " + peerId, e);
+        }
+
+        Set<Role> roles = EnumSet.noneOf(Role.class);
+        if (meshRoles.containsValue(MeshDnsProtos.MeshRequest.Role.CLIENT)) {
+            roles.add(Role.CLIENT);
+        }
+        if (meshRoles.containsValue(MeshDnsProtos.MeshRequest.Role.MASTER)) {
+            roles.add(Role.MASTER);
+        }
+        if (meshRoles.containsValue(MeshDnsProtos.MeshRequest.Role.ROUTER)) {
+            roles.add(Role.ROUTER);
+        }
+        return roles;
+    }
+
+    @Override
+    public void send(String peerId, byte[] data) throws TransportException {
+        try {
+            meshManager.sendDataReliable(toMeshId(peerId), appPort, data);
+        } catch (RightMeshException e) {
+            throw new TransportException("Failed to sendDataReliable: peerUuid:" + peerId
+                    + " appPort:" + appPort, e);
+        }
+    }
+
+    @Override
+    public void setReceiver(Receiver receiver) {
+        this.receiver = receiver;
+    }
+
+    /**
+     * Handles Data received from the Mesh Network.
+     * @param e The right mesh event.
+     */
+    private void handleDataReceived(MeshManager.RightMeshEvent e) {
+        long receiveTime = System.currentTimeMillis();
+        Receiver currentReceiver = receiver;
+        if (currentReceiver == null) {
+            return;
+        }
+
+        MeshManager.DataReceivedEvent event = (MeshManager.DataReceivedEvent) e;
+        currentReceiver.onDataReceived(toId(event.peerUuid), event.data, receiveTime);
+    }
+
+    private String toId(MeshId meshId) {
+        String peerId = meshId.toString();
+        meshIds.put(peerId, meshId);
+        return peerId;
+    }
+
+    private MeshId toMeshId(String peerId) throws TransportException {
+        MeshId meshId = meshIds.get(peerId);
+        if (meshId == null) {
+            throw new TransportException("Unknown peer: " + peerId);
+        }
+        return meshId;
+    }
+}
@@ -0,0 +1,71 @@
+package io.left.timesync;
+
+import java.util.TimeZone;
+
+/**
+ * Formats timestamps as "hh:mm:ss:SSS" into a caller provided char buffer,
+ * without allocating any objects per call.
+ * Unlike SimpleDateFormat it keeps no per call state, so it can be shared between threads.
+ */
+final class TimeFormatter {
+
+    /**
+     * The number of chars written by {@link #format(long, char[], int)}.
+     */
+    static final int LENGTH = 12;
+
+    private static final long MILLIS_PER_DAY = 24 * 60 * 60 * 1000;
+
+    private final TimeZone timeZone;
+
+    /**
+     * Creates the formatter.
+     *
+     * @param timeZone  The time zone the timestamps are displayed in.
+     */
+    TimeFormatter(TimeZone timeZone) {
+        this.timeZone = timeZone;
+    }
+
+    /**
+     * Formats the timestamp.
+     *
+     * @param time      The timestamp, ms since the epoch.
+     * @param dest      The destination buffer, at least {@link #LENGTH} chars after offset.
+     * @param offset    The position in the buffer to write to.
+     * @return          The number of chars written.
+     */
+    int format(long time, char[] dest, int offset) {
+        long millisOfDay = (time + timeZone.getOffset(time)) % MILLIS_PER_DAY;
+        if (millisOfDay < 0) {
+            millisOfDay += MILLIS_PER_DAY;
+        }
+
+        int millis = (int) (millisOfDay % 1000);
+        int seconds = (int) (millisOfDay / 1000 % 60);
+        int minutes = (int) (millisOfDay / (60 * 1000) % 60);
+        int hours = (int) (millisOfDay / (60 * 60 * 1000) % 12);
+        if (hours == 0) {
+            hours = 12;
+        }
+
+        int pos = offset;
+        pos = writeDigits(hours, 2, dest, pos);
+        dest[pos++] = ':';
+        pos = writeDigits(minutes, 2, dest, pos);
+        dest[pos++] = ':';
+        pos = writeDigits(seconds, 2, dest, pos);
+        dest[pos++] = ':';
+        writeDigits(millis, 3, dest, pos);
+
+        return LENGTH;
+    }
+
+    private static int writeDigits(int value, int digits, char[] dest, int pos) {
+        for (int i = digits - 1; i >= 0; i--) {
+            dest[pos + i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        return pos + digits;
+    }
+}
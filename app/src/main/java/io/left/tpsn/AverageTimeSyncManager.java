@@ -0,0 +1,510 @@
+package io.left.tpsn;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Implementation of the Average TimeSync algorithm, a consensus based synchronization
+ * that needs no root and no tree. The algorithm is described in:
+ * L. Schenato, F. Fiorentin, Average TimeSynch: A consensus-based protocol
+ * for clock synchronization in wireless sensor networks, Automatica 47(9), 2011.
+ * Every node keeps a virtual clock, an affine function of its local clock, and periodically
+ * sends its local and virtual time to its neighbors. On every reception the node estimates
+ * the relative skew of the neighbor's local clock and moves its own skew compensation
+ * and offset toward the neighbor's ones, so all nodes converge on the average virtual clock.
+ * Joining and leaving nodes only change the set of the neighbors being averaged,
+ * there is no election and nothing to rebuild.
+ * The message delays are not compensated, they bias the virtual clocks by their average.
+ * It runs over the same {@link TpsnTransport} and messages factory as {@link TpsnSyncManager},
+ * so both can be compared on the same topologies.
+ */
+public final class AverageTimeSyncManager implements ClockSyncManager {
+
+    /**
+     * Time period (ms) between the broadcasts of the virtual clock to the neighbors.
+     */
+    private static final long BROADCAST_PERIOD = 1000;
+
+    /**
+     * The broadcasts are delayed by a random value (ms) between 0 and this bound,
+     * so the neighbors don't send at the same time.
+     */
+    private static final int BROADCAST_JITTER = 200;
+
+    /**
+     * Time (ms) without messages after which the neighbor is considered gone.
+     */
+    private static final long NEIGHBOR_TIMEOUT = 5 * BROADCAST_PERIOD;
+
+    /**
+     * Minimal local time (ms) between the two receptions the relative skew is measured over,
+     * the ms resolution of the timestamps is too coarse for the shorter intervals.
+     */
+    private static final long SKEW_INTERVAL = 10 * 1000;
+
+    /**
+     * Bound of the relative skew between two local clocks, the measurements outside of it
+     * are dropped and the skew compensation is kept within it.
+     */
+    private static final double MAX_RELATIVE_SKEW = ClockSnapshot.CLOCK_DRIFT_BOUND_PPM / 1e6;
+
+    /**
+     * Weight of the previous relative skew estimate in the new one,
+     * the measurements are noisy with the jitter of the message delays.
+     */
+    private static final double RELATIVE_SKEW_WEIGHT = 0.9;
+
+    /**
+     * Weight of the own skew compensation in the average with the neighbor's one.
+     */
+    private static final double SKEW_WEIGHT = 0.5;
+
+    /**
+     * Weight of the own virtual time in the average with the neighbor's one.
+     */
+    private static final double OFFSET_WEIGHT = 0.5;
+
+    private static final Logger LOGGER = Logger.getLogger(AverageTimeSyncManager.class.getName());
+
+    private final Random random = new Random();
+    private final TpsnTransport transport;
+    private final BaseTpsnMessageFactory messagesFactory;
+    private final TpsnScheduler.Timeout broadcastTimeout;
+    private HashedWheelScheduler ownScheduler = null;
+    private final Map<String, Neighbor> neighbors = new HashMap<>();
+    private final OffsetHistory history = new OffsetHistory(OffsetHistory.DEFAULT_CAPACITY);
+    //Orders the snapshot updates and their publishing
+    private final Object snapshotLock = new Object();
+    private volatile ClockSnapshot snapshot = ClockSnapshot.UNSYNCHRONIZED;
+    private volatile boolean started = false;
+    private volatile SharedClockPublisher sharedClockPublisher = null;
+
+    //The virtual clock: virtualTime = anchorVirtualTime + skew * (localTime - anchorLocalTime)
+    private long anchorLocalTime;
+    private double anchorVirtualTime;
+    private double skew = 1;
+    private long notifiedOffset = 0;
+
+    private CopyOnWriteArraySet<EventListener> eventListeners = new CopyOnWriteArraySet<>();
+
+    /**
+     * Creates the manager with its own timer thread.
+     *
+     * @param transport         The network transport.
+     * @param messagesFactory   The messages factory.
+     */
+    public AverageTimeSyncManager(TpsnTransport transport,
+                                  BaseTpsnMessageFactory messagesFactory) {
+        this(transport, messagesFactory, new HashedWheelScheduler());
+    }
+
+    private AverageTimeSyncManager(TpsnTransport transport, BaseTpsnMessageFactory messagesFactory,
+                                   HashedWheelScheduler scheduler) {
+        this(transport, messagesFactory, (TpsnScheduler) scheduler);
+        ownScheduler = scheduler;
+    }
+
+    /**
+     * Creates the manager.
+     *
+     * @param transport         The network transport.
+     * @param messagesFactory   The messages factory.
+     * @param scheduler         The scheduler of the broadcasts.
+     */
+    public AverageTimeSyncManager(TpsnTransport transport, BaseTpsnMessageFactory messagesFactory,
+                                  TpsnScheduler scheduler) {
+        this.transport = transport;
+        this.messagesFactory = messagesFactory;
+        this.anchorLocalTime = System.currentTimeMillis();
+        this.anchorVirtualTime = anchorLocalTime;
+
+        broadcastTimeout = scheduler.newTimeout(new Runnable() {
+            @Override
+            public void run() {
+                broadcast();
+            }
+        });
+        transport.setReceiver(new TpsnTransport.Receiver() {
+            @Override
+            public void onDataReceived(String peerId, byte[] data, long receiveTime) {
+                handleDataReceived(peerId, data, receiveTime);
+            }
+        });
+    }
+
+    /**
+     * Starts the synchronization, the virtual clock starts at the local time.
+     *
+     * @return  True if succeeded to start, otherwise False.
+     */
+    @Override
+    public boolean start() {
+        if (transport.getOwnId() == null) {
+            sendMessageEvent("Failed to start the synchronization. The transport isn't connected.");
+            return false;
+        }
+
+        started = true;
+        broadcastTimeout.schedule(random.nextInt(BROADCAST_JITTER));
+        sendMessageEvent("The average time synchronization started.");
+        return true;
+    }
+
+    @Override
+    public boolean restart() {
+        reset();
+        return start();
+    }
+
+    @Override
+    public void reset() {
+        started = false;
+        broadcastTimeout.cancel();
+        synchronized (this) {
+            neighbors.clear();
+            anchorLocalTime = System.currentTimeMillis();
+            anchorVirtualTime = anchorLocalTime;
+            skew = 1;
+            notifiedOffset = 0;
+        }
+        history.clear();
+        setSnapshot(ClockSnapshot.UNSYNCHRONIZED);
+
+        sendOffsetChangedEvent(0);
+        sendMessageEvent("The internal synchronization data was reset.");
+    }
+
+    /**
+     * Resets the synchronization and stops the timer thread of the manager.
+     */
+    @Override
+    public void shutdown() {
+        reset();
+        if (ownScheduler != null) {
+            ownScheduler.shutdown();
+        }
+    }
+
+    /**
+     * Returns the current offset of the virtual clock, which runs at its skew since
+     * the last update.
+     * @return The clock offset in ms.
+     */
+    @Override
+    public long getClockOffset() {
+        return snapshot.getOffset(System.currentTimeMillis());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long now() {
+        return snapshot.getSyncedTime(System.currentTimeMillis());
+    }
+
+    /**
+     * {@inheritDoc}
+     * The error bound is the largest disagreement with the neighbors
+     * at their last messages, growing with the time elapsed since the last update.
+     */
+    @Override
+    public SyncedTime now(SyncedTime result) {
+        return snapshot.fill(System.currentTimeMillis(), result);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void toSyncedTime(long[] timeStamps, int from, int to) {
+        history.toSyncedTime(timeStamps, from, to);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void nanoTimeToSyncedTime(long[] nanoTimes, int from, int to) {
+        history.nanoTimeToSyncedTime(nanoTimes, from, to, System.currentTimeMillis(),
+                System.nanoTime());
+    }
+
+    /**
+     * {@inheritDoc}
+     * A node knows only its own health, there is no tree to aggregate it over.
+     */
+    @Override
+    public SyncHealth getSyncHealth() {
+        ClockSnapshot current = snapshot;
+        return SyncHealth.ofNode(0, current.getErrorBound(System.currentTimeMillis()),
+                current.isSynchronized());
+    }
+
+    /**
+     * Returns the current state of the virtual clock.
+     * @return The clock snapshot.
+     */
+    public ClockSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Sets the publisher of the clock snapshots to the other processes of the device.
+     * The current snapshot is published at once.
+     * @param publisher The publisher, or null to stop publishing.
+     */
+    public void setSharedClockPublisher(SharedClockPublisher publisher) {
+        synchronized (snapshotLock) {
+            this.sharedClockPublisher = publisher;
+            if (publisher != null) {
+                publisher.publish(snapshot, 0);
+            }
+        }
+    }
+
+    /**
+     * Returns the skew compensation of the virtual clock.
+     * @return The skew compensation, 1 if the clock isn't compensated.
+     */
+    public synchronized double getSkew() {
+        return skew;
+    }
+
+    /**
+     * Returns the number of the neighbors heard within the neighbor timeout.
+     * @return The number of the neighbors.
+     */
+    public synchronized int getNeighborCount() {
+        return neighbors.size();
+    }
+
+    private void broadcast() {
+        if (!started) {
+            return;
+        }
+        broadcastTimeout.schedule(BROADCAST_PERIOD + random.nextInt(BROADCAST_JITTER));
+
+        Set<String> peers;
+        try {
+            peers = transport.getPeers();
+        } catch (TransportException e) {
+            sendMessageEvent("Failed to get the peers. See log for details.");
+            LOGGER.log(Level.SEVERE, "Failed to get the peers.", e);
+            return;
+        }
+
+        long localTime = System.currentTimeMillis();
+        expireNeighbors(localTime);
+
+        BaseTpsnMessage msg = messagesFactory.createMessage(TpsnMessageType.AVERAGE_SYNC);
+        msg.setDomainId(TpsnSyncManager.DEFAULT_DOMAIN);
+        synchronized (this) {
+            msg.setTimeStamp1(localTime);
+            msg.setTimeStamp2(Math.round(getVirtualTime(localTime)));
+            msg.setSkew(skew);
+        }
+        byte[] data = messagesFactory.encode(msg);
+
+        for (String peerId : peers) {
+            try {
+                //Only the direct neighbors are averaged, like on a radio broadcast
+                if (peerId.equals(transport.getNextHopPeer(peerId))) {
+                    transport.send(peerId, data);
+                }
+            } catch (TransportException e) {
+                sendMessageEvent("Failed to send data to node: " + peerId
+                        + ". See log for details.");
+                LOGGER.log(Level.SEVERE, "Failed to send data to node: " + peerId, e);
+            }
+        }
+    }
+
+    private void handleDataReceived(String peerId, byte[] data, long receiveTime) {
+        if (!started || !TpsnFrame.isFrame(data)) {
+            return;
+        }
+
+        BaseTpsnMessage msg = messagesFactory.decode(data);
+        if (msg == null || msg.getType() != TpsnMessageType.AVERAGE_SYNC) {
+            return;
+        }
+
+        long offset;
+        long error;
+        double offsetSkew;
+        boolean newNeighbor = false;
+        synchronized (this) {
+            Neighbor neighbor = neighbors.get(peerId);
+            if (neighbor == null) {
+                neighbor = new Neighbor(msg.getTimeStamp1(), receiveTime);
+                neighbors.put(peerId, neighbor);
+                newNeighbor = true;
+            }
+            neighbor.lastReceiveTime = receiveTime;
+            neighbor.updateRelativeSkew(msg.getTimeStamp1(), receiveTime);
+
+            //Continues the virtual clock from the reception with the averaged skew
+            anchorVirtualTime = getVirtualTime(receiveTime);
+            anchorLocalTime = receiveTime;
+            if (neighbor.hasRelativeSkew) {
+                skew = SKEW_WEIGHT * skew
+                        + (1 - SKEW_WEIGHT) * neighbor.relativeSkew * msg.getSkew();
+                skew = Math.max(1 - MAX_RELATIVE_SKEW, Math.min(1 + MAX_RELATIVE_SKEW, skew));
+            }
+
+            double disagreement = msg.getTimeStamp2() - anchorVirtualTime;
+            neighbor.disagreement = Math.abs(disagreement);
+            anchorVirtualTime += (1 - OFFSET_WEIGHT) * disagreement;
+
+            offset = Math.round(anchorVirtualTime) - receiveTime;
+            offsetSkew = skew - 1;
+            error = 0;
+            for (Neighbor other : neighbors.values()) {
+                error = Math.max(error, Math.round(other.disagreement));
+            }
+        }
+
+        //The listeners are called out of the lock
+        if (newNeighbor) {
+            sendMessageEvent("New neighbor: " + peerId);
+        }
+
+        history.add(receiveTime, offset, error);
+        //The snapshot runs at the skew of the virtual clock, like getVirtualTime()
+        setSnapshot(new ClockSnapshot(receiveTime, offset, error,
+                ClockSnapshot.CLOCK_DRIFT_BOUND_PPM, true).withSkew(offsetSkew));
+
+        if (Math.abs(offset - notifiedOffset) >= ClockDiscipline.DEFAULT_STEP_THRESHOLD) {
+            notifiedOffset = offset;
+            sendOffsetChangedEvent(offset);
+        }
+    }
+
+    /**
+     * Sets the snapshot and publishes it under one lock,
+     * so the published snapshot is always the current one.
+     */
+    private void setSnapshot(ClockSnapshot newSnapshot) {
+        synchronized (snapshotLock) {
+            snapshot = newSnapshot;
+            SharedClockPublisher publisher = sharedClockPublisher;
+            if (publisher != null) {
+                publisher.publish(newSnapshot, 0);
+            }
+        }
+    }
+
+    /**
+     * Returns the virtual time at the local time. Must be called holding the lock.
+     */
+    private double getVirtualTime(long localTime) {
+        return anchorVirtualTime + skew * (localTime - anchorLocalTime);
+    }
+
+    private void expireNeighbors(long localTime) {
+        List<String> expired = new ArrayList<>();
+        synchronized (this) {
+            Iterator<Map.Entry<String, Neighbor>> it = neighbors.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, Neighbor> entry = it.next();
+                if (localTime - entry.getValue().lastReceiveTime > NEIGHBOR_TIMEOUT) {
+                    it.remove();
+                    expired.add(entry.getKey());
+                }
+            }
+        }
+
+        for (String peerId : expired) {
+            sendMessageEvent("Neighbor left: " + peerId);
+        }
+    }
+
+    private void sendMessageEvent(String message) {
+        for (EventListener listener : eventListeners) {
+            try {
+                listener.debugMessagereceived(message);
+                // CHECKSTYLE IGNORE IllegalCatchCheck
+            } catch (Exception ex) {
+                // CHECKSTYLE END IGNORE IllegalCatchCheck
+                sendMessageEvent("Failed to invoke debugMessageReceived Event. "
+                        + "See log for details.");
+                LOGGER.log(Level.SEVERE, ex.getMessage(), ex);
+                unregisterEventListener(listener);
+            }
+        }
+    }
+
+    private void sendOffsetChangedEvent(long clockOffset) {
+        for (EventListener listener : eventListeners) {
+            try {
+                listener.clockSyncOffsetChanged(clockOffset);
+                // CHECKSTYLE IGNORE IllegalCatchCheck
+            } catch (Exception ex) {
+                // CHECKSTYLE END IGNORE IllegalCatchCheck
+                sendMessageEvent("Failed to invoke clockSyncOffsetChanged event. "
+                        + "See log for details.");
+                LOGGER.log(Level.SEVERE, ex.getMessage(), ex);
+                unregisterEventListener(listener);
+            }
+        }
+    }
+
+    @Override
+    public boolean registerEventListener(ClockSyncManager.EventListener listener) {
+        return eventListeners.add(listener);
+    }
+
+    @Override
+    public boolean unregisterEventListener(ClockSyncManager.EventListener listener) {
+        return eventListeners.remove(listener);
+    }
+
+    /**
+     * The state of a neighbor, its relative skew is the rate of its local clock
+     * measured by the own local clock.
+     */
+    private static final class Neighbor {
+        private long referenceSendTime;
+        private long referenceReceiveTime;
+        private long lastReceiveTime;
+        private double relativeSkew = 1;
+        private boolean hasRelativeSkew = false;
+        private double disagreement = 0;
+
+        Neighbor(long sendTime, long receiveTime) {
+            this.referenceSendTime = sendTime;
+            this.referenceReceiveTime = receiveTime;
+        }
+
+        void updateRelativeSkew(long sendTime, long receiveTime) {
+            long interval = receiveTime - referenceReceiveTime;
+            if (interval < SKEW_INTERVAL) {
+                return;
+            }
+
+            double measured = (double) (sendTime - referenceSendTime) / interval;
+            referenceSendTime = sendTime;
+            referenceReceiveTime = receiveTime;
+            if (Math.abs(measured - 1) > MAX_RELATIVE_SKEW) {
+                return;
+            }
+
+            if (hasRelativeSkew) {
+                relativeSkew = RELATIVE_SKEW_WEIGHT * relativeSkew
+                        + (1 - RELATIVE_SKEW_WEIGHT) * measured;
+            } else {
+                relativeSkew = measured;
+                hasRelativeSkew = true;
+            }
+        }
+    }
+}
@@ -13,6 +13,20 @@ public abstract class BaseTpsnMessage {
      */
     public abstract TpsnMessageType getType();
 
+    /**
+     * Returns the Id of the sync domain the message belongs to.
+     *
+     * @return The sync domain Id.
+     */
+    public abstract int getDomainId();
+
+    /**
+     * Returns the sync epoch of the sender node, advanced by the root on every start.
+     *
+     * @return The sync epoch, 0 if the sender doesn't know it yet.
+     */
+    public abstract int getEpoch();
+
     /**
      * Returns the Tpsn Tree level.
      *
@@ -42,11 +56,107 @@ public abstract class BaseTpsnMessage {
     public abstract long getTimeStamp3();
 
     /**
-     * Returns the Id of the Receiver node.
+     * Returns the cumulative clock error estimate of the sender node.
+     *
+     * @return The error in ms, or Long.MAX_VALUE if unknown.
+     */
+    public abstract long getError();
+
+    /**
+     * Returns the last round trip delay of the sender node to its parent.
+     *
+     * @return The round trip delay in ms, or 0 if unknown.
+     */
+    public abstract long getRoundTripDelay();
+
+    /**
+     * Returns the offset residual of the last exchange of the sender node with its parent,
+     * the difference between the obtained offset and the one predicted by its history.
+     *
+     * @return The residual in ms, or 0 if unknown.
+     */
+    public abstract long getResidual();
+
+    /**
+     * Returns the skew compensation of the sender's virtual clock,
+     * exchanged by the {@link AverageTimeSyncManager} nodes.
+     *
+     * @return The skew compensation, 1 if the clock isn't compensated.
+     */
+    public abstract double getSkew();
+
+    /**
+     * Returns the Id of the root that started the Level-Discovery wave.
+     *
+     * @return The root Id, or null if unknown.
+     */
+    public abstract String getWaveOriginId();
+
+    /**
+     * Returns the sequence number of the Level-Discovery wave, advanced by its root.
+     *
+     * @return The wave sequence number.
+     */
+    public abstract int getWaveSequence();
+
+    /**
+     * Returns the sync health of the sender's subtree, reported to its parent.
+     *
+     * @return The sync health, or null if not set.
+     */
+    public abstract SyncHealth getHealth();
+
+    /**
+     * Returns the Id of the Receiver node. The Health report carries the sender's parent.
      * @return The Id of the Receiver node.
      */
     public abstract String getReceiverId();
 
+    /**
+     * Returns the number of the per child entries of the aggregated Ack message.
+     *
+     * @return The number of entries.
+     */
+    public abstract int getAckCount();
+
+    /**
+     * Returns the Id of the Receiver node of the aggregated Ack message entry.
+     *
+     * @param index     The entry index.
+     * @return The Id of the Receiver node.
+     */
+    public abstract String getReceiverId(int index);
+
+    /**
+     * Returns the Tpsn Message Timestamp 1 of the aggregated Ack message entry.
+     *
+     * @param index     The entry index.
+     * @return The Tpsn Message Timestamp 1.
+     */
+    public abstract long getTimeStamp1(int index);
+
+    /**
+     * Returns the Tpsn Message Timestamp 2 of the aggregated Ack message entry.
+     *
+     * @param index     The entry index.
+     * @return The Tpsn Message Timestamp 2.
+     */
+    public abstract long getTimeStamp2(int index);
+
+    /**
+     * Sets the Id of the sync domain the message belongs to.
+     *
+     * @param domainId  The sync domain Id.
+     */
+    public abstract void setDomainId(int domainId);
+
+    /**
+     * Sets the sync epoch of the sender node.
+     *
+     * @param epoch The sync epoch, 0 if unknown.
+     */
+    public abstract void setEpoch(int epoch);
+
     /**
      * Sets the Tpsn Tree level.
      *
@@ -75,10 +185,63 @@ public abstract class BaseTpsnMessage {
      */
     public abstract void setTimeStamp3(long timeStamp3);
 
+    /**
+     * Sets the cumulative clock error estimate of the sender node.
+     *
+     * @param error     The error in ms, or Long.MAX_VALUE if unknown.
+     */
+    public abstract void setError(long error);
+
+    /**
+     * Sets the last round trip delay of the sender node to its parent.
+     *
+     * @param roundTripDelay    The round trip delay in ms, or 0 if unknown.
+     */
+    public abstract void setRoundTripDelay(long roundTripDelay);
+
+    /**
+     * Sets the offset residual of the last exchange of the sender node with its parent.
+     *
+     * @param residual  The residual in ms, or 0 if unknown.
+     */
+    public abstract void setResidual(long residual);
+
+    /**
+     * Sets the skew compensation of the sender's virtual clock.
+     *
+     * @param skew  The skew compensation, 1 if the clock isn't compensated.
+     */
+    public abstract void setSkew(double skew);
+
+    /**
+     * Sets the Level-Discovery wave the message belongs to.
+     *
+     * @param originId  The Id of the root that started the wave.
+     * @param sequence  The sequence number of the wave.
+     */
+    public abstract void setWave(String originId, int sequence);
+
+    /**
+     * Sets the sync health of the sender's subtree.
+     *
+     * @param health    The sync health.
+     */
+    public abstract void setHealth(SyncHealth health);
+
     /**
      * Sets the Id of the Receiver node.
      *
      * @param receiverId    The receiver id.
      */
     public abstract void setReceiverId(String receiverId);
+
+    /**
+     * Sets the per child entries of the aggregated Ack message.
+     *
+     * @param receiverIds   The receiver ids.
+     * @param timeStamps1   The Tpsn message timestamps1.
+     * @param timeStamps2   The Tpsn message timestamps2.
+     */
+    public abstract void setAckEntries(String[] receiverIds, long[] timeStamps1,
+                                       long[] timeStamps2);
 }
@@ -1,5 +1,7 @@
 package io.left.tpsn;
 
+import java.util.Arrays;
+
 /**
  * Use this Class to create the TpsnMessage Objects.
  */
@@ -12,6 +14,54 @@ public abstract class BaseTpsnMessageFactory {
      */
     public abstract BaseTpsnMessage createFromByteArray(byte[] message);
 
+    /**
+     * Creates the Tpsn Message from a part of the array.
+     * Subclasses should override it to avoid the copy.
+     * @param message The array containing the binary message.
+     * @param offset The index of the binary message in the array.
+     * @param length The length of the binary message.
+     * @return The deserialized Tpsn Message Object.
+     */
+    public BaseTpsnMessage createFromByteArray(byte[] message, int offset, int length) {
+        return createFromByteArray(Arrays.copyOfRange(message, offset, offset + length));
+    }
+
+    /**
+     * Decodes the Tpsn frame created by {@link #encode}.
+     * @param frame The Tpsn frame.
+     * @return The Tpsn Message Object, or null if it's not a valid Tpsn frame.
+     */
+    public BaseTpsnMessage decode(byte[] frame) {
+        if (!TpsnFrame.isFrame(frame)) {
+            return null;
+        }
+
+        BaseTpsnMessage msg = createFromByteArray(frame, TpsnFrame.HEADER_LENGTH,
+                frame.length - TpsnFrame.HEADER_LENGTH);
+        if (msg != null) {
+            msg.setDomainId(TpsnFrame.getDomainId(frame));
+            msg.setEpoch(TpsnFrame.getEpoch(frame));
+        }
+        return msg;
+    }
+
+    /**
+     * Creates an empty Tpsn Message Object, to be filled and encoded by {@link #encode}.
+     * @param type The Tpsn Message type.
+     * @return The Tpsn Message Object.
+     */
+    public abstract BaseTpsnMessage createMessage(TpsnMessageType type);
+
+    /**
+     * Encodes the Tpsn Message Object created by {@link #createMessage}
+     * to a Tpsn frame, see {@link TpsnFrame}.
+     * @param msg The Tpsn Message Object.
+     * @return Encoded binary representation.
+     */
+    public byte[] encode(BaseTpsnMessage msg) {
+        return TpsnFrame.wrap(msg.getDomainId(), msg.getEpoch(), toByteArray(msg));
+    }
+
     /**
      * Creates the Tpsn Message.
      * @param type The Tpsn Message type.
@@ -49,6 +99,19 @@ public abstract class BaseTpsnMessageFactory {
     public abstract byte[] create(TpsnMessageType type, int level, long timeStamp1,
                                   long timeStamp2, long timeStamp3, String receiverId);
 
+    /**
+     * Creates the aggregated Ack Tpsn Message,
+     * a single reply to the Sync-Pulse messages of several children.
+     * @param level The Tpsn Tree Level.
+     * @param receiverIds The Ids of receiver nodes.
+     * @param timeStamps1 The Tpsn Timestamps 1, per receiver.
+     * @param timeStamps2 The Tpsn Timestamps 2, per receiver.
+     * @param timeStamp3 The shared Tpsn Timestamp 3.
+     * @return The Tpsn Message Object.
+     */
+    public abstract byte[] createAggregatedAck(int level, String[] receiverIds,
+                                               long[] timeStamps1, long[] timeStamps2,
+                                               long timeStamp3);
 
     /**
      * Encodes the Tpsn Message Object to it's binary representation.
@@ -0,0 +1,106 @@
+package io.left.tpsn;
+
+/**
+ * Immutable quality of the link between a parent and its child, as observed by the child
+ * and reported to the parent in a Link-Report message sent right after each exchange.
+ */
+public final class ChildLinkQuality {
+
+    /**
+     * The smoothing gain of the round trip delay is 1 / SMOOTHING_FACTOR.
+     */
+    private static final double SMOOTHING_FACTOR = 8;
+
+    private final long roundTripDelay;
+    private final double smoothedRoundTripDelay;
+    private final long residual;
+    private final long updateTime;
+    private final int samples;
+
+    private ChildLinkQuality(long roundTripDelay, double smoothedRoundTripDelay, long residual,
+                             long updateTime, int samples) {
+        this.roundTripDelay = roundTripDelay;
+        this.smoothedRoundTripDelay = smoothedRoundTripDelay;
+        this.residual = residual;
+        this.updateTime = updateTime;
+        this.samples = samples;
+    }
+
+    /**
+     * Creates the quality of a link from its first report.
+     *
+     * @param roundTripDelay    The round trip delay (ms) observed by the child.
+     * @param residual          The offset residual (ms) observed by the child.
+     * @param updateTime        The local time (ms) of the report.
+     * @return                  The link quality.
+     */
+    public static ChildLinkQuality create(long roundTripDelay, long residual, long updateTime) {
+        return new ChildLinkQuality(roundTripDelay, roundTripDelay, residual, updateTime, 1);
+    }
+
+    /**
+     * Returns the quality updated by a new report.
+     *
+     * @param newRoundTripDelay The round trip delay (ms) observed by the child.
+     * @param newResidual       The offset residual (ms) observed by the child.
+     * @param newUpdateTime     The local time (ms) of the report.
+     * @return                  The updated link quality.
+     */
+    public ChildLinkQuality update(long newRoundTripDelay, long newResidual, long newUpdateTime) {
+        double smoothed = smoothedRoundTripDelay
+                + (newRoundTripDelay - smoothedRoundTripDelay) / SMOOTHING_FACTOR;
+        return new ChildLinkQuality(newRoundTripDelay, smoothed, newResidual, newUpdateTime,
+                samples + 1);
+    }
+
+    /**
+     * Returns the last reported round trip delay.
+     *
+     * @return  The round trip delay in ms.
+     */
+    public long getRoundTripDelay() {
+        return roundTripDelay;
+    }
+
+    /**
+     * Returns the smoothed round trip delay of all the reports.
+     *
+     * @return  The smoothed round trip delay in ms.
+     */
+    public long getSmoothedRoundTripDelay() {
+        return Math.round(smoothedRoundTripDelay);
+    }
+
+    /**
+     * Returns the last reported offset residual.
+     *
+     * @return  The residual in ms.
+     */
+    public long getResidual() {
+        return residual;
+    }
+
+    /**
+     * Returns the local time of the last report.
+     *
+     * @return  The update time in ms.
+     */
+    public long getUpdateTime() {
+        return updateTime;
+    }
+
+    /**
+     * Returns the number of the reports.
+     *
+     * @return  The number of the samples.
+     */
+    public int getSamples() {
+        return samples;
+    }
+
+    @Override
+    public String toString() {
+        return "RTT: " + roundTripDelay + " (smoothed " + getSmoothedRoundTripDelay()
+                + "), residual: " + residual + ", samples: " + samples;
+    }
+}
@@ -0,0 +1,81 @@
+package io.left.tpsn;
+
+/**
+ * Disciplines the synchronized clock. A new offset estimate close to the applied offset
+ * is slewed to at a bounded rate, so the synchronized time stays monotonic and continuous.
+ * A large difference, or the first synchronization, is stepped to at once.
+ */
+public final class ClockDiscipline {
+
+    /**
+     * Default maximum slew rate (ppm), 0.5 ms per second.
+     */
+    public static final long DEFAULT_MAX_SLEW_RATE_PPM = 500;
+
+    /**
+     * Default offset difference (ms) above which the clock is stepped.
+     */
+    public static final long DEFAULT_STEP_THRESHOLD = 128;
+
+    private final long maxSlewRatePpm;
+    private final long stepThreshold;
+
+    /**
+     * Creates the discipline with the default slew rate and step threshold.
+     */
+    public ClockDiscipline() {
+        this(DEFAULT_MAX_SLEW_RATE_PPM, DEFAULT_STEP_THRESHOLD);
+    }
+
+    /**
+     * Creates the discipline.
+     *
+     * @param maxSlewRatePpm    The maximum slew rate (ppm), below 1000000 to keep
+     *                          the synchronized time monotonic.
+     * @param stepThreshold     The offset difference (ms) above which the clock is stepped.
+     */
+    public ClockDiscipline(long maxSlewRatePpm, long stepThreshold) {
+        if (maxSlewRatePpm <= 0 || maxSlewRatePpm >= 1000000) {
+            throw new IllegalArgumentException("maxSlewRatePpm out of range: " + maxSlewRatePpm);
+        }
+        if (stepThreshold < 0) {
+            throw new IllegalArgumentException("stepThreshold must not be negative: "
+                    + stepThreshold);
+        }
+        this.maxSlewRatePpm = maxSlewRatePpm;
+        this.stepThreshold = stepThreshold;
+    }
+
+    /**
+     * Returns if the clock has to be stepped to the new offset estimate.
+     *
+     * @param current   The current snapshot.
+     * @param localTime The local time (ms) of the new estimate.
+     * @param offset    The new offset estimate (ms).
+     * @return          True to step, False to slew.
+     */
+    public boolean isStep(ClockSnapshot current, long localTime, long offset) {
+        return !current.isSynchronized()
+                || Math.abs(offset - current.getOffset(localTime)) > stepThreshold;
+    }
+
+    /**
+     * Creates the snapshot of the new offset estimate, slewing or stepping to it.
+     *
+     * @param current   The current snapshot.
+     * @param localTime The local time (ms) of the new estimate.
+     * @param offset    The new offset estimate (ms).
+     * @param error     The estimated error (ms) of the new estimate.
+     * @return          The new snapshot.
+     */
+    public ClockSnapshot discipline(ClockSnapshot current, long localTime, long offset,
+                                    long error) {
+        if (isStep(current, localTime, offset)) {
+            return new ClockSnapshot(localTime, offset, error,
+                    ClockSnapshot.CLOCK_DRIFT_BOUND_PPM, true);
+        }
+
+        return new ClockSnapshot(localTime, current.getOffset(localTime), offset,
+                maxSlewRatePpm, error, ClockSnapshot.CLOCK_DRIFT_BOUND_PPM, true);
+    }
+}
@@ -0,0 +1,236 @@
+package io.left.tpsn;
+
+/**
+ * Immutable state of the synchronized clock, taken at the last synchronization.
+ * A new snapshot is published on every change, so readers on any thread
+ * can compute the synchronized time from a single volatile read, without locking.
+ * A disciplined snapshot slews its offset from the previous one toward the new estimate
+ * at a bounded rate, so the synchronized time never jumps, see {@link ClockDiscipline}.
+ * The offset is extrapolated with the estimated skew after the anchor time.
+ */
+public final class ClockSnapshot {
+
+    /**
+     * Bound of the relative drift (ppm) between two device clocks.
+     * Typical crystal oscillators drift up to 50 ppm each.
+     */
+    public static final long CLOCK_DRIFT_BOUND_PPM = 100;
+
+    /**
+     * Bound of the skew (ms per local ms), a tenfold margin over the drift bound.
+     */
+    public static final double MAX_SKEW = 10 * CLOCK_DRIFT_BOUND_PPM / 1e6;
+
+    /**
+     * The snapshot of a node that was never synchronized.
+     */
+    public static final ClockSnapshot UNSYNCHRONIZED
+            = new ClockSnapshot(0, 0, SyncedTime.UNKNOWN_ERROR, 0, false);
+
+    private final long anchor;
+    private final long startOffset;
+    private final long offset;
+    private final long slewRatePpm;
+    private final long error;
+    private final long driftPpm;
+    private final double skew;
+    private final boolean synchronizedClock;
+
+    /**
+     * Creates the snapshot.
+     *
+     * @param anchor            Local time (ms) of the synchronization.
+     * @param offset            The clock offset (ms).
+     * @param error             The estimated error (ms) at the anchor time.
+     * @param driftPpm          The error growth rate (ppm) after the anchor time.
+     * @param synchronizedClock True if the clock is synchronized.
+     */
+    public ClockSnapshot(long anchor, long offset, long error, long driftPpm,
+                         boolean synchronizedClock) {
+        this(anchor, offset, offset, 0, error, driftPpm, synchronizedClock);
+    }
+
+    /**
+     * Creates the snapshot slewing from the start offset to the estimated offset.
+     *
+     * @param anchor            Local time (ms) of the synchronization, the slew starts at it.
+     * @param startOffset       The clock offset (ms) at the anchor time.
+     * @param offset            The estimated clock offset (ms) the slew ends at.
+     * @param slewRatePpm       The slew rate (ppm) of the offset.
+     * @param error             The estimated error (ms) at the anchor time.
+     * @param driftPpm          The error growth rate (ppm) after the anchor time.
+     * @param synchronizedClock True if the clock is synchronized.
+     */
+    public ClockSnapshot(long anchor, long startOffset, long offset, long slewRatePpm,
+                         long error, long driftPpm, boolean synchronizedClock) {
+        this(anchor, startOffset, offset, slewRatePpm, error, driftPpm, 0, synchronizedClock);
+    }
+
+    private ClockSnapshot(long anchor, long startOffset, long offset, long slewRatePpm,
+                          long error, long driftPpm, double skew, boolean synchronizedClock) {
+        this.anchor = anchor;
+        this.startOffset = startOffset;
+        this.offset = offset;
+        this.slewRatePpm = slewRatePpm;
+        this.error = error;
+        this.driftPpm = driftPpm;
+        this.skew = skew;
+        this.synchronizedClock = synchronizedClock;
+    }
+
+    /**
+     * Returns a copy of the snapshot extrapolating the offset with the skew.
+     *
+     * @param skew  The rate (ms per local ms) the clock offset changes at,
+     *              within {@link #MAX_SKEW}.
+     * @return      The snapshot with the skew.
+     */
+    public ClockSnapshot withSkew(double skew) {
+        if (Math.abs(skew) > MAX_SKEW) {
+            throw new IllegalArgumentException("skew out of range: " + skew);
+        }
+        return new ClockSnapshot(anchor, startOffset, offset, slewRatePpm, error, driftPpm, skew,
+                synchronizedClock);
+    }
+
+    /**
+     * Returns the local time of the synchronization.
+     *
+     * @return  The anchor local time in ms.
+     */
+    public long getAnchor() {
+        return anchor;
+    }
+
+    /**
+     * Returns the clock offset at the anchor time, the one a slew starts at.
+     *
+     * @return  The start offset in ms.
+     */
+    public long getStartOffset() {
+        return startOffset;
+    }
+
+    /**
+     * Returns the slew rate of the offset.
+     *
+     * @return  The slew rate in ppm.
+     */
+    public long getSlewRatePpm() {
+        return slewRatePpm;
+    }
+
+    /**
+     * Returns the error growth rate after the anchor time.
+     *
+     * @return  The drift in ppm.
+     */
+    public long getDriftPpm() {
+        return driftPpm;
+    }
+
+    /**
+     * Returns the rate the clock offset changes at after the anchor time.
+     *
+     * @return  The skew in ms per local ms, 0 if unknown.
+     */
+    public double getSkew() {
+        return skew;
+    }
+
+    /**
+     * Returns the estimated clock offset at the anchor time, the one a slew ends at.
+     *
+     * @return  The clock offset in ms.
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * Returns the clock offset applied at the local time, slewed toward the estimated one
+     * and extrapolated with the skew.
+     *
+     * @param localTime The local time in ms.
+     * @return          The clock offset in ms.
+     */
+    public long getOffset(long localTime) {
+        if (skew == 0) {
+            return getSlewedOffset(localTime);
+        }
+        return getSlewedOffset(localTime) + Math.round(skew * (localTime - anchor));
+    }
+
+    private long getSlewedOffset(long localTime) {
+        if (startOffset == offset) {
+            return offset;
+        }
+        if (localTime <= anchor) {
+            return startOffset;
+        }
+
+        long slewed = (localTime - anchor) * slewRatePpm / 1000000;
+        long remaining = offset - startOffset;
+        if (Math.abs(remaining) <= slewed) {
+            return offset;
+        }
+        return remaining > 0 ? startOffset + slewed : startOffset - slewed;
+    }
+
+    /**
+     * Returns the estimated error at the anchor time.
+     *
+     * @return  The error in ms.
+     */
+    public long getError() {
+        return error;
+    }
+
+    /**
+     * Returns if the clock was synchronized.
+     *
+     * @return  True if synchronized, otherwise False.
+     */
+    public boolean isSynchronized() {
+        return synchronizedClock;
+    }
+
+    /**
+     * Converts the local time to the synchronized time.
+     *
+     * @param localTime The local time in ms.
+     * @return          The synchronized time in ms.
+     */
+    public long getSyncedTime(long localTime) {
+        return localTime + getOffset(localTime);
+    }
+
+    /**
+     * Returns the estimated error bound at the given local time,
+     * the error grows with the time elapsed since the synchronization
+     * and includes the rest of the slew.
+     *
+     * @param localTime The local time in ms.
+     * @return          The error bound in ms, or {@link SyncedTime#UNKNOWN_ERROR}.
+     */
+    public long getErrorBound(long localTime) {
+        if (!synchronizedClock || error == SyncedTime.UNKNOWN_ERROR) {
+            return SyncedTime.UNKNOWN_ERROR;
+        }
+
+        long age = Math.abs(localTime - anchor);
+        return error + age * driftPpm / 1000000 + Math.abs(offset - getSlewedOffset(localTime));
+    }
+
+    /**
+     * Fills the result with the synchronized time and its error bound.
+     *
+     * @param localTime The local time in ms.
+     * @param result    The object to fill.
+     * @return          The result object.
+     */
+    public SyncedTime fill(long localTime, SyncedTime result) {
+        result.set(getSyncedTime(localTime), getErrorBound(localTime), synchronizedClock);
+        return result;
+    }
+}
@@ -0,0 +1,113 @@
+package io.left.tpsn;
+
+/**
+ * The Clock Synchronization Manager.
+ */
+public interface ClockSyncManager {
+
+    interface EventListener {
+        /**
+         * Called when the clock offset changes at once, a slewing offset doesn't notify.
+         *
+         * @param clockOffset   The new clock offset in ms.
+         */
+        void clockSyncOffsetChanged(long clockOffset);
+
+        void debugMessagereceived(String message);
+    }
+
+    /**
+     * Starts the Synchronization Algorithm.
+     *
+     * @return  Returns if succeeded to start, otherwise false.
+     */
+    boolean start();
+
+    /**
+     * Starts the Synchronization Algorithm.
+     *
+     * @return  True if succeeded to start, otherwise False.
+     */
+    boolean restart();
+
+    /**
+     * Resets the synchronized data.
+     */
+    void reset();
+
+    /**
+     * Resets the synchronized data and stops the timer thread the manager created,
+     * the manager can't be started again.
+     */
+    void shutdown();
+
+    /**
+     * Returns the calculated clock offset in ms.
+     *
+     * @return  The clock offset.
+     */
+    long getClockOffset();
+
+    /**
+     * Returns the synchronized time in ms.
+     * Lock free, can be called from any thread.
+     *
+     * @return  The synchronized time.
+     */
+    long now();
+
+    /**
+     * Fills the result with the synchronized time and its estimated error bound.
+     * Lock free and allocation free, can be called from any thread.
+     *
+     * @param result    The object to fill.
+     * @return          The result object.
+     */
+    SyncedTime now(SyncedTime result);
+
+    /**
+     * Converts local timestamps taken with System.currentTimeMillis() to the synchronized time,
+     * in place, using the offset and skew that were valid at each timestamp.
+     *
+     * @param timeStamps    The local timestamps in ms.
+     * @param from          The index of the first timestamp to convert, inclusive.
+     * @param to            The index of the last timestamp to convert, exclusive.
+     */
+    void toSyncedTime(long[] timeStamps, int from, int to);
+
+    /**
+     * Converts local timestamps taken with System.nanoTime() to the synchronized time in ms,
+     * in place, using the offset and skew that were valid at each timestamp.
+     * The nanoTime values are mapped to the local time using the current clock readings.
+     *
+     * @param nanoTimes     The System.nanoTime() timestamps.
+     * @param from          The index of the first timestamp to convert, inclusive.
+     * @param to            The index of the last timestamp to convert, exclusive.
+     */
+    void nanoTimeToSyncedTime(long[] nanoTimes, int from, int to);
+
+    /**
+     * Returns the sync health of the nodes known to this one, itself included.
+     * The root of a sync tree knows its whole tree.
+     *
+     * @return  The sync health.
+     */
+    SyncHealth getSyncHealth();
+
+    /**
+     * Register event listeners.
+     *
+     * @param listener  The event listener.
+     * @return          False if already registered, otherwise True.
+     */
+    boolean registerEventListener(EventListener listener);
+
+    /**
+     * Unregister event listeners.
+     *
+     * @param listener  The event listener.
+     * @return          True if successfully unregistered,
+     *                  False if the listener has been registered.
+     */
+    boolean unregisterEventListener(EventListener listener);
+}
@@ -0,0 +1,68 @@
+package io.left.tpsn;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The latest Level-Discovery waves seen by a node, by the Id of their root.
+ * A Level-Discovery message of an older wave is an echo, and is dropped. So is a message
+ * of the latest wave received again from the same sender with the same level,
+ * a changed level of the sender in the same wave is still accepted.
+ * Only the recently active roots are kept, so the set stays small on any mesh.
+ */
+final class DiscoveryWaves {
+
+    private static final int MAX_ORIGINS = 32;
+
+    private final Map<String, Wave> waves =
+            new LinkedHashMap<String, Wave>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Wave> eldest) {
+                    return size() > MAX_ORIGINS;
+                }
+            };
+
+    /**
+     * Records the wave of a received Level-Discovery message.
+     *
+     * @param originId  The Id of the root that started the wave.
+     * @param sequence  The sequence number of the wave.
+     * @param senderId  The Id of the sender of the message.
+     * @param level     The level of the sender.
+     * @return          False if the wave is older than the latest one of the root,
+     *                  or the sender already sent the level in it, otherwise True.
+     */
+    synchronized boolean accept(String originId, int sequence, String senderId, int level) {
+        Wave wave = waves.get(originId);
+
+        //The sequence numbers wrap around
+        if (wave != null && sequence - wave.sequence < 0) {
+            return false;
+        }
+
+        if (wave == null || wave.sequence != sequence) {
+            wave = new Wave(sequence);
+            waves.put(originId, wave);
+        }
+        Integer sentLevel = wave.senderLevels.put(senderId, level);
+        return sentLevel == null || sentLevel != level;
+    }
+
+    /**
+     * Removes all the waves.
+     */
+    synchronized void clear() {
+        waves.clear();
+    }
+
+    private static final class Wave {
+        private final int sequence;
+        //The levels of the senders in the wave, bounded by the neighbors of the node
+        private final Map<String, Integer> senderLevels = new HashMap<>();
+
+        Wave(int sequence) {
+            this.sequence = sequence;
+        }
+    }
+}
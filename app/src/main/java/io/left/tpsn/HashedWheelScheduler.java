@@ -0,0 +1,307 @@
+package io.left.tpsn;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link TpsnScheduler} backed by a hashed timing wheel on a daemon thread.
+ * Scheduling and cancelling a timeout are O(1), a timeout is kept in a doubly linked
+ * bucket of the wheel and re-scheduled without allocations.
+ * The timeouts elapse with the precision of the tick duration,
+ * a timeout longer than a wheel turn waits the remaining turns in its bucket.
+ * The thread sleeps until the next deadline and waits without a timeout while the wheel is
+ * empty, an idle scheduler doesn't wake the device.
+ * The timeouts run on the wheel thread, so they should be short.
+ */
+public class HashedWheelScheduler implements TpsnScheduler {
+
+    /**
+     * Default tick duration in ms.
+     */
+    public static final long DEFAULT_TICK_DURATION = 10;
+
+    /**
+     * Default number of the wheel buckets.
+     */
+    public static final int DEFAULT_WHEEL_SIZE = 512;
+
+    private final long tickDuration;
+    private final WheelTimeout[] wheel;
+    private final int mask;
+    private final Object lock = new Object();
+    private final Thread workerThread;
+    private final long startTime;
+    //Guarded by the lock
+    private long tick = 0;
+    private int pending = 0;
+    private long wakeTick = -1;
+    private volatile boolean stopped = false;
+
+    /**
+     * Creates the scheduler with the default tick duration and wheel size.
+     */
+    public HashedWheelScheduler() {
+        this(DEFAULT_TICK_DURATION, DEFAULT_WHEEL_SIZE);
+    }
+
+    /**
+     * Creates the scheduler and starts its thread.
+     *
+     * @param tickDuration  The tick duration in ms.
+     * @param wheelSize     The number of the wheel buckets, rounded up to a power of two.
+     */
+    public HashedWheelScheduler(long tickDuration, int wheelSize) {
+        if (tickDuration <= 0) {
+            throw new IllegalArgumentException("tickDuration must be positive: " + tickDuration);
+        }
+        if (wheelSize <= 0 || wheelSize > (1 << 30)) {
+            throw new IllegalArgumentException("wheelSize out of range: " + wheelSize);
+        }
+
+        this.tickDuration = tickDuration;
+        int size = Integer.highestOneBit(wheelSize);
+        if (size < wheelSize) {
+            size <<= 1;
+        }
+        this.wheel = new WheelTimeout[size];
+        this.mask = size - 1;
+        this.startTime = currentTime();
+
+        workerThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                runWheel();
+            }
+        }, "HashedWheelScheduler");
+        workerThread.setDaemon(true);
+        workerThread.start();
+    }
+
+    @Override
+    public Timeout newTimeout(Runnable task) {
+        return new WheelTimeout(task);
+    }
+
+    /**
+     * Stops the wheel thread, the pending timeouts are discarded.
+     */
+    public void shutdown() {
+        stopped = true;
+        workerThread.interrupt();
+    }
+
+    /**
+     * Returns if the wheel thread waits for a timeout to be scheduled.
+     *
+     * @return  True if the thread waits without a timeout, otherwise False.
+     */
+    boolean isParked() {
+        synchronized (lock) {
+            return wakeTick == Long.MAX_VALUE;
+        }
+    }
+
+    private void runWheel() {
+        while (!stopped) {
+            WheelTimeout expired;
+            synchronized (lock) {
+                long currentTick = (currentTime() - startTime) / tickDuration;
+                if (tick >= currentTick) {
+                    sleep(nextDeadlineTick());
+                    continue;
+                }
+                expired = expireTicks(currentTick);
+            }
+
+            while (expired != null) {
+                WheelTimeout next = expired.nextExpired;
+                expired.nextExpired = null;
+                if (expired.isCurrent()) {
+                    expired.run();
+                }
+                expired = next;
+            }
+        }
+    }
+
+    /**
+     * Waits on the lock until the end of the deadline tick,
+     * a timeout scheduled before it wakes the thread.
+     *
+     * @param deadlineTick  The tick to wake at the end of, Long.MAX_VALUE to wait for a schedule.
+     */
+    private void sleep(long deadlineTick) {
+        wakeTick = deadlineTick;
+        try {
+            if (deadlineTick == Long.MAX_VALUE) {
+                lock.wait();
+            } else {
+                long sleepTime = (deadlineTick + 1) * tickDuration - (currentTime() - startTime);
+                if (sleepTime > 0) {
+                    lock.wait(sleepTime);
+                }
+            }
+        } catch (InterruptedException e) {
+            //Woken up by shutdown()
+        } finally {
+            wakeTick = -1;
+        }
+    }
+
+    /**
+     * Returns the earliest deadline tick of the scheduled timeouts.
+     * The buckets are scanned from the current tick, the first timeout due in its
+     * bucket's turn is the earliest one, the later turns are only searched if there is none.
+     *
+     * @return  The deadline tick, Long.MAX_VALUE if the wheel is empty.
+     */
+    private long nextDeadlineTick() {
+        if (pending == 0) {
+            return Long.MAX_VALUE;
+        }
+
+        long earliest = Long.MAX_VALUE;
+        for (int i = 0; i < wheel.length; i++) {
+            WheelTimeout timeout = wheel[(int) ((tick + i) & mask)];
+            while (timeout != null) {
+                if (timeout.deadlineTick == tick + i) {
+                    return tick + i;
+                }
+                earliest = Math.min(earliest, timeout.deadlineTick);
+                timeout = timeout.next;
+            }
+        }
+
+        return earliest;
+    }
+
+    /**
+     * Unlinks the timeouts due before the current tick from the buckets of the ticks
+     * passed since the last expiry, at most one wheel turn, and moves to the current tick.
+     *
+     * @param currentTick   The current tick, its bucket isn't due yet.
+     * @return              The first of the expired timeouts, chained by nextExpired.
+     */
+    private WheelTimeout expireTicks(long currentTick) {
+        WheelTimeout first = null;
+        WheelTimeout last = null;
+
+        long lastTick = Math.min(currentTick, tick + wheel.length);
+        for (; tick < lastTick; tick++) {
+            WheelTimeout timeout = wheel[(int) (tick & mask)];
+            while (timeout != null) {
+                WheelTimeout next = timeout.next;
+                if (timeout.deadlineTick < currentTick) {
+                    timeout.unlink();
+                    timeout.expiredGeneration = timeout.generation;
+                    if (last == null) {
+                        first = timeout;
+                    } else {
+                        last.nextExpired = timeout;
+                    }
+                    last = timeout;
+                }
+                timeout = next;
+            }
+        }
+        tick = currentTick;
+
+        return first;
+    }
+
+    private static long currentTime() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+
+    private final class WheelTimeout implements Timeout {
+
+        private final Runnable task;
+
+        //Guarded by the wheel lock
+        private int bucket = -1;
+        private long deadlineTick;
+        private WheelTimeout prev;
+        private WheelTimeout next;
+        private int generation = 0;
+        private int expiredGeneration = -1;
+
+        //Owned by the wheel thread while expiring
+        private WheelTimeout nextExpired;
+
+        WheelTimeout(Runnable task) {
+            this.task = task;
+        }
+
+        @Override
+        public void schedule(long delay) {
+            synchronized (lock) {
+                unlink();
+                generation++;
+
+                //The bucket of a tick is expired at the end of the tick,
+                //the deadlines already passed are expired by the next bucket.
+                deadlineTick = Math.max((currentTime() - startTime + Math.max(delay, 0))
+                        / tickDuration, tick);
+                bucket = (int) (deadlineTick & mask);
+
+                next = wheel[bucket];
+                if (next != null) {
+                    next.prev = this;
+                }
+                wheel[bucket] = this;
+                pending++;
+
+                //The wheel thread sleeps past the new deadline
+                if (deadlineTick < wakeTick) {
+                    lock.notify();
+                }
+            }
+        }
+
+        @Override
+        public void cancel() {
+            synchronized (lock) {
+                unlink();
+                generation++;
+            }
+        }
+
+        /**
+         * Returns if the timeout wasn't re-scheduled or cancelled since it expired.
+         */
+        private boolean isCurrent() {
+            synchronized (lock) {
+                return expiredGeneration == generation;
+            }
+        }
+
+        private void unlink() {
+            if (bucket < 0) {
+                return;
+            }
+
+            if (prev == null) {
+                wheel[bucket] = next;
+            } else {
+                prev.next = next;
+            }
+            if (next != null) {
+                next.prev = prev;
+            }
+            prev = null;
+            next = null;
+            bucket = -1;
+            pending--;
+        }
+
+        private void run() {
+            // CHECKSTYLE IGNORE IllegalCatchCheck
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                Thread.currentThread().getUncaughtExceptionHandler()
+                        .uncaughtException(Thread.currentThread(), e);
+            }
+            // CHECKSTYLE END IGNORE IllegalCatchCheck
+        }
+    }
+}
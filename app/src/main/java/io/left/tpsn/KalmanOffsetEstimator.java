@@ -0,0 +1,161 @@
+package io.left.tpsn;
+
+/**
+ * Kalman filter tracking the clock offset and the skew together.
+ * The state is (offset, skew), the offset grows by skew * elapsed time between the samples,
+ * and both drift as random walks. A sample measures the offset with an error
+ * uniformly distributed within the half of its round trip delay, so the samples
+ * of slow exchanges are weighted less. A sample too far from the prediction
+ * is taken as a clock jump and restarts the filter.
+ * It costs a few dozens of floating point operations per sample.
+ */
+public final class KalmanOffsetEstimator implements OffsetEstimator {
+
+    /**
+     * Creates the Kalman estimators with the default noise levels.
+     */
+    public static final Factory FACTORY = new Factory() {
+        @Override
+        public OffsetEstimator create() {
+            return new KalmanOffsetEstimator();
+        }
+    };
+
+    /**
+     * Default growth (ms^2 per ms) of the offset variance, not explained by the skew.
+     */
+    public static final double DEFAULT_OFFSET_NOISE = 1e-4;
+
+    /**
+     * Default growth (1 / ms) of the skew variance, about 1 ppm in 15 minutes.
+     */
+    public static final double DEFAULT_SKEW_NOISE = 1e-18;
+
+    /**
+     * Variance (ms^2) of the ms resolution of the timestamps.
+     */
+    private static final double RESOLUTION_VARIANCE = 1.0 / 6;
+
+    /**
+     * Initial variance of the skew, from the clock drift bound.
+     */
+    private static final double INITIAL_SKEW_VARIANCE
+            = Math.pow(ClockSnapshot.CLOCK_DRIFT_BOUND_PPM / 1e6, 2);
+
+    /**
+     * Innovation (in standard deviations) above which the sample is taken as a clock jump.
+     */
+    private static final double JUMP_THRESHOLD = 10;
+
+    /**
+     * The reported error covers this many standard deviations of the offset.
+     */
+    private static final double ERROR_SIGMAS = 3;
+
+    private final double offsetNoise;
+    private final double skewNoise;
+
+    private boolean hasSample = false;
+    private long sampleTime;
+    //The state estimate, the offset relative to the first sample for the precision
+    private long baseOffset;
+    private double offset;
+    private double skew;
+    //The covariance matrix of the state
+    private double p00;
+    private double p01;
+    private double p11;
+
+    /**
+     * Creates the estimator with the default noise levels.
+     */
+    public KalmanOffsetEstimator() {
+        this(DEFAULT_OFFSET_NOISE, DEFAULT_SKEW_NOISE);
+    }
+
+    /**
+     * Creates the estimator.
+     *
+     * @param offsetNoise   Growth (ms^2 per ms) of the offset variance, not explained by the skew.
+     * @param skewNoise     Growth (1 / ms) of the skew variance.
+     */
+    public KalmanOffsetEstimator(double offsetNoise, double skewNoise) {
+        if (offsetNoise < 0 || skewNoise < 0) {
+            throw new IllegalArgumentException("The noise levels must not be negative.");
+        }
+        this.offsetNoise = offsetNoise;
+        this.skewNoise = skewNoise;
+    }
+
+    @Override
+    public void addSample(long localTime, long sampleOffset, long roundTripDelay) {
+        double halfDelay = Math.max(roundTripDelay, 0) / 2.0;
+        double variance = halfDelay * halfDelay / 3 + RESOLUTION_VARIANCE;
+
+        if (!hasSample) {
+            start(localTime, sampleOffset, variance);
+            return;
+        }
+
+        //Predict
+        double elapsed = Math.max(localTime - sampleTime, 0);
+        double predicted = offset + skew * elapsed;
+        double q00 = offsetNoise * elapsed + skewNoise * elapsed * elapsed * elapsed / 3;
+        double q01 = skewNoise * elapsed * elapsed / 2;
+        double q11 = skewNoise * elapsed;
+        double n00 = p00 + 2 * elapsed * p01 + elapsed * elapsed * p11 + q00;
+        double n01 = p01 + elapsed * p11 + q01;
+        double n11 = p11 + q11;
+
+        //Update
+        double innovation = (sampleOffset - baseOffset) - predicted;
+        double innovationVariance = n00 + variance;
+        if (innovation * innovation > JUMP_THRESHOLD * JUMP_THRESHOLD * innovationVariance) {
+            start(localTime, sampleOffset, variance);
+            return;
+        }
+
+        double gain0 = n00 / innovationVariance;
+        double gain1 = n01 / innovationVariance;
+        offset = predicted + gain0 * innovation;
+        skew = skew + gain1 * innovation;
+        p00 = (1 - gain0) * n00;
+        p01 = (1 - gain0) * n01;
+        p11 = n11 - gain1 * n01;
+        sampleTime = localTime;
+    }
+
+    @Override
+    public long getOffset() {
+        return baseOffset + Math.round(offset);
+    }
+
+    @Override
+    public double getSkew() {
+        return skew;
+    }
+
+    @Override
+    public long getError() {
+        return hasSample ? (long) Math.ceil(ERROR_SIGMAS * Math.sqrt(p00)) : 0;
+    }
+
+    @Override
+    public void reset() {
+        hasSample = false;
+        baseOffset = 0;
+        offset = 0;
+        skew = 0;
+    }
+
+    private void start(long localTime, long sampleOffset, double variance) {
+        hasSample = true;
+        sampleTime = localTime;
+        baseOffset = sampleOffset;
+        offset = 0;
+        skew = 0;
+        p00 = variance;
+        p01 = 0;
+        p11 = INITIAL_SKEW_VARIANCE;
+    }
+}
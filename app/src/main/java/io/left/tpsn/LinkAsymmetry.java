@@ -0,0 +1,146 @@
+package io.left.tpsn;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Estimates the delay asymmetry of the links to the parent candidates.
+ * The two-way exchange assumes equal forward and reverse delays, an asymmetric link
+ * biases the offset obtained over it by half of the difference. The bias can't be seen
+ * on a single path, so the offsets obtained over different paths at about the same time
+ * are compared and each link is assigned its deviation from the mean of the paths,
+ * on every new sample. The clocks of the candidates themselves differ within their
+ * advertised errors, which grow with their tree levels, so only the part of the deviation
+ * beyond the errors of the link and of the mean is taken for the asymmetry.
+ * The deviation is smoothed over the samples and subtracted from the offsets of the link.
+ * With a single path the correction stays 0.
+ */
+public final class LinkAsymmetry {
+
+    /**
+     * The maximum age (ms) of a sample compared with the samples of the other links.
+     */
+    public static final long MAX_SAMPLE_AGE = 60 * 1000;
+
+    private static final int FORMAT_VERSION = 1;
+
+    /**
+     * The smoothing gain of the corrections is 1 / SMOOTHING_FACTOR.
+     */
+    private static final double SMOOTHING_FACTOR = 8;
+
+    private final Map<String, Link> links = new HashMap<>();
+
+    /**
+     * Records the clock offset obtained over the link, without the correction applied.
+     *
+     * @param linkId    The Id of the parent candidate at the other end of the link.
+     * @param localTime The local time (ms) of the sample.
+     * @param offset    The clock offset (ms) obtained over the link.
+     * @param error     The clock error (ms) advertised by the parent candidate.
+     */
+    public synchronized void addSample(String linkId, long localTime, long offset, long error) {
+        Link link = links.get(linkId);
+        if (link == null) {
+            link = new Link();
+            links.put(linkId, link);
+        }
+        link.sampleTime = localTime;
+        link.sampleOffset = offset;
+        link.sampleError = error;
+        link.hasSample = true;
+
+        long sum = 0;
+        long errorSum = 0;
+        int count = 0;
+        for (Link other : links.values()) {
+            if (other.hasSample && localTime - other.sampleTime <= MAX_SAMPLE_AGE) {
+                sum += other.sampleOffset;
+                errorSum += other.sampleError;
+                count++;
+            }
+        }
+
+        if (count < 2) {
+            return;
+        }
+
+        double mean = (double) sum / count;
+        double meanError = (double) errorSum / count;
+        for (Link other : links.values()) {
+            if (other.hasSample && localTime - other.sampleTime <= MAX_SAMPLE_AGE) {
+                double deviation = other.sampleOffset - mean;
+                double asymmetry = Math.signum(deviation)
+                        * Math.max(Math.abs(deviation) - other.sampleError - meanError, 0);
+                other.correction += (asymmetry - other.correction) / SMOOTHING_FACTOR;
+            }
+        }
+    }
+
+    /**
+     * Returns the correction to subtract from the offsets obtained over the link.
+     *
+     * @param linkId    The Id of the parent candidate at the other end of the link.
+     * @return          The correction in ms, 0 if unknown.
+     */
+    public synchronized long getCorrection(String linkId) {
+        Link link = links.get(linkId);
+        return link == null ? 0 : Math.round(link.correction);
+    }
+
+    /**
+     * Removes all the links.
+     */
+    public synchronized void clear() {
+        links.clear();
+    }
+
+    /**
+     * Writes the corrections of the links. The samples are not written,
+     * they are outdated after a restart.
+     *
+     * @param out           The output to write to.
+     * @throws IOException  If failed to write.
+     */
+    public synchronized void writeTo(DataOutput out) throws IOException {
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(links.size());
+        for (Map.Entry<String, Link> entry : links.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeDouble(entry.getValue().correction);
+        }
+    }
+
+    /**
+     * Replaces the corrections with the ones written by {@link #writeTo(DataOutput)}.
+     *
+     * @param in            The input to read from.
+     * @throws IOException  If failed to read or the data format is unknown.
+     */
+    public synchronized void readFrom(DataInput in) throws IOException {
+        int version = in.readInt();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unknown link asymmetry format: " + version);
+        }
+
+        int count = in.readInt();
+        links.clear();
+        for (int i = 0; i < count; i++) {
+            Link link = new Link();
+            String linkId = in.readUTF();
+            link.correction = in.readDouble();
+            links.put(linkId, link);
+        }
+    }
+
+    private static final class Link {
+        private double correction;
+        private boolean hasSample;
+        private long sampleTime;
+        private long sampleOffset;
+        private long sampleError;
+    }
+}
@@ -0,0 +1,165 @@
+package io.left.tpsn;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+/**
+ * In-memory network of {@link TpsnTransport} endpoints, used to run many nodes in one process.
+ * The data sent to a node is delivered on the executor of the node.
+ * Like in a mesh, every connected node is a peer reachable directly,
+ * the neighbors linked by {@link #connect} form the routes. All nodes have the ROUTER role.
+ */
+public class LoopbackNetwork {
+
+    private final Map<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+    private volatile int topologyVersion = 0;
+
+    /**
+     * Adds a node to the network.
+     *
+     * @param nodeId    The Id of the node.
+     * @param executor  The executor delivering the data received by the node.
+     * @return          The transport of the node.
+     */
+    public TpsnTransport addNode(String nodeId, Executor executor) {
+        Endpoint endpoint = new Endpoint(nodeId, executor);
+        if (endpoints.putIfAbsent(nodeId, endpoint) != null) {
+            throw new IllegalArgumentException("Node already exists: " + nodeId);
+        }
+        return endpoint;
+    }
+
+    /**
+     * Links two nodes as neighbors.
+     *
+     * @param nodeId1   The Id of the first node.
+     * @param nodeId2   The Id of the second node.
+     */
+    public synchronized void connect(String nodeId1, String nodeId2) {
+        getEndpoint(nodeId1).neighbors.add(nodeId2);
+        getEndpoint(nodeId2).neighbors.add(nodeId1);
+        topologyVersion++;
+    }
+
+    /**
+     * Unlinks two neighbor nodes.
+     *
+     * @param nodeId1   The Id of the first node.
+     * @param nodeId2   The Id of the second node.
+     */
+    public synchronized void disconnect(String nodeId1, String nodeId2) {
+        getEndpoint(nodeId1).neighbors.remove(nodeId2);
+        getEndpoint(nodeId2).neighbors.remove(nodeId1);
+        topologyVersion++;
+    }
+
+    private Endpoint getEndpoint(String nodeId) {
+        Endpoint endpoint = endpoints.get(nodeId);
+        if (endpoint == null) {
+            throw new IllegalArgumentException("Unknown node: " + nodeId);
+        }
+        return endpoint;
+    }
+
+    private final class Endpoint implements TpsnTransport {
+
+        private final String nodeId;
+        private final Executor executor;
+        private final Set<String> neighbors =
+                Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        private volatile Receiver receiver;
+
+        //The next hop to each reachable node, rebuilt when the topology changes
+        private Map<String, String> nextHops = Collections.emptyMap();
+        private int nextHopsVersion = -1;
+
+        Endpoint(String nodeId, Executor executor) {
+            this.nodeId = nodeId;
+            this.executor = executor;
+        }
+
+        @Override
+        public String getOwnId() {
+            return nodeId;
+        }
+
+        @Override
+        public Set<String> getPeers() {
+            return new HashSet<>(getNextHops().keySet());
+        }
+
+        @Override
+        public String getNextHopPeer(String peerId) {
+            return getNextHops().get(peerId);
+        }
+
+        @Override
+        public Set<Role> getRoles(String peerId) {
+            return EnumSet.of(Role.ROUTER);
+        }
+
+        @Override
+        public void send(String peerId, byte[] data) throws TransportException {
+            if (!getNextHops().containsKey(peerId)) {
+                throw new TransportException("Unreachable peer: " + peerId);
+            }
+            endpoints.get(peerId).deliver(nodeId, data.clone());
+        }
+
+        @Override
+        public void setReceiver(Receiver receiver) {
+            this.receiver = receiver;
+        }
+
+        /**
+         * Returns the next hops found by a breadth first search from this node.
+         */
+        private synchronized Map<String, String> getNextHops() {
+            int version = topologyVersion;
+            if (version == nextHopsVersion) {
+                return nextHops;
+            }
+
+            Map<String, String> hops = new HashMap<>();
+            ArrayDeque<String> queue = new ArrayDeque<>();
+            for (String neighbor : neighbors) {
+                hops.put(neighbor, neighbor);
+                queue.add(neighbor);
+            }
+            while (!queue.isEmpty()) {
+                String nodeId = queue.poll();
+                String firstHop = hops.get(nodeId);
+                for (String next : endpoints.get(nodeId).neighbors) {
+                    if (!next.equals(this.nodeId) && !hops.containsKey(next)) {
+                        hops.put(next, firstHop);
+                        queue.add(next);
+                    }
+                }
+            }
+
+            nextHops = hops;
+            nextHopsVersion = version;
+            return hops;
+        }
+
+        private void deliver(final String senderId, final byte[] data) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    Receiver currentReceiver = receiver;
+                    if (currentReceiver != null) {
+                        currentReceiver.onDataReceived(senderId, data,
+                                System.currentTimeMillis());
+                    }
+                }
+            });
+        }
+    }
+}
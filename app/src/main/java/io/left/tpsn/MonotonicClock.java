@@ -0,0 +1,27 @@
+package io.left.tpsn;
+
+/**
+ * A monotonic clock of the device, used to check the time elapsed since
+ * a persisted state was saved. It must keep counting while the device sleeps,
+ * otherwise every state saved before a sleep looks like the wall clock was changed.
+ * On Android this is SystemClock.elapsedRealtime(), System.nanoTime() stops in the deep sleep.
+ */
+public interface MonotonicClock {
+
+    /**
+     * The System.nanoTime() clock, it counts the sleep on the desktop JVMs.
+     */
+    MonotonicClock SYSTEM = new MonotonicClock() {
+        @Override
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+    };
+
+    /**
+     * Returns the current reading of the clock.
+     *
+     * @return  The time in ns since an arbitrary origin, fixed until the device reboots.
+     */
+    long nanoTime();
+}
@@ -0,0 +1,58 @@
+package io.left.tpsn;
+
+/**
+ * Estimates the clock offset to the parent from the samples of the two-way exchanges.
+ * A sample is the offset measured by one exchange under the symmetric delay assumption,
+ * with the round trip delay of the exchange, whose half bounds the error of the sample.
+ * The estimators are not thread safe, each sync manager has its own one.
+ */
+public interface OffsetEstimator {
+
+    /**
+     * Creates the estimators of the sync managers.
+     */
+    interface Factory {
+
+        /**
+         * Creates an estimator with no samples.
+         *
+         * @return  The estimator.
+         */
+        OffsetEstimator create();
+    }
+
+    /**
+     * Adds the sample of an exchange.
+     *
+     * @param localTime         The local time (ms) the exchange completed at.
+     * @param offset            The measured clock offset (ms).
+     * @param roundTripDelay    The round trip delay (ms) of the exchange.
+     */
+    void addSample(long localTime, long offset, long roundTripDelay);
+
+    /**
+     * Returns the estimated clock offset at the time of the last sample.
+     *
+     * @return  The clock offset in ms.
+     */
+    long getOffset();
+
+    /**
+     * Returns the estimated rate the clock offset changes at.
+     *
+     * @return  The skew in ms per local ms, 0 if unknown.
+     */
+    double getSkew();
+
+    /**
+     * Returns the estimated error of the offset at the time of the last sample.
+     *
+     * @return  The error in ms.
+     */
+    long getError();
+
+    /**
+     * Drops all the samples.
+     */
+    void reset();
+}
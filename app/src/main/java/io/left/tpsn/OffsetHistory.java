@@ -0,0 +1,315 @@
+package io.left.tpsn;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * History of the clock synchronizations, used to convert local timestamps
+ * taken in the past to the synchronized time valid at that instant.
+ * Each synchronization starts a segment of (local time, offset, skew, error),
+ * within a segment the offset changes linearly with the segment skew.
+ * The skew of a segment is known once the next one starts, the last segment
+ * is extrapolated with the skew of the previous one.
+ * Segments are kept in primitive ring arrays, the oldest ones are evicted when full.
+ */
+public final class OffsetHistory {
+
+    /**
+     * Default maximum number of the kept segments.
+     */
+    public static final int DEFAULT_CAPACITY = 256;
+
+    private static final int FORMAT_VERSION = 1;
+
+    private final long[] localTimes;
+    private final long[] offsets;
+    private final double[] skews;
+    private final long[] errors;
+    private int head = 0;
+    private int size = 0;
+
+    /**
+     * Creates the history.
+     *
+     * @param capacity  The maximum number of the kept segments, the oldest ones are evicted.
+     */
+    public OffsetHistory(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        localTimes = new long[capacity];
+        offsets = new long[capacity];
+        skews = new double[capacity];
+        errors = new long[capacity];
+    }
+
+    /**
+     * Records a synchronization, starting a new segment.
+     * If the local clock jumped backwards, the segments after the new one are dropped.
+     *
+     * @param localTime The local time (ms) of the synchronization.
+     * @param offset    The clock offset (ms).
+     * @param error     The estimated error (ms).
+     * @return          The difference (ms) between the new offset and the offset predicted
+     *                  by the history, 0 if the history was empty.
+     *                  A large value means a clock jump on this or the parent node.
+     */
+    public synchronized long add(long localTime, long offset, long error) {
+        while (size > 0 && localTimes[index(size - 1)] >= localTime) {
+            size--;
+        }
+
+        long residual = 0;
+        double skew = 0;
+        if (size > 0) {
+            int last = index(size - 1);
+            residual = offset - offsetAt(last, localTime);
+
+            //close the previous segment, the new one keeps extrapolating its skew
+            skew = (double) (offset - offsets[last]) / (localTime - localTimes[last]);
+            skews[last] = skew;
+        }
+
+        int next;
+        if (size < localTimes.length) {
+            next = index(size);
+            size++;
+        } else {
+            next = head;
+            head = (head + 1) % localTimes.length;
+        }
+
+        localTimes[next] = localTime;
+        offsets[next] = offset;
+        skews[next] = skew;
+        errors[next] = error;
+
+        return residual;
+    }
+
+    /**
+     * Records a synchronization.
+     *
+     * @param snapshot  The clock snapshot taken at the synchronization.
+     * @return          See {@link #add(long, long, long)}, 0 for unsynchronized snapshots.
+     */
+    public long add(ClockSnapshot snapshot) {
+        if (!snapshot.isSynchronized()) {
+            return 0;
+        }
+        return add(snapshot.getAnchor(), snapshot.getOffset(), snapshot.getError());
+    }
+
+    /**
+     * Removes all the segments.
+     */
+    public synchronized void clear() {
+        head = 0;
+        size = 0;
+    }
+
+    /**
+     * Returns the number of the kept segments.
+     *
+     * @return  The history size.
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Returns the clock offset valid at the local time.
+     *
+     * @param localTime The local time in ms.
+     * @return          The offset in ms, 0 if the history is empty.
+     */
+    public synchronized long getOffset(long localTime) {
+        if (size == 0) {
+            return 0;
+        }
+
+        int position = positionAt(localTime);
+        return position < 0 ? offsets[head] : offsetAt(index(position), localTime);
+    }
+
+    /**
+     * Returns the estimated error of the segment valid at the local time.
+     *
+     * @param localTime The local time in ms.
+     * @return          The error in ms, 0 if the history is empty.
+     */
+    public synchronized long getError(long localTime) {
+        if (size == 0) {
+            return 0;
+        }
+
+        int position = positionAt(localTime);
+        return errors[index(Math.max(position, 0))];
+    }
+
+    /**
+     * Returns the clock skew of the segment valid at the local time.
+     *
+     * @param localTime The local time in ms.
+     * @return          The skew in ms per local ms, 0 if the history is empty.
+     */
+    public synchronized double getSkew(long localTime) {
+        if (size == 0) {
+            return 0;
+        }
+
+        int position = positionAt(localTime);
+        return position < 0 ? 0 : skews[index(position)];
+    }
+
+    /**
+     * Converts the local timestamps (ms) to the synchronized time in place.
+     * Timestamps before the first segment use the first known offset.
+     * Sorted input is converted in linear time.
+     *
+     * @param timeStamps    The local timestamps.
+     * @param from          The index of the first timestamp to convert, inclusive.
+     * @param to            The index of the last timestamp to convert, exclusive.
+     */
+    public synchronized void toSyncedTime(long[] timeStamps, int from, int to) {
+        checkRange(timeStamps, from, to);
+
+        if (size == 0) {
+            return;
+        }
+
+        long start = Long.MAX_VALUE;
+        long end = Long.MIN_VALUE;
+        long anchor = 0;
+        long offset = 0;
+        double skew = 0;
+
+        for (int i = from; i < to; i++) {
+            long localTime = timeStamps[i];
+            if (localTime < start || localTime >= end) {
+                int position = positionAt(localTime);
+                if (position < 0) {
+                    start = Long.MIN_VALUE;
+                    end = localTimes[head];
+                    anchor = end;
+                    offset = offsets[head];
+                    skew = 0;
+                } else {
+                    int index = index(position);
+                    start = localTimes[index];
+                    end = position == size - 1 ? Long.MAX_VALUE : localTimes[index(position + 1)];
+                    anchor = start;
+                    offset = offsets[index];
+                    skew = skews[index];
+                }
+            }
+
+            timeStamps[i] = localTime + offset + Math.round(skew * (localTime - anchor));
+        }
+    }
+
+    /**
+     * Converts the System.nanoTime() timestamps to the synchronized time (ms) in place.
+     * The nanoTime values are mapped to the local time by a pair of clock readings.
+     * The range is validated before any timestamp is rewritten.
+     *
+     * @param nanoTimes     The System.nanoTime() timestamps.
+     * @param from          The index of the first timestamp to convert, inclusive.
+     * @param to            The index of the last timestamp to convert, exclusive.
+     * @param currentTime   The local time (ms) read together with the nanoTime.
+     * @param nanoTime      The System.nanoTime() read together with the local time.
+     */
+    public synchronized void nanoTimeToSyncedTime(long[] nanoTimes, int from, int to,
+                                                  long currentTime, long nanoTime) {
+        checkRange(nanoTimes, from, to);
+
+        for (int i = from; i < to; i++) {
+            nanoTimes[i] = currentTime - (nanoTime - nanoTimes[i]) / 1000000;
+        }
+        toSyncedTime(nanoTimes, from, to);
+    }
+
+    /**
+     * Writes the segments, oldest first.
+     *
+     * @param out           The output to write to.
+     * @throws IOException  If failed to write.
+     */
+    public synchronized void writeTo(DataOutput out) throws IOException {
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            int index = index(i);
+            out.writeLong(localTimes[index]);
+            out.writeLong(offsets[index]);
+            out.writeDouble(skews[index]);
+            out.writeLong(errors[index]);
+        }
+    }
+
+    /**
+     * Replaces the segments with the ones written by {@link #writeTo(DataOutput)}.
+     * If there are more segments than the capacity, the oldest ones are evicted.
+     *
+     * @param in            The input to read from.
+     * @throws IOException  If failed to read or the data format is unknown.
+     */
+    public synchronized void readFrom(DataInput in) throws IOException {
+        int version = in.readInt();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unknown offset history format: " + version);
+        }
+
+        int count = in.readInt();
+        clear();
+        for (int i = 0; i < count; i++) {
+            long localTime = in.readLong();
+            long offset = in.readLong();
+            double skew = in.readDouble();
+            long error = in.readLong();
+            add(localTime, offset, error);
+            skews[index(size - 1)] = skew;
+        }
+    }
+
+    private static void checkRange(long[] timeStamps, int from, int to) {
+        if (from < 0 || to > timeStamps.length || from > to) {
+            throw new ArrayIndexOutOfBoundsException("from: " + from + ", to: " + to
+                    + ", length: " + timeStamps.length);
+        }
+    }
+
+    /**
+     * Returns the offset of the segment at the local time.
+     */
+    private long offsetAt(int index, long localTime) {
+        return offsets[index] + Math.round(skews[index] * (localTime - localTimes[index]));
+    }
+
+    /**
+     * Returns the position (0 is the oldest) of the last segment starting
+     * at or before the local time, or -1 if the local time is before the first one.
+     */
+    private int positionAt(long localTime) {
+        if (localTime < localTimes[head]) {
+            return -1;
+        }
+
+        int low = 0;
+        int high = size - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (localTimes[index(mid)] <= localTime) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    private int index(int position) {
+        return (head + position) % localTimes.length;
+    }
+}
@@ -0,0 +1,213 @@
+package io.left.tpsn;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+
+/**
+ * Paces the fan-out sends of a node, so a parent with many children doesn't burst
+ * its radio and queue the packets in the network, where the queuing delay would add
+ * an asymmetric error to the timestamps.
+ * The sends of a burst are spread evenly across the pacing window, the first one
+ * is sent at once. The time critical Ack messages are sent before the queued
+ * Sync messages, and those before the Level-Discovery and the other messages.
+ * The messages are handed to the sink at dequeue, so the Ack sending time (T3)
+ * can be stamped right before the send, and the time spent in the queue is reported.
+ * A single drainer hands the messages to the sink, one at a time.
+ */
+final class PacedSender {
+
+    /**
+     * Sends the dequeued messages.
+     */
+    interface Sink {
+
+        /**
+         * Sends the message to the peer.
+         *
+         * @param peerId        The Id of the destination peer.
+         * @param message       The message.
+         * @param data          The encoded message, or null to encode it now.
+         * @param queueDelay    The time (ms) the message spent in the queue.
+         */
+        void send(String peerId, BaseTpsnMessage message, byte[] data, long queueDelay);
+    }
+
+    private static final int PRIORITIES = 3;
+
+    private final ArrayDeque<Entry>[] queues;
+    private final TpsnScheduler.Timeout drainTimeout;
+    private final Sink sink;
+
+    //Guarded by this
+    private int pending = 0;
+    private int burstSize = 0;
+    private int burstSent = 0;
+    private long burstStart = 0;
+    private long window = 0;
+    private boolean draining = false;
+    private boolean waiting = false;
+    //Incremented by clear(), a drainer of an older generation stops
+    private int generation = 0;
+
+    @SuppressWarnings("unchecked")
+    PacedSender(TpsnScheduler scheduler, Sink sink) {
+        this.sink = sink;
+        this.queues = (ArrayDeque<Entry>[]) new ArrayDeque<?>[PRIORITIES];
+        for (int i = 0; i < PRIORITIES; i++) {
+            queues[i] = new ArrayDeque<>();
+        }
+        drainTimeout = scheduler.newTimeout(new Runnable() {
+            @Override
+            public void run() {
+                drainDue();
+            }
+        });
+    }
+
+    /**
+     * Returns the send priority of the message type, 0 is the highest one.
+     *
+     * @param type  The Tpsn message type.
+     * @return      The priority.
+     */
+    static int priorityOf(TpsnMessageType type) {
+        switch (type) {
+            case ACK:
+            case AGGREGATED_ACK:
+                return 0;
+            case SYNC_PULSE:
+            case TIME_SYNC:
+                return 1;
+            default:
+                return 2;
+        }
+    }
+
+    /**
+     * Queues the message to each of the peers.
+     *
+     * @param peerIds   The Ids of the destination peers.
+     * @param message   The message.
+     * @param data      The encoded message shared by the peers, or null to encode it
+     *                  at each send.
+     * @param window    The pacing window (ms) of the burst, 0 to send at once.
+     */
+    void send(Collection<String> peerIds, BaseTpsnMessage message, byte[] data, long window) {
+        if (peerIds.isEmpty()) {
+            return;
+        }
+
+        long enqueueTime = System.nanoTime();
+        int owner;
+        synchronized (this) {
+            ArrayDeque<Entry> queue = queues[priorityOf(message.getType())];
+            for (String peerId : peerIds) {
+                queue.add(new Entry(peerId, message, data, enqueueTime));
+            }
+            pending += peerIds.size();
+            burstSize += peerIds.size();
+            this.window = window;
+            if (draining) {
+                return;
+            }
+            draining = true;
+            owner = generation;
+            burstStart = enqueueTime;
+            burstSent = 0;
+        }
+        drain(owner);
+    }
+
+    /**
+     * Drops the queued messages. A message being sent meanwhile is the last one
+     * of its drainer, the next send starts a new one.
+     */
+    synchronized void clear() {
+        for (ArrayDeque<Entry> queue : queues) {
+            queue.clear();
+        }
+        pending = 0;
+        burstSize = 0;
+        burstSent = 0;
+        draining = false;
+        waiting = false;
+        generation++;
+        drainTimeout.cancel();
+    }
+
+    /**
+     * Resumes the draining after the wait for the next due message,
+     * unless the queue was cleared meanwhile.
+     */
+    private void drainDue() {
+        int owner;
+        synchronized (this) {
+            if (!waiting) {
+                return;
+            }
+            waiting = false;
+            owner = generation;
+        }
+        drain(owner);
+    }
+
+    /**
+     * Sends the messages that are due, the k-th message of a burst is due
+     * k * window / burst size after the burst start. Several messages may be due
+     * at once if the scheduler ticks are coarser than the gaps between them.
+     *
+     * @param owner The generation of the drainer.
+     */
+    private void drain(int owner) {
+        while (true) {
+            Entry entry;
+            synchronized (this) {
+                if (owner != generation) {
+                    return;
+                }
+                if (pending == 0) {
+                    draining = false;
+                    burstSize = 0;
+                    return;
+                }
+                long dueTime = burstStart + window * 1000000 * burstSent / burstSize;
+                long wait = dueTime - System.nanoTime();
+                if (wait > 0) {
+                    waiting = true;
+                    drainTimeout.schedule((wait + 999999) / 1000000);
+                    return;
+                }
+                entry = poll();
+                pending--;
+                burstSent++;
+            }
+
+            long queueDelay = (System.nanoTime() - entry.enqueueTime) / 1000000;
+            sink.send(entry.peerId, entry.message, entry.data, queueDelay);
+        }
+    }
+
+    private Entry poll() {
+        for (ArrayDeque<Entry> queue : queues) {
+            Entry entry = queue.poll();
+            if (entry != null) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    private static final class Entry {
+        private final String peerId;
+        private final BaseTpsnMessage message;
+        private final byte[] data;
+        private final long enqueueTime;
+
+        Entry(String peerId, BaseTpsnMessage message, byte[] data, long enqueueTime) {
+            this.peerId = peerId;
+            this.message = message;
+            this.data = data;
+            this.enqueueTime = enqueueTime;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package io.left.tpsn;
+
+import java.util.Arrays;
+
+/**
+ * Sync-Pulse messages collected by a parent node, to be answered by one aggregated Ack message.
+ * The class is thread safe.
+ */
+final class PendingAcks {
+
+    private static final int INITIAL_CAPACITY = 8;
+
+    private String[] receiverIds = new String[INITIAL_CAPACITY];
+    private long[] timeStamps1 = new long[INITIAL_CAPACITY];
+    private long[] timeStamps2 = new long[INITIAL_CAPACITY];
+    private int count = 0;
+
+    /**
+     * Adds the Sync-Pulse message to answer. A repeated Sync-Pulse of the same child
+     * replaces the previous one.
+     *
+     * @param receiverId    The Id of the child node.
+     * @param timeStamp1    The Sync-Pulse sending time (T1).
+     * @param timeStamp2    The Sync-Pulse receiving time (T2).
+     * @return              True if it's the first pending entry, otherwise False.
+     */
+    synchronized boolean add(String receiverId, long timeStamp1, long timeStamp2) {
+        for (int i = 0; i < count; i++) {
+            if (receiverIds[i].equals(receiverId)) {
+                timeStamps1[i] = timeStamp1;
+                timeStamps2[i] = timeStamp2;
+                return false;
+            }
+        }
+
+        if (count == receiverIds.length) {
+            receiverIds = Arrays.copyOf(receiverIds, count * 2);
+            timeStamps1 = Arrays.copyOf(timeStamps1, count * 2);
+            timeStamps2 = Arrays.copyOf(timeStamps2, count * 2);
+        }
+
+        receiverIds[count] = receiverId;
+        timeStamps1[count] = timeStamp1;
+        timeStamps2[count] = timeStamp2;
+        count++;
+
+        return count == 1;
+    }
+
+    /**
+     * Moves all pending entries to the aggregated Ack message.
+     *
+     * @param msg   The aggregated Ack message.
+     * @return      False if there were no pending entries, otherwise True.
+     */
+    synchronized boolean drainTo(BaseTpsnMessage msg) {
+        if (count == 0) {
+            return false;
+        }
+
+        msg.setAckEntries(Arrays.copyOf(receiverIds, count), Arrays.copyOf(timeStamps1, count),
+                Arrays.copyOf(timeStamps2, count));
+        clear();
+
+        return true;
+    }
+
+    /**
+     * Removes all pending entries.
+     */
+    synchronized void clear() {
+        Arrays.fill(receiverIds, 0, count, null);
+        count = 0;
+    }
+}
@@ -0,0 +1,121 @@
+package io.left.tpsn;
+
+/**
+ * The frame of the application data carrying the Tpsn timestamps: a marker byte,
+ * the sync domain Id and the sync epoch like in {@link TpsnFrame},
+ * NTP like origin, receive and transmit timestamps, and the application payload.
+ * Any application frame answers the last frame of the peer, so the application traffic
+ * between a child and its parent keeps their clocks synchronized without Tpsn messages.
+ */
+public final class PiggybackFrame {
+
+    /**
+     * The first byte of every application frame.
+     */
+    public static final byte MARKER = (byte) 0x41;
+
+    /**
+     * The length of the frame header in bytes.
+     */
+    public static final int HEADER_LENGTH = 33;
+
+    private PiggybackFrame() {
+    }
+
+    /**
+     * Creates the frame of the application payload.
+     *
+     * @param domainId      The sync domain Id of the sender.
+     * @param epoch         The sync epoch of the sender.
+     * @param originTime    The transmit time of the last frame received from the peer,
+     *                      in the peer's synchronized time, or 0 if none.
+     * @param receiveTime   The synchronized time of the last frame reception, or 0 if none.
+     * @param transmitTime  The synchronized time of this frame transmission.
+     * @param payload       The application payload.
+     * @return              The frame.
+     */
+    static byte[] wrap(int domainId, int epoch, long originTime, long receiveTime,
+                       long transmitTime, byte[] payload) {
+        byte[] frame = new byte[HEADER_LENGTH + payload.length];
+        frame[0] = MARKER;
+        putInt(frame, 1, domainId);
+        putInt(frame, 5, epoch);
+        putLong(frame, 9, originTime);
+        putLong(frame, 17, receiveTime);
+        putLong(frame, 25, transmitTime);
+        System.arraycopy(payload, 0, frame, HEADER_LENGTH, payload.length);
+        return frame;
+    }
+
+    /**
+     * Returns if the data is an application frame.
+     *
+     * @param data  The received data.
+     * @return      True if the data starts with the application frame header.
+     */
+    public static boolean isFrame(byte[] data) {
+        return data != null && data.length >= HEADER_LENGTH && data[0] == MARKER;
+    }
+
+    /**
+     * Returns the sync domain Id of the frame.
+     *
+     * @param frame The application frame.
+     * @return      The sync domain Id.
+     */
+    public static int getDomainId(byte[] frame) {
+        return getInt(frame, 1);
+    }
+
+    /**
+     * Returns the sync epoch of the frame.
+     *
+     * @param frame The application frame.
+     * @return      The sync epoch, 0 if the sender doesn't know it yet.
+     */
+    public static int getEpoch(byte[] frame) {
+        return getInt(frame, 5);
+    }
+
+    static long getOriginTime(byte[] frame) {
+        return getLong(frame, 9);
+    }
+
+    static long getReceiveTime(byte[] frame) {
+        return getLong(frame, 17);
+    }
+
+    static long getTransmitTime(byte[] frame) {
+        return getLong(frame, 25);
+    }
+
+    private static void putInt(byte[] data, int index, int value) {
+        for (int i = 3; i >= 0; i--) {
+            data[index + i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+
+    private static int getInt(byte[] data, int index) {
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+            value = (value << 8) | (data[index + i] & 0xFF);
+        }
+        return value;
+    }
+
+    private static void putLong(byte[] data, int index, long value) {
+        for (int i = 7; i >= 0; i--) {
+            data[index + i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+
+    private static long getLong(byte[] data, int index) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (data[index + i] & 0xFF);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,63 @@
+package io.left.tpsn;
+
+/**
+ * The timestamps of the application frames exchanged with a peer.
+ * The class is thread safe.
+ */
+final class PiggybackPeer {
+
+    private long lastTransmitTime = 0;
+    private long lastTransmitOffset = 0;
+    private long peerTransmitTime = 0;
+    private long peerReceiveTime = 0;
+    private long peerReceiveOffset = 0;
+
+    /**
+     * Stamps a frame to send to the peer. The last frame of the peer is answered only
+     * if the clock offset hasn't changed since its reception, so the receive and transmit
+     * times of the answer are of the same offset.
+     *
+     * @param domainId      The sync domain Id of this node.
+     * @param epoch         The sync epoch of this node.
+     * @param transmitTime  The synchronized time of the transmission.
+     * @param clockOffset   The clock offset included in the transmit time.
+     * @param payload       The application payload.
+     * @return              The application frame.
+     */
+    synchronized byte[] stamp(int domainId, int epoch, long transmitTime, long clockOffset,
+                              byte[] payload) {
+        lastTransmitTime = transmitTime;
+        lastTransmitOffset = clockOffset;
+        if (clockOffset != peerReceiveOffset) {
+            return PiggybackFrame.wrap(domainId, epoch, 0, 0, transmitTime, payload);
+        }
+        return PiggybackFrame.wrap(domainId, epoch, peerTransmitTime, peerReceiveTime,
+                transmitTime, payload);
+    }
+
+    /**
+     * Records a frame received from the peer.
+     *
+     * @param frame         The application frame.
+     * @param receiveTime   The synchronized time of the reception.
+     * @param clockOffset   The clock offset included in the receive time.
+     * @return              The (T1, T2, T3, T4) timestamps if the frame answers the last frame
+     *                      sent to the peer with the same clock offset, otherwise null.
+     */
+    synchronized long[] receive(byte[] frame, long receiveTime, long clockOffset) {
+        long originTime = PiggybackFrame.getOriginTime(frame);
+        peerTransmitTime = PiggybackFrame.getTransmitTime(frame);
+        peerReceiveTime = receiveTime;
+        peerReceiveOffset = clockOffset;
+
+        if (originTime == 0 || originTime != lastTransmitTime
+                || clockOffset != lastTransmitOffset) {
+            return null;
+        }
+
+        //Each sent frame is answered once
+        lastTransmitTime = 0;
+        return new long[] {originTime, PiggybackFrame.getReceiveTime(frame),
+                peerTransmitTime, receiveTime};
+    }
+}
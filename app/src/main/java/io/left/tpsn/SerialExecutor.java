@@ -0,0 +1,66 @@
+package io.left.tpsn;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+
+/**
+ * Runs the tasks one at a time, in the submission order, on a shared executor.
+ * Many serial executors multiplex their tasks onto the threads of one pool,
+ * while the tasks of each one never run concurrently.
+ */
+final class SerialExecutor implements Executor {
+
+    private final Executor executor;
+    private final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+    private boolean running = false;
+
+    private final Runnable drainTask = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    /**
+     * Creates the executor.
+     *
+     * @param executor  The shared executor running the tasks.
+     */
+    SerialExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        synchronized (tasks) {
+            tasks.add(task);
+            if (running) {
+                return;
+            }
+            running = true;
+        }
+        executor.execute(drainTask);
+    }
+
+    private void drain() {
+        while (true) {
+            Runnable task;
+            synchronized (tasks) {
+                task = tasks.poll();
+                if (task == null) {
+                    running = false;
+                    return;
+                }
+            }
+
+            // CHECKSTYLE IGNORE IllegalCatchCheck
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                Thread.currentThread().getUncaughtExceptionHandler()
+                        .uncaughtException(Thread.currentThread(), e);
+            }
+            // CHECKSTYLE END IGNORE IllegalCatchCheck
+        }
+    }
+}
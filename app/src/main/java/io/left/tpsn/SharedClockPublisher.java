@@ -0,0 +1,80 @@
+package io.left.tpsn;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Publishes the clock snapshots of a sync manager to a memory-mapped file,
+ * read by the other processes of the device with {@link SharedClockReader}
+ * without any IPC call. The snapshot is written under a seqlock: the sequence
+ * is odd while the fields are being written, and advanced to the next even value after,
+ * so a reader retries the snapshots it read while they changed.
+ * There is a single writer per file.
+ */
+public final class SharedClockPublisher {
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer buffer;
+    private int sequence;
+
+    /**
+     * Creates the file if needed and publishes the unsynchronized clock.
+     *
+     * @param path          The shared file, readable by the other processes.
+     * @throws IOException  If failed to create or map the file.
+     */
+    public SharedClockPublisher(File path) throws IOException {
+        file = new RandomAccessFile(path, "rw");
+        file.setLength(SharedClockReader.FILE_LENGTH);
+        buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0,
+                SharedClockReader.FILE_LENGTH);
+        buffer.order(ByteOrder.nativeOrder());
+        //Continues the sequence of a previous publisher, so the readers see the new snapshots
+        sequence = (buffer.getInt(SharedClockReader.SEQUENCE_OFFSET) + 1) & ~1;
+
+        buffer.putInt(SharedClockReader.MAGIC_OFFSET, 0);
+        buffer.putInt(SharedClockReader.VERSION_OFFSET, SharedClockReader.VERSION);
+        publish(ClockSnapshot.UNSYNCHRONIZED, 0);
+        SharedClockReader.fence();
+        buffer.putInt(SharedClockReader.MAGIC_OFFSET, SharedClockReader.MAGIC);
+    }
+
+    /**
+     * Publishes the snapshot.
+     *
+     * @param snapshot  The clock snapshot, with its skew.
+     * @param epoch     The sync epoch of the snapshot.
+     */
+    public synchronized void publish(ClockSnapshot snapshot, int epoch) {
+        buffer.putInt(SharedClockReader.SEQUENCE_OFFSET, ++sequence);
+        SharedClockReader.fence();
+
+        buffer.putInt(SharedClockReader.EPOCH_OFFSET, epoch);
+        buffer.putInt(SharedClockReader.FLAGS_OFFSET,
+                snapshot.isSynchronized() ? SharedClockReader.FLAG_SYNCHRONIZED : 0);
+        buffer.putLong(SharedClockReader.ANCHOR_OFFSET, snapshot.getAnchor());
+        buffer.putLong(SharedClockReader.START_OFFSET_OFFSET, snapshot.getStartOffset());
+        buffer.putLong(SharedClockReader.OFFSET_OFFSET, snapshot.getOffset());
+        buffer.putLong(SharedClockReader.SLEW_RATE_OFFSET, snapshot.getSlewRatePpm());
+        buffer.putLong(SharedClockReader.ERROR_OFFSET, snapshot.getError());
+        buffer.putLong(SharedClockReader.DRIFT_OFFSET, snapshot.getDriftPpm());
+        buffer.putDouble(SharedClockReader.SKEW_OFFSET, snapshot.getSkew());
+
+        SharedClockReader.fence();
+        buffer.putInt(SharedClockReader.SEQUENCE_OFFSET, ++sequence);
+    }
+
+    /**
+     * Closes the file, the last snapshot stays readable.
+     * The mapping is released when the publisher is garbage collected.
+     *
+     * @throws IOException  If failed to close the file.
+     */
+    public void close() throws IOException {
+        file.close();
+    }
+}
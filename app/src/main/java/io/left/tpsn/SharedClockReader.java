@@ -0,0 +1,186 @@
+package io.left.tpsn;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads the synchronized time from the memory-mapped file of a {@link SharedClockPublisher},
+ * usually in another process. A read makes no system calls and takes no locks:
+ * while the published sequence is unchanged the cached snapshot is used,
+ * otherwise the snapshot is read again under the seqlock.
+ * Can be called from any thread. TpsnBenchmark measures the reads of a thread,
+ * about 20M now() calls a second on a desktop JVM.
+ *
+ * <p>The file holds, in the native byte order:
+ * <pre>
+ *  0 int    magic, set once the file is initialized
+ *  4 int    version
+ *  8 int    sequence, odd while the snapshot is written
+ * 12 int    sync epoch
+ * 16 int    flags, bit 0 set if synchronized
+ * 24 long   anchor, local System.currentTimeMillis() of the synchronization
+ * 32 long   clock offset (ms) at the anchor
+ * 40 long   estimated clock offset (ms) the offset slews to
+ * 48 long   slew rate (ppm)
+ * 56 long   estimated error (ms) at the anchor
+ * 64 long   error growth rate (ppm)
+ * 72 double skew, the rate (ms per local ms) the clock offset changes at
+ * </pre>
+ */
+public final class SharedClockReader {
+
+    static final int MAGIC = 0x54435331;
+    static final int VERSION = 1;
+    static final int MAGIC_OFFSET = 0;
+    static final int VERSION_OFFSET = 4;
+    static final int SEQUENCE_OFFSET = 8;
+    static final int EPOCH_OFFSET = 12;
+    static final int FLAGS_OFFSET = 16;
+    static final int ANCHOR_OFFSET = 24;
+    static final int START_OFFSET_OFFSET = 32;
+    static final int OFFSET_OFFSET = 40;
+    static final int SLEW_RATE_OFFSET = 48;
+    static final int ERROR_OFFSET = 56;
+    static final int DRIFT_OFFSET = 64;
+    static final int SKEW_OFFSET = 72;
+    static final int FILE_LENGTH = 80;
+    static final int FLAG_SYNCHRONIZED = 1;
+
+    /**
+     * The buffers have no memory fences before Java 9. A volatile write followed by
+     * a volatile read of this field is a full fence: the accesses before the write
+     * can't move after it, and the accesses after the read can't move before it.
+     */
+    private static volatile int fence;
+
+    private final MappedByteBuffer buffer;
+    private volatile Cached cached = new Cached(0, ClockSnapshot.UNSYNCHRONIZED, 0);
+
+    /**
+     * Maps the file of the publisher.
+     *
+     * @param path          The shared file.
+     * @throws IOException  If failed to map the file, or it's not initialized yet.
+     */
+    public SharedClockReader(File path) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(path, "r");
+        try {
+            if (file.length() < FILE_LENGTH) {
+                throw new IOException("Not a shared clock file: " + path);
+            }
+            buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, FILE_LENGTH);
+        } finally {
+            file.close();
+        }
+        buffer.order(ByteOrder.nativeOrder());
+
+        if (buffer.getInt(MAGIC_OFFSET) != MAGIC) {
+            throw new IOException("The shared clock file is not initialized: " + path);
+        }
+        if (buffer.getInt(VERSION_OFFSET) != VERSION) {
+            throw new IOException("Unknown shared clock version: "
+                    + buffer.getInt(VERSION_OFFSET));
+        }
+    }
+
+    /**
+     * Returns the synchronized time.
+     *
+     * @return  The synchronized time in ms.
+     */
+    public long now() {
+        return getSnapshot().getSyncedTime(System.currentTimeMillis());
+    }
+
+    /**
+     * Fills the result with the synchronized time and its estimated error bound.
+     *
+     * @param result    The object to fill.
+     * @return          The result object.
+     */
+    public SyncedTime now(SyncedTime result) {
+        return getSnapshot().fill(System.currentTimeMillis(), result);
+    }
+
+    /**
+     * Returns the last published snapshot.
+     *
+     * @return  The clock snapshot.
+     */
+    public ClockSnapshot getSnapshot() {
+        return read().snapshot;
+    }
+
+    /**
+     * Returns the sync epoch of the last published snapshot.
+     *
+     * @return  The sync epoch.
+     */
+    public int getEpoch() {
+        return read().epoch;
+    }
+
+    /**
+     * Returns the rate the clock offset changes at.
+     *
+     * @return  The skew in ms per local ms, 0 if unknown.
+     */
+    public double getSkew() {
+        return read().snapshot.getSkew();
+    }
+
+    private Cached read() {
+        Cached current = cached;
+        int sequence = buffer.getInt(SEQUENCE_OFFSET);
+        if (sequence == current.sequence) {
+            return current;
+        }
+
+        while (true) {
+            if ((sequence & 1) == 0) {
+                fence();
+                int epoch = buffer.getInt(EPOCH_OFFSET);
+                boolean synchronizedClock
+                        = (buffer.getInt(FLAGS_OFFSET) & FLAG_SYNCHRONIZED) != 0;
+                ClockSnapshot snapshot = new ClockSnapshot(buffer.getLong(ANCHOR_OFFSET),
+                        buffer.getLong(START_OFFSET_OFFSET), buffer.getLong(OFFSET_OFFSET),
+                        buffer.getLong(SLEW_RATE_OFFSET), buffer.getLong(ERROR_OFFSET),
+                        buffer.getLong(DRIFT_OFFSET), synchronizedClock)
+                        .withSkew(buffer.getDouble(SKEW_OFFSET));
+                fence();
+
+                if (buffer.getInt(SEQUENCE_OFFSET) == sequence) {
+                    current = new Cached(sequence, snapshot, epoch);
+                    cached = current;
+                    return current;
+                }
+            }
+            Thread.yield();
+            sequence = buffer.getInt(SEQUENCE_OFFSET);
+        }
+    }
+
+    /**
+     * Keeps the buffer accesses before and after the call in order.
+     */
+    static int fence() {
+        fence = 0;
+        return fence;
+    }
+
+    private static final class Cached {
+        private final int sequence;
+        private final ClockSnapshot snapshot;
+        private final int epoch;
+
+        Cached(int sequence, ClockSnapshot snapshot, int epoch) {
+            this.sequence = sequence;
+            this.snapshot = snapshot;
+            this.epoch = epoch;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package io.left.tpsn;
+
+/**
+ * Immutable summary of the synchronization health of a group of nodes,
+ * e.g. of the subtree of a node in the sync tree.
+ * Summaries are merged without losing anything, so they can be aggregated level by level.
+ * The errors and the levels are of the synchronized nodes only.
+ */
+public final class SyncHealth {
+
+    /**
+     * The summary of no nodes.
+     */
+    public static final SyncHealth EMPTY = new SyncHealth(0, 0, 0, 0, 0);
+
+    private final int nodeCount;
+    private final int unsynchronizedCount;
+    private final int maxLevel;
+    private final long maxError;
+    private final long errorSum;
+
+    /**
+     * Creates the summary.
+     *
+     * @param nodeCount             The number of the nodes.
+     * @param unsynchronizedCount   The number of the nodes that are not synchronized.
+     * @param maxLevel              The deepest tree level of the synchronized nodes.
+     * @param maxError              The largest estimated error (ms) of the synchronized nodes.
+     * @param errorSum              The sum of the estimated errors (ms)
+     *                              of the synchronized nodes.
+     */
+    public SyncHealth(int nodeCount, int unsynchronizedCount, int maxLevel, long maxError,
+                      long errorSum) {
+        this.nodeCount = nodeCount;
+        this.unsynchronizedCount = unsynchronizedCount;
+        this.maxLevel = maxLevel;
+        this.maxError = maxError;
+        this.errorSum = errorSum;
+    }
+
+    /**
+     * Creates the summary of a single node.
+     *
+     * @param level             The tree level of the node.
+     * @param error             The estimated error (ms) of the node.
+     * @param synchronizedClock True if the node is synchronized.
+     * @return                  The summary.
+     */
+    public static SyncHealth ofNode(int level, long error, boolean synchronizedClock) {
+        if (!synchronizedClock || error == SyncedTime.UNKNOWN_ERROR) {
+            return new SyncHealth(1, 1, 0, 0, 0);
+        }
+        return new SyncHealth(1, 0, level, error, error);
+    }
+
+    /**
+     * Returns the summary of the nodes of both summaries.
+     *
+     * @param other The other summary.
+     * @return      The merged summary.
+     */
+    public SyncHealth merge(SyncHealth other) {
+        return new SyncHealth(nodeCount + other.nodeCount,
+                unsynchronizedCount + other.unsynchronizedCount,
+                Math.max(maxLevel, other.maxLevel), Math.max(maxError, other.maxError),
+                errorSum + other.errorSum);
+    }
+
+    /**
+     * Returns the number of the nodes.
+     *
+     * @return  The node count.
+     */
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * Returns the number of the nodes that are not synchronized.
+     *
+     * @return  The unsynchronized node count.
+     */
+    public int getUnsynchronizedCount() {
+        return unsynchronizedCount;
+    }
+
+    /**
+     * Returns the deepest tree level of the synchronized nodes.
+     *
+     * @return  The tree level.
+     */
+    public int getMaxLevel() {
+        return maxLevel;
+    }
+
+    /**
+     * Returns the largest estimated error of the synchronized nodes.
+     *
+     * @return  The error in ms, 0 if no node is synchronized.
+     */
+    public long getMaxError() {
+        return maxError;
+    }
+
+    /**
+     * Returns the sum of the estimated errors of the synchronized nodes.
+     *
+     * @return  The error sum in ms.
+     */
+    public long getErrorSum() {
+        return errorSum;
+    }
+
+    /**
+     * Returns the mean estimated error of the synchronized nodes.
+     *
+     * @return  The error in ms, or {@link SyncedTime#UNKNOWN_ERROR} if no node is synchronized.
+     */
+    public long getMeanError() {
+        int synchronizedCount = nodeCount - unsynchronizedCount;
+        return synchronizedCount > 0 ? errorSum / synchronizedCount : SyncedTime.UNKNOWN_ERROR;
+    }
+
+    @Override
+    public String toString() {
+        return "nodes: " + nodeCount + ", unsynchronized: " + unsynchronizedCount
+                + ", max level: " + maxLevel + ", max error: " + maxError
+                + ", mean error: " + (nodeCount > unsynchronizedCount ? getMeanError() : "-");
+    }
+}
@@ -0,0 +1,158 @@
+package io.left.tpsn;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * The synchronization state of a node, persisted in order to continue
+ * from it after a restart instead of joining the tree from scratch.
+ * The state is anchored both to the wall clock and to a {@link MonotonicClock}
+ * counting the sleep, so the restore can detect a reboot or a wall clock change in between.
+ */
+public final class SyncState {
+
+    private static final int FORMAT_VERSION = 2;
+
+    private final long wallTime;
+    private final long monotonicTime;
+    private final long offset;
+    private final double skew;
+    private final long error;
+    private final int level;
+    private final String parentId;
+    private final int epoch;
+
+    /**
+     * Creates the state.
+     *
+     * @param wallTime      Local System.currentTimeMillis() of the synchronization.
+     * @param monotonicTime Local {@link MonotonicClock} time (ns) of the synchronization.
+     * @param offset        The clock offset (ms).
+     * @param skew          The clock skew (ms per local ms).
+     * @param error         The estimated error (ms).
+     * @param level         The Tpsn tree level.
+     * @param parentId      The Id of the parent node.
+     * @param epoch         The sync epoch of the run the node was synchronized in.
+     */
+    public SyncState(long wallTime, long monotonicTime, long offset, double skew, long error,
+                     int level, String parentId, int epoch) {
+        this.wallTime = wallTime;
+        this.monotonicTime = monotonicTime;
+        this.offset = offset;
+        this.skew = skew;
+        this.error = error;
+        this.level = level;
+        this.parentId = parentId;
+        this.epoch = epoch;
+    }
+
+    public long getWallTime() {
+        return wallTime;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    public double getSkew() {
+        return skew;
+    }
+
+    public long getError() {
+        return error;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    public String getParentId() {
+        return parentId;
+    }
+
+    public int getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * Returns the time (ms) elapsed since the synchronization according to the monotonic clock,
+     * or -1 if the monotonic and the wall clock disagree by more than the tolerance,
+     * meaning the device was rebooted or the wall clock was changed.
+     *
+     * @param wallNow       Current System.currentTimeMillis().
+     * @param monotonicNow  Current {@link MonotonicClock} time in ns.
+     * @param tolerance     The tolerated disagreement in ms.
+     * @return              The elapsed time in ms, or -1 if the state can't be trusted.
+     */
+    public long getElapsedTime(long wallNow, long monotonicNow, long tolerance) {
+        long elapsed = (monotonicNow - monotonicTime) / 1000000;
+        if (elapsed < 0 || Math.abs((wallNow - wallTime) - elapsed) > tolerance) {
+            return -1;
+        }
+        return elapsed;
+    }
+
+    /**
+     * Returns the offset extrapolated with the skew to the elapsed time.
+     *
+     * @param elapsed   Time (ms) elapsed since the synchronization.
+     * @return          The provisional offset in ms.
+     */
+    public long getOffsetAfter(long elapsed) {
+        return offset + Math.round(skew * elapsed);
+    }
+
+    /**
+     * Returns the error grown with the clock drift bound over the elapsed time.
+     *
+     * @param elapsed   Time (ms) elapsed since the synchronization.
+     * @return          The provisional error in ms.
+     */
+    public long getErrorAfter(long elapsed) {
+        return error + elapsed * ClockSnapshot.CLOCK_DRIFT_BOUND_PPM / 1000000;
+    }
+
+    /**
+     * Writes the state.
+     *
+     * @param out           The output to write to.
+     * @throws IOException  If failed to write.
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(FORMAT_VERSION);
+        out.writeLong(wallTime);
+        out.writeLong(monotonicTime);
+        out.writeLong(offset);
+        out.writeDouble(skew);
+        out.writeLong(error);
+        out.writeInt(level);
+        out.writeUTF(parentId == null ? "" : parentId);
+        out.writeInt(epoch);
+    }
+
+    /**
+     * Reads the state written by {@link #writeTo(DataOutput)}.
+     *
+     * @param in            The input to read from.
+     * @return              The state.
+     * @throws IOException  If failed to read or the data format is unknown.
+     */
+    public static SyncState readFrom(DataInput in) throws IOException {
+        int version = in.readInt();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unknown sync state format: " + version);
+        }
+
+        long wallTime = in.readLong();
+        long monotonicTime = in.readLong();
+        long offset = in.readLong();
+        double skew = in.readDouble();
+        long error = in.readLong();
+        int level = in.readInt();
+        String parentId = in.readUTF();
+        int epoch = in.readInt();
+        return new SyncState(wallTime, monotonicTime, offset, skew, error, level,
+                parentId.isEmpty() ? null : parentId, epoch);
+    }
+}
@@ -0,0 +1,130 @@
+package io.left.tpsn;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Stores the {@link SyncState} in a file.
+ * The state is written to a temporary file first and then renamed,
+ * so a crash during the write never leaves a corrupted state behind.
+ * The {@link LinkAsymmetry} corrections are stored in a sibling file, they stay valid
+ * after a reboot and are not deleted with the state.
+ */
+public class SyncStateStore {
+
+    private final File file;
+    private final File tmpFile;
+    private final File linksFile;
+
+    /**
+     * Creates the store.
+     *
+     * @param file  The file to store the state in.
+     */
+    public SyncStateStore(File file) {
+        this.file = file;
+        this.tmpFile = new File(file.getPath() + ".tmp");
+        this.linksFile = new File(file.getPath() + ".links");
+    }
+
+    /**
+     * Saves the state, replacing the previous one.
+     *
+     * @param state         The state to save.
+     * @throws IOException  If failed to write the file.
+     */
+    public synchronized void save(SyncState state) throws IOException {
+        DataOutputStream out = openTmpFile();
+        try {
+            state.writeTo(out);
+        } finally {
+            out.close();
+        }
+
+        replaceWithTmpFile(file);
+    }
+
+    /**
+     * Saves the link asymmetry corrections, replacing the previous ones.
+     *
+     * @param linkAsymmetry The link asymmetry to save.
+     * @throws IOException  If failed to write the file.
+     */
+    public synchronized void saveLinkAsymmetry(LinkAsymmetry linkAsymmetry) throws IOException {
+        DataOutputStream out = openTmpFile();
+        try {
+            linkAsymmetry.writeTo(out);
+        } finally {
+            out.close();
+        }
+
+        replaceWithTmpFile(linksFile);
+    }
+
+    /**
+     * Loads the saved link asymmetry corrections.
+     *
+     * @param linkAsymmetry The link asymmetry to load the corrections to.
+     * @return              True if loaded, False if no corrections were saved.
+     * @throws IOException  If failed to read the file.
+     */
+    public synchronized boolean loadLinkAsymmetry(LinkAsymmetry linkAsymmetry)
+            throws IOException {
+        if (!linksFile.exists()) {
+            return false;
+        }
+
+        DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(linksFile)));
+        try {
+            linkAsymmetry.readFrom(in);
+        } finally {
+            in.close();
+        }
+        return true;
+    }
+
+    /**
+     * Loads the saved state.
+     *
+     * @return              The state, or null if no state was saved.
+     * @throws IOException  If failed to read the file.
+     */
+    public synchronized SyncState load() throws IOException {
+        if (!file.exists()) {
+            return null;
+        }
+
+        DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)));
+        try {
+            return SyncState.readFrom(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Deletes the saved state.
+     */
+    public synchronized void clear() {
+        file.delete();
+        tmpFile.delete();
+    }
+
+    private DataOutputStream openTmpFile() throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+    }
+
+    private void replaceWithTmpFile(File target) throws IOException {
+        if (!tmpFile.renameTo(target)) {
+            throw new IOException("Failed to rename " + tmpFile + " to " + target);
+        }
+    }
+}
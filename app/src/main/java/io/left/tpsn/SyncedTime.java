@@ -0,0 +1,74 @@
+package io.left.tpsn;
+
+/**
+ * A synchronized timestamp together with its estimated error bound.
+ * The object is mutable so the callers can reuse it and query the time without allocations.
+ */
+public final class SyncedTime {
+
+    /**
+     * Error bound value used when the clock is not synchronized.
+     */
+    public static final long UNKNOWN_ERROR = Long.MAX_VALUE;
+
+    private long time;
+    private long errorBound = UNKNOWN_ERROR;
+    private boolean synchronizedTime;
+
+    /**
+     * Sets the timestamp data.
+     *
+     * @param time              The synchronized time in ms.
+     * @param errorBound        The estimated error bound in ms.
+     * @param synchronizedTime  True if the clock was synchronized.
+     */
+    public void set(long time, long errorBound, boolean synchronizedTime) {
+        this.time = time;
+        this.errorBound = errorBound;
+        this.synchronizedTime = synchronizedTime;
+    }
+
+    /**
+     * Returns the synchronized time.
+     *
+     * @return  The synchronized time in ms.
+     */
+    public long getTime() {
+        return time;
+    }
+
+    /**
+     * Returns the estimated error bound, the true synchronized time is expected
+     * to be within [time - errorBound, time + errorBound].
+     *
+     * @return  The error bound in ms, or {@link #UNKNOWN_ERROR} if not synchronized.
+     */
+    public long getErrorBound() {
+        return errorBound;
+    }
+
+    /**
+     * Returns if the clock was synchronized when the time was taken.
+     *
+     * @return  True if synchronized, otherwise False.
+     */
+    public boolean isSynchronized() {
+        return synchronizedTime;
+    }
+
+    /**
+     * Checks if the timestamp is trustworthy enough for the given accuracy.
+     *
+     * @param maxError  The maximum acceptable error in ms.
+     * @return          True if synchronized and the error bound is within maxError.
+     */
+    public boolean isAccurateTo(long maxError) {
+        return synchronizedTime && errorBound <= maxError;
+    }
+
+    @Override
+    public String toString() {
+        return time + " +/- " + (errorBound == UNKNOWN_ERROR ? "?" : String.valueOf(errorBound))
+                + " ms";
+    }
+}
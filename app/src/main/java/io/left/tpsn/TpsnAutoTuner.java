@@ -0,0 +1,194 @@
+package io.left.tpsn;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Adjusts the {@link TpsnConfig} of a node online, from what the node observes
+ * of the network, to shorten the time to sync without sending more messages.
+ * <ul>
+ * <li>The timeout follows the round trip delays, like the TCP retransmission timeout,
+ * so a lost Sync-Pulse is retransmitted soon but a slow Ack isn't.</li>
+ * <li>The retransmits follow the loss rate, a dead parent is declared when
+ * the chance that all the retransmits were lost is below 0.1%.</li>
+ * <li>The random interval spreads the Sync-Pulses of the parent's children,
+ * it grows with their number and the round trip delay, and with the collision rate:
+ * the share of the Sync-Pulses answered after an Ack to a sibling.</li>
+ * <li>The tree construction time of the root follows the tree depth.</li>
+ * </ul>
+ * The round trip delays come from every exchange, the Sync-Pulses, the application frames
+ * and the children's link reports, so the timeout and the random interval are live.
+ * The loss and collision rates need the Sync-Pulses, which a node sends only in the sync
+ * phase, on the retransmits and on a parent switch. Their counts are kept across
+ * the calls of {@link #tune(TpsnConfig)} until there are enough of them,
+ * so on a stable tree the retransmits and the spread adapt slowly, if ever.
+ * Thread safe.
+ */
+public final class TpsnAutoTuner {
+
+    /**
+     * The shortest tuned time (ms).
+     */
+    private static final long MIN_TIME = 100;
+
+    /**
+     * The shortest tuned timeout (ms), the parent may delay its Ack.
+     */
+    private static final long MIN_TIMEOUT = 1000;
+
+    private static final int MIN_RETRANSMITS = 2;
+
+    private static final int MAX_RETRANSMITS = 10;
+
+    /**
+     * Accepted chance that all the retransmits to a live parent are lost.
+     */
+    private static final double DEAD_PARENT_ERROR = 1e-3;
+
+    /**
+     * The least number of the Sync-Pulses to measure the loss and collision rates from.
+     */
+    private static final int MIN_PULSES = 5;
+
+    /**
+     * Collision rate above which the random interval is doubled.
+     */
+    private static final double HIGH_COLLISION_RATE = 0.1;
+
+    /**
+     * Collision rate below which the random interval is shrunk.
+     */
+    private static final double LOW_COLLISION_RATE = 0.02;
+
+    private static final double MAX_SPREAD_FACTOR = 64;
+
+    /**
+     * Time (ms) a tree level adds to the Level-Discovery wave besides the delay.
+     */
+    private static final long LEVEL_SETTLE_TIME = 100;
+
+    private double smoothedRoundTrip = -1;
+    private double roundTripVariance = 0;
+    private double lossRate = 0;
+    private double spreadFactor = 4;
+    private int pulses = 0;
+    private int timeouts = 0;
+    private int collisions = 0;
+    private int treeDepth = 0;
+    private final Set<String> siblings = new HashSet<>();
+
+    /**
+     * Records the round trip delay of an exchange, own or reported by a child.
+     *
+     * @param roundTripDelay    The round trip delay in ms.
+     */
+    public synchronized void onRoundTripDelay(long roundTripDelay) {
+        if (roundTripDelay < 0) {
+            return;
+        }
+        if (smoothedRoundTrip < 0) {
+            smoothedRoundTrip = roundTripDelay;
+            roundTripVariance = roundTripDelay / 2.0;
+        } else {
+            roundTripVariance += (Math.abs(smoothedRoundTrip - roundTripDelay)
+                    - roundTripVariance) / 4;
+            smoothedRoundTrip += (roundTripDelay - smoothedRoundTrip) / 8;
+        }
+    }
+
+    /**
+     * Records a Sync-Pulse sent to the parent.
+     */
+    public synchronized void onPulseSent() {
+        pulses++;
+    }
+
+    /**
+     * Records a Sync-Pulse left without an Ack.
+     */
+    public synchronized void onPulseTimeout() {
+        timeouts++;
+    }
+
+    /**
+     * Records an Ack of the parent addressed to another node.
+     *
+     * @param receiverId    The Id of the node the Ack is addressed to.
+     * @param pulsePending  True if this node's Sync-Pulse waits for an Ack meanwhile.
+     */
+    public synchronized void onSiblingAck(String receiverId, boolean pulsePending) {
+        siblings.add(receiverId);
+        if (pulsePending) {
+            collisions++;
+        }
+    }
+
+    /**
+     * Records the depth of the tree, known to the root from the sync health reports.
+     *
+     * @param depth The deepest tree level.
+     */
+    public synchronized void onTreeDepth(int depth) {
+        treeDepth = Math.max(depth, 0);
+    }
+
+    /**
+     * Returns the configuration tuned by the observations since the last call,
+     * and the Sync-Pulses since the last measurement of the loss and collision rates.
+     *
+     * @param current   The current configuration.
+     * @return          The tuned configuration, the current one if nothing changed.
+     */
+    public synchronized TpsnConfig tune(TpsnConfig current) {
+        TpsnConfig tuned = current;
+
+        if (pulses >= MIN_PULSES) {
+            double periodLoss = Math.min((double) timeouts / pulses, 1);
+            lossRate += (periodLoss - lossRate) / 4;
+
+            double collisionRate = (double) collisions / pulses;
+            if (collisionRate > HIGH_COLLISION_RATE) {
+                spreadFactor = Math.min(spreadFactor * 2, MAX_SPREAD_FACTOR);
+            } else if (collisionRate < LOW_COLLISION_RATE) {
+                spreadFactor = Math.max(spreadFactor * 0.8, 1);
+            }
+
+            int retransmits = MAX_RETRANSMITS;
+            if (lossRate < 0.5) {
+                retransmits = (int) Math.ceil(Math.log(DEAD_PARENT_ERROR) / Math.log(lossRate));
+            }
+            tuned = tuned.withRetransmits(clamp(retransmits, MIN_RETRANSMITS, MAX_RETRANSMITS));
+            pulses = 0;
+            timeouts = 0;
+            collisions = 0;
+        }
+
+        if (smoothedRoundTrip >= 0) {
+            long timeout = Math.round(2 * (smoothedRoundTrip + 4 * roundTripVariance));
+            tuned = tuned.withTimeout(clamp(timeout, MIN_TIMEOUT, TpsnConfig.MAX_TIME));
+
+            int fanOut = siblings.size() + 1;
+            long interval = Math.round(fanOut * Math.max(smoothedRoundTrip, 1) * spreadFactor);
+            tuned = tuned.withRandomIntervalBound(
+                    (int) clamp(interval, MIN_TIME, TpsnConfig.MAX_TIME));
+
+            if (treeDepth > 0) {
+                long perLevel = Math.round(smoothedRoundTrip / 2 + 4 * roundTripVariance)
+                        + LEVEL_SETTLE_TIME;
+                tuned = tuned.withTreeConstructionTime(
+                        clamp(2 * (treeDepth + 1) * perLevel, MIN_TIMEOUT, TpsnConfig.MAX_TIME));
+            }
+        }
+        siblings.clear();
+
+        return tuned.equals(current) ? current : tuned;
+    }
+
+    private static long clamp(long value, long min, long max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return Math.max(min, Math.min(max, value));
+    }
+}
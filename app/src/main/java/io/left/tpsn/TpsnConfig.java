@@ -0,0 +1,218 @@
+package io.left.tpsn;
+
+/**
+ * Immutable parameters of the Tpsn protocol timing.
+ * A manager reads its current configuration on every use, so a new one
+ * set by {@link TpsnSyncManager#setConfig(TpsnConfig)} takes effect at once.
+ * The values are validated on construction.
+ */
+public final class TpsnConfig {
+
+    /**
+     * The largest allowed time value (ms).
+     */
+    public static final long MAX_TIME = 10 * 60 * 1000;
+
+    /**
+     * The largest allowed number of retransmits.
+     */
+    public static final int MAX_RETRANSMITS = 100;
+
+    /**
+     * The default parameters, suited to small meshes.
+     */
+    public static final TpsnConfig DEFAULT = new TpsnConfig(5 * 1000, 5 * 1000, 60 * 1000, 3);
+
+    private final long treeConstructionTime;
+    private final int randomIntervalBound;
+    private final long timeout;
+    private final int retransmits;
+    private final long pacingWindow;
+
+    /**
+     * Creates the configuration without pacing.
+     *
+     * @param treeConstructionTime  Time (ms) the root waits between starting the tree
+     *                              construction and start of the synchronization.
+     * @param randomIntervalBound   Bound (ms) of the random delay before a node starts
+     *                              its synchronization.
+     * @param timeout               Time (ms) after which a sent Sync-Pulse message
+     *                              is considered lost.
+     * @param retransmits           Number of the Sync-Pulse retransmits after which
+     *                              the parent is considered dead.
+     */
+    public TpsnConfig(long treeConstructionTime, int randomIntervalBound, long timeout,
+                      int retransmits) {
+        this(treeConstructionTime, randomIntervalBound, timeout, retransmits, 0);
+    }
+
+    /**
+     * Creates the configuration.
+     *
+     * @param treeConstructionTime  Time (ms) the root waits between starting the tree
+     *                              construction and start of the synchronization.
+     * @param randomIntervalBound   Bound (ms) of the random delay before a node starts
+     *                              its synchronization.
+     * @param timeout               Time (ms) after which a sent Sync-Pulse message
+     *                              is considered lost.
+     * @param retransmits           Number of the Sync-Pulse retransmits after which
+     *                              the parent is considered dead.
+     * @param pacingWindow          Time window (ms) the messages sent to many peers at once
+     *                              are spread across, 0 to send them back to back.
+     */
+    public TpsnConfig(long treeConstructionTime, int randomIntervalBound, long timeout,
+                      int retransmits, long pacingWindow) {
+        checkTime("treeConstructionTime", treeConstructionTime);
+        checkTime("randomIntervalBound", randomIntervalBound);
+        checkTime("timeout", timeout);
+        if (retransmits <= 0 || retransmits > MAX_RETRANSMITS) {
+            throw new IllegalArgumentException("retransmits out of range: " + retransmits);
+        }
+        if (pacingWindow < 0 || pacingWindow > MAX_TIME) {
+            throw new IllegalArgumentException("pacingWindow out of range: " + pacingWindow);
+        }
+
+        this.treeConstructionTime = treeConstructionTime;
+        this.randomIntervalBound = randomIntervalBound;
+        this.timeout = timeout;
+        this.retransmits = retransmits;
+        this.pacingWindow = pacingWindow;
+    }
+
+    private static void checkTime(String name, long value) {
+        if (value <= 0 || value > MAX_TIME) {
+            throw new IllegalArgumentException(name + " out of range: " + value);
+        }
+    }
+
+    /**
+     * Returns the time the root waits between starting the tree construction
+     * and start of the synchronization.
+     *
+     * @return  The time in ms.
+     */
+    public long getTreeConstructionTime() {
+        return treeConstructionTime;
+    }
+
+    /**
+     * Returns the bound of the random delay before a node starts its synchronization.
+     *
+     * @return  The bound in ms.
+     */
+    public int getRandomIntervalBound() {
+        return randomIntervalBound;
+    }
+
+    /**
+     * Returns the time after which a sent Sync-Pulse message is considered lost.
+     *
+     * @return  The timeout in ms.
+     */
+    public long getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * Returns the number of the Sync-Pulse retransmits after which the parent
+     * is considered dead.
+     *
+     * @return  The number of the retransmits.
+     */
+    public int getRetransmits() {
+        return retransmits;
+    }
+
+    /**
+     * Returns the time window the messages sent to many peers at once are spread across.
+     *
+     * @return  The pacing window in ms, 0 if the messages are sent back to back.
+     */
+    public long getPacingWindow() {
+        return pacingWindow;
+    }
+
+    /**
+     * Returns the configuration with another tree construction time.
+     *
+     * @param newTreeConstructionTime   The time in ms.
+     * @return                          The configuration.
+     */
+    public TpsnConfig withTreeConstructionTime(long newTreeConstructionTime) {
+        return new TpsnConfig(newTreeConstructionTime, randomIntervalBound, timeout, retransmits,
+                pacingWindow);
+    }
+
+    /**
+     * Returns the configuration with another random interval bound.
+     *
+     * @param newRandomIntervalBound    The bound in ms.
+     * @return                          The configuration.
+     */
+    public TpsnConfig withRandomIntervalBound(int newRandomIntervalBound) {
+        return new TpsnConfig(treeConstructionTime, newRandomIntervalBound, timeout, retransmits,
+                pacingWindow);
+    }
+
+    /**
+     * Returns the configuration with another timeout.
+     *
+     * @param newTimeout    The timeout in ms.
+     * @return              The configuration.
+     */
+    public TpsnConfig withTimeout(long newTimeout) {
+        return new TpsnConfig(treeConstructionTime, randomIntervalBound, newTimeout, retransmits,
+                pacingWindow);
+    }
+
+    /**
+     * Returns the configuration with another number of the retransmits.
+     *
+     * @param newRetransmits    The number of the retransmits.
+     * @return                  The configuration.
+     */
+    public TpsnConfig withRetransmits(int newRetransmits) {
+        return new TpsnConfig(treeConstructionTime, randomIntervalBound, timeout, newRetransmits,
+                pacingWindow);
+    }
+
+    /**
+     * Returns the configuration with another pacing window.
+     *
+     * @param newPacingWindow   The pacing window in ms, 0 to send back to back.
+     * @return                  The configuration.
+     */
+    public TpsnConfig withPacingWindow(long newPacingWindow) {
+        return new TpsnConfig(treeConstructionTime, randomIntervalBound, timeout, retransmits,
+                newPacingWindow);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof TpsnConfig)) {
+            return false;
+        }
+        TpsnConfig other = (TpsnConfig) obj;
+        return treeConstructionTime == other.treeConstructionTime
+                && randomIntervalBound == other.randomIntervalBound
+                && timeout == other.timeout
+                && retransmits == other.retransmits
+                && pacingWindow == other.pacingWindow;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = (int) (treeConstructionTime ^ (treeConstructionTime >>> 32));
+        result = 31 * result + randomIntervalBound;
+        result = 31 * result + (int) (timeout ^ (timeout >>> 32));
+        result = 31 * result + retransmits;
+        return 31 * result + (int) (pacingWindow ^ (pacingWindow >>> 32));
+    }
+
+    @Override
+    public String toString() {
+        return "tree construction: " + treeConstructionTime + ", random interval: "
+                + randomIntervalBound + ", timeout: " + timeout + ", retransmits: " + retransmits
+                + ", pacing window: " + pacingWindow;
+    }
+}
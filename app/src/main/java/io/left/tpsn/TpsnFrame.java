@@ -0,0 +1,81 @@
+package io.left.tpsn;
+
+/**
+ * The header of the Tpsn frames: a marker byte, the sync domain Id and the sync epoch.
+ * The header is read before the message is decoded, so the frames of other domains
+ * and of the previous runs are dropped without parsing.
+ */
+public final class TpsnFrame {
+
+    /**
+     * The first byte of every Tpsn frame.
+     */
+    public static final byte MARKER = (byte) 0x54;
+
+    /**
+     * The length of the frame header in bytes.
+     */
+    public static final int HEADER_LENGTH = 9;
+
+    private TpsnFrame() {
+    }
+
+    /**
+     * Creates the frame of the encoded message.
+     *
+     * @param domainId  The sync domain Id.
+     * @param epoch     The sync epoch.
+     * @param payload   The encoded message.
+     * @return          The frame.
+     */
+    static byte[] wrap(int domainId, int epoch, byte[] payload) {
+        byte[] frame = new byte[HEADER_LENGTH + payload.length];
+        frame[0] = MARKER;
+        putInt(frame, 1, domainId);
+        putInt(frame, 5, epoch);
+        System.arraycopy(payload, 0, frame, HEADER_LENGTH, payload.length);
+        return frame;
+    }
+
+    /**
+     * Returns if the data is a Tpsn frame.
+     *
+     * @param data  The received data.
+     * @return      True if the data starts with the Tpsn frame header, otherwise False.
+     */
+    public static boolean isFrame(byte[] data) {
+        return data != null && data.length > HEADER_LENGTH && data[0] == MARKER;
+    }
+
+    /**
+     * Returns the sync domain Id of the frame.
+     *
+     * @param frame The Tpsn frame.
+     * @return      The sync domain Id.
+     */
+    public static int getDomainId(byte[] frame) {
+        return getInt(frame, 1);
+    }
+
+    /**
+     * Returns the sync epoch of the frame.
+     *
+     * @param frame The Tpsn frame.
+     * @return      The sync epoch, 0 if the sender doesn't know it yet.
+     */
+    public static int getEpoch(byte[] frame) {
+        return getInt(frame, 5);
+    }
+
+    private static void putInt(byte[] data, int index, int value) {
+        data[index] = (byte) (value >>> 24);
+        data[index + 1] = (byte) (value >>> 16);
+        data[index + 2] = (byte) (value >>> 8);
+        data[index + 3] = (byte) value;
+    }
+
+    private static int getInt(byte[] data, int index) {
+        return ((data[index] & 0xFF) << 24) | ((data[index + 1] & 0xFF) << 16)
+                | ((data[index + 2] & 0xFF) << 8) | (data[index + 3] & 0xFF);
+    }
+}
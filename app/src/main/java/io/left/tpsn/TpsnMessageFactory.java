@@ -1,9 +1,5 @@
 package io.left.tpsn;
 
-import static android.content.ContentValues.TAG;
-
-import android.util.Log;
-
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
@@ -12,19 +8,30 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutput;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.util.logging.Logger;
 
 /**
  * Factory to create TpsnMessage objects with simple binary serialization.
  */
 public class TpsnMessageFactory extends BaseTpsnMessageFactory {
 
+    private static final Logger LOGGER = Logger.getLogger(TpsnMessageFactory.class.getName());
+
     /**
      * {@inheritDoc}
      */
     @Override
     public BaseTpsnMessage createFromByteArray(byte[] message) {
+        return createFromByteArray(message, 0, message.length);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public BaseTpsnMessage createFromByteArray(byte[] message, int offset, int length) {
         TpsnMessage msg = null;
-        ByteArrayInputStream bis = new ByteArrayInputStream(message);
+        ByteArrayInputStream bis = new ByteArrayInputStream(message, offset, length);
         ObjectInput in = null;
         try {
             in = new ObjectInputStream(bis);
@@ -47,13 +54,21 @@ public class TpsnMessageFactory extends BaseTpsnMessageFactory {
         return msg;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public BaseTpsnMessage createMessage(TpsnMessageType type) {
+        return new TpsnMessage(type);
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
     public byte[] create(TpsnMessageType type) {
         TpsnMessage msgObj = new TpsnMessage(type);
-        byte[] msg = toByteArray(msgObj);
+        byte[] msg = encode(msgObj);
 
         return msg;
     }
@@ -65,7 +80,7 @@ public class TpsnMessageFactory extends BaseTpsnMessageFactory {
     public byte[] create(TpsnMessageType type, int level) {
         TpsnMessage msgObj = new TpsnMessage(type);
         msgObj.setLevel(level);
-        byte[] msg = toByteArray(msgObj);
+        byte[] msg = encode(msgObj);
 
         return msg;
     }
@@ -78,7 +93,7 @@ public class TpsnMessageFactory extends BaseTpsnMessageFactory {
         TpsnMessage msgObj = new TpsnMessage(type);
         msgObj.setLevel(level);
         msgObj.setTimeStamp1(timeStamp1);
-        byte[] msg = toByteArray(msgObj);
+        byte[] msg = encode(msgObj);
 
         return msg;
     }
@@ -96,7 +111,23 @@ public class TpsnMessageFactory extends BaseTpsnMessageFactory {
         msgObj.setTimeStamp2(timeStamp2);
         msgObj.setTimeStamp3(timeStamp3);
         msgObj.setReceiverId(receiverId);
-        byte[] msg = toByteArray(msgObj);
+        byte[] msg = encode(msgObj);
+
+        return msg;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public byte[] createAggregatedAck(int level, String[] receiverIds,
+                                      long[] timeStamps1, long[] timeStamps2,
+                                      long timeStamp3) {
+        TpsnMessage msgObj = new TpsnMessage(TpsnMessageType.AGGREGATED_ACK);
+        msgObj.setLevel(level);
+        msgObj.setTimeStamp3(timeStamp3);
+        msgObj.setAckEntries(receiverIds, timeStamps1, timeStamps2);
+        byte[] msg = encode(msgObj);
 
         return msg;
     }
@@ -108,7 +139,7 @@ public class TpsnMessageFactory extends BaseTpsnMessageFactory {
     protected byte[] toByteArray(BaseTpsnMessage msg) {
 
         if (!(msg instanceof TpsnMessage)) {
-            Log.e(TAG, "Invalid message type.");
+            LOGGER.severe("Invalid message type.");
             return null;
         }
 
@@ -139,11 +170,27 @@ public class TpsnMessageFactory extends BaseTpsnMessageFactory {
      */
     private static class TpsnMessage extends BaseTpsnMessage implements Serializable {
         private TpsnMessageType type;
+        private int domainId;
+        private int epoch;
         private int level;
         private long timeStamp1;
         private long timeStamp2;
         private long timeStamp3;
+        private long error = Long.MAX_VALUE;
+        private long roundTripDelay;
+        private long residual;
+        private double skew = 1;
+        private String waveOriginId;
+        private int waveSequence;
+        private int healthNodes;
+        private int healthUnsynchronized;
+        private int healthMaxLevel;
+        private long healthMaxError;
+        private long healthErrorSum;
         private String receiverId;
+        private String[] receiverIds;
+        private long[] timeStamps1;
+        private long[] timeStamps2;
 
         private TpsnMessage(TpsnMessageType type) {
             this.type = type;
@@ -153,6 +200,14 @@ public class TpsnMessageFactory extends BaseTpsnMessageFactory {
             return type;
         }
 
+        public int getDomainId() {
+            return domainId;
+        }
+
+        public int getEpoch() {
+            return epoch;
+        }
+
         public int getLevel() {
             return level;
         }
@@ -169,10 +224,66 @@ public class TpsnMessageFactory extends BaseTpsnMessageFactory {
             return timeStamp3;
         }
 
+        public long getError() {
+            return error;
+        }
+
+        public long getRoundTripDelay() {
+            return roundTripDelay;
+        }
+
+        public long getResidual() {
+            return residual;
+        }
+
+        public double getSkew() {
+            return skew;
+        }
+
+        public String getWaveOriginId() {
+            return waveOriginId;
+        }
+
+        public int getWaveSequence() {
+            return waveSequence;
+        }
+
+        public SyncHealth getHealth() {
+            if (healthNodes == 0) {
+                return null;
+            }
+            return new SyncHealth(healthNodes, healthUnsynchronized, healthMaxLevel,
+                    healthMaxError, healthErrorSum);
+        }
+
         public String getReceiverId() {
             return receiverId;
         }
 
+        public int getAckCount() {
+            return receiverIds == null ? 0 : receiverIds.length;
+        }
+
+        public String getReceiverId(int index) {
+            return receiverIds[index];
+        }
+
+        public long getTimeStamp1(int index) {
+            return timeStamps1[index];
+        }
+
+        public long getTimeStamp2(int index) {
+            return timeStamps2[index];
+        }
+
+        public void setDomainId(int domainId) {
+            this.domainId = domainId;
+        }
+
+        public void setEpoch(int epoch) {
+            this.epoch = epoch;
+        }
+
         public void setLevel(int level) {
             this.level = level;
         }
@@ -189,8 +300,44 @@ public class TpsnMessageFactory extends BaseTpsnMessageFactory {
             this.timeStamp3 = timeStamp3;
         }
 
+        public void setError(long error) {
+            this.error = error;
+        }
+
+        public void setRoundTripDelay(long roundTripDelay) {
+            this.roundTripDelay = roundTripDelay;
+        }
+
+        public void setResidual(long residual) {
+            this.residual = residual;
+        }
+
+        public void setSkew(double skew) {
+            this.skew = skew;
+        }
+
+        public void setWave(String originId, int sequence) {
+            this.waveOriginId = originId;
+            this.waveSequence = sequence;
+        }
+
+        public void setHealth(SyncHealth health) {
+            this.healthNodes = health.getNodeCount();
+            this.healthUnsynchronized = health.getUnsynchronizedCount();
+            this.healthMaxLevel = health.getMaxLevel();
+            this.healthMaxError = health.getMaxError();
+            this.healthErrorSum = health.getErrorSum();
+        }
+
         public void setReceiverId(String receiverId) {
             this.receiverId = receiverId;
         }
+
+        public void setAckEntries(String[] receiverIds, long[] timeStamps1,
+                                  long[] timeStamps2) {
+            this.receiverIds = receiverIds;
+            this.timeStamps1 = timeStamps1;
+            this.timeStamps2 = timeStamps2;
+        }
     }
 }
@@ -8,7 +8,11 @@ public enum TpsnMessageType {
     TIME_SYNC((byte)1),
     SYNC_PULSE((byte)2),
     ACK((byte)3),
-    LEVEL_REQUEST((byte)4);
+    LEVEL_REQUEST((byte)4),
+    AGGREGATED_ACK((byte)5),
+    LINK_REPORT((byte)6),
+    AVERAGE_SYNC((byte)7),
+    HEALTH_REPORT((byte)8);
 
     private final byte type;
 
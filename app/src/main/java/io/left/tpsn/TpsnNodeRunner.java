@@ -0,0 +1,221 @@
+package io.left.tpsn;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs many {@link TpsnSyncManager} or {@link AverageTimeSyncManager} nodes in one process
+ * over a {@link LoopbackNetwork}, used for load tests and comparisons of the protocols.
+ * The nodes are multiplexed onto a fixed pool of worker threads and share one timing wheel.
+ * The received data and the timeouts of a node run one at a time on its serial executor,
+ * so a node is never entered concurrently.
+ */
+public class TpsnNodeRunner {
+
+    private final ExecutorService workers;
+    private final HashedWheelScheduler timer = new HashedWheelScheduler();
+    private final LoopbackNetwork network = new LoopbackNetwork();
+    private final BaseTpsnMessageFactory messagesFactory;
+    private final List<Node> nodes = new ArrayList<>();
+
+    /**
+     * Creates the runner with a worker thread per available processor.
+     *
+     * @param messagesFactory   The messages factory shared by the nodes.
+     */
+    public TpsnNodeRunner(BaseTpsnMessageFactory messagesFactory) {
+        this(messagesFactory, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates the runner.
+     *
+     * @param messagesFactory   The messages factory shared by the nodes.
+     * @param threads           The number of the worker threads.
+     */
+    public TpsnNodeRunner(BaseTpsnMessageFactory messagesFactory, int threads) {
+        this.messagesFactory = messagesFactory;
+        this.workers = Executors.newFixedThreadPool(threads);
+    }
+
+    /**
+     * Adds a node.
+     *
+     * @param nodeId    The Id of the node.
+     * @param root      True if the node is the root of the sync tree.
+     * @return          The manager of the node.
+     */
+    public TpsnSyncManager addNode(String nodeId, boolean root) {
+        return addNode(nodeId, root, TwoWayOffsetEstimator.FACTORY);
+    }
+
+    /**
+     * Adds a node with the given offset estimator.
+     *
+     * @param nodeId            The Id of the node.
+     * @param root              True if the node is the root of the sync tree.
+     * @param estimatorFactory  Creates the offset estimators of the node.
+     * @return                  The manager of the node.
+     */
+    public synchronized TpsnSyncManager addNode(String nodeId, boolean root,
+                                                OffsetEstimator.Factory estimatorFactory) {
+        SerialExecutor executor = new SerialExecutor(workers);
+        TpsnTransport transport = network.addNode(nodeId, executor);
+        TpsnSyncManager manager = new TpsnSyncManager(transport, messagesFactory,
+                new ExecutorScheduler(timer, executor), estimatorFactory);
+        manager.isRoot(root);
+        nodes.add(new Node(manager, executor, root));
+        return manager;
+    }
+
+    /**
+     * Adds a node running the Average TimeSync algorithm, it has no root.
+     *
+     * @param nodeId    The Id of the node.
+     * @return          The manager of the node.
+     */
+    public synchronized AverageTimeSyncManager addAverageTimeSyncNode(String nodeId) {
+        SerialExecutor executor = new SerialExecutor(workers);
+        TpsnTransport transport = network.addNode(nodeId, executor);
+        AverageTimeSyncManager manager = new AverageTimeSyncManager(transport, messagesFactory,
+                new ExecutorScheduler(timer, executor));
+        nodes.add(new Node(manager, executor, false));
+        return manager;
+    }
+
+    /**
+     * Links two nodes as neighbors.
+     *
+     * @param nodeId1   The Id of the first node.
+     * @param nodeId2   The Id of the second node.
+     */
+    public void connect(String nodeId1, String nodeId2) {
+        network.connect(nodeId1, nodeId2);
+    }
+
+    /**
+     * Starts the synchronization on all nodes, the roots first.
+     */
+    public synchronized void start() {
+        for (Node node : nodes) {
+            if (node.root) {
+                node.start();
+            }
+        }
+        for (Node node : nodes) {
+            if (!node.root) {
+                node.start();
+            }
+        }
+    }
+
+    /**
+     * Stops the worker threads and the timer.
+     *
+     * @param timeout               The maximum time to wait for the running tasks, in ms.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    public void shutdown(long timeout) throws InterruptedException {
+        timer.shutdown();
+        workers.shutdownNow();
+        workers.awaitTermination(timeout, TimeUnit.MILLISECONDS);
+    }
+
+    private static final class Node {
+
+        private final ClockSyncManager manager;
+        private final SerialExecutor executor;
+        private final boolean root;
+
+        Node(ClockSyncManager manager, SerialExecutor executor, boolean root) {
+            this.manager = manager;
+            this.executor = executor;
+            this.root = root;
+        }
+
+        void start() {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    manager.start();
+                }
+            });
+        }
+    }
+
+    /**
+     * Runs the timeouts of the shared scheduler on the serial executor of a node.
+     * A timeout fired by the scheduler waits in the executor's queue, so it's checked
+     * again before its task runs: a cancel or a new schedule meanwhile discards it.
+     */
+    static final class ExecutorScheduler implements TpsnScheduler {
+
+        private final TpsnScheduler scheduler;
+        private final Executor executor;
+
+        ExecutorScheduler(TpsnScheduler scheduler, Executor executor) {
+            this.scheduler = scheduler;
+            this.executor = executor;
+        }
+
+        @Override
+        public Timeout newTimeout(Runnable task) {
+            return new ExecutorTimeout(task);
+        }
+
+        private final class ExecutorTimeout implements Timeout {
+
+            private final Runnable task;
+
+            //Guarded by this, incremented by each schedule and cancel
+            private int generation = 0;
+            private Timeout pending = null;
+
+            ExecutorTimeout(Runnable task) {
+                this.task = task;
+            }
+
+            @Override
+            public synchronized void schedule(long delay) {
+                cancel();
+                final int scheduled = generation;
+                pending = scheduler.newTimeout(new Runnable() {
+                    @Override
+                    public void run() {
+                        executor.execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                fire(scheduled);
+                            }
+                        });
+                    }
+                });
+                pending.schedule(delay);
+            }
+
+            @Override
+            public synchronized void cancel() {
+                generation++;
+                if (pending != null) {
+                    pending.cancel();
+                    pending = null;
+                }
+            }
+
+            private void fire(int scheduled) {
+                synchronized (this) {
+                    if (scheduled != generation) {
+                        return;
+                    }
+                    generation++;
+                    pending = null;
+                }
+                task.run();
+            }
+        }
+    }
+}
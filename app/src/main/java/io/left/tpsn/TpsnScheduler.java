@@ -0,0 +1,34 @@
+package io.left.tpsn;
+
+/**
+ * Schedules the protocol timeouts.
+ * One scheduler may be shared by many {@link TpsnSyncManager} instances.
+ */
+public interface TpsnScheduler {
+
+    /**
+     * A reusable timeout running its task once the delay elapses.
+     */
+    interface Timeout {
+
+        /**
+         * Schedules the task, replacing the pending schedule if any.
+         *
+         * @param delay The delay in ms.
+         */
+        void schedule(long delay);
+
+        /**
+         * Cancels the pending schedule if any.
+         */
+        void cancel();
+    }
+
+    /**
+     * Creates a timeout, it isn't scheduled until {@link Timeout#schedule(long)} is called.
+     *
+     * @param task  The task to run when the timeout elapses.
+     * @return      The timeout.
+     */
+    Timeout newTimeout(Runnable task);
+}
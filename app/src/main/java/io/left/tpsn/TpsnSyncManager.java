@@ -1,22 +1,19 @@
 package io.left.tpsn;
 
-import static io.left.rightmesh.mesh.MeshManager.DATA_RECEIVED;
-
-import android.util.Log;
-
-import io.left.rightmesh.id.MeshId;
-import io.left.rightmesh.mesh.MeshManager;
-import io.left.rightmesh.proto.MeshDnsProtos;
-import io.left.rightmesh.util.RightMeshException;
-import io.left.timesync.ClockSyncManager;
-import io.reactivex.functions.Consumer;
-
-import java.util.HashMap;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.Set;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 
 /**
@@ -27,344 +24,1768 @@ import java.util.concurrent.CopyOnWriteArraySet;
  * It's a pure implementation. It can be adapted to our network and be more efficient.
  * For example the ACK messages probably could be sent directly to the connected children,
  * instead of broadcasting them.
+ * The protocol doesn't depend on a specific network, it runs over a {@link TpsnTransport}.
  */
 public final class TpsnSyncManager implements ClockSyncManager {
 
     /**
-     * Time period (ms) the root waits between starting the tree construction
-     * and start of the synchronization.
+     * Receives the application data sent by {@link #sendApplicationData}.
+     */
+    public interface ApplicationDataListener {
+
+        /**
+         * Called when application data is received from a peer.
+         *
+         * @param peerId    The Id of the sender.
+         * @param data      The application payload, without the Tpsn timestamps.
+         */
+        void applicationDataReceived(String peerId, byte[] data);
+    }
+
+    /**
+     * Receives the sends of the paced fan-out messages.
+     */
+    public interface SendListener {
+
+        /**
+         * Called when a fan-out message is sent to a peer.
+         *
+         * @param peerId        The Id of the destination peer.
+         * @param type          The Tpsn message type.
+         * @param queueDelay    The time (ms) the message waited in the pacing queue.
+         */
+        void messageSent(String peerId, TpsnMessageType type, long queueDelay);
+    }
+
+    /**
+     * The sync domain of the nodes if no domain was set.
+     */
+    public static final int DEFAULT_DOMAIN = 0;
+
+    /**
+     * The sync domain of the backbone tree, connecting the roots of the other sync domains.
+     */
+    public static final int BACKBONE_DOMAIN = -1;
+
+    /**
+     * Time period (ms) between the runs of the auto tuner.
+     */
+    private static final long AUTO_TUNE_PERIOD = 10 * 1000;
+
+    /**
+     * Offset change (ms) beyond the estimated error, not explained by the clock skew,
+     * after which the change is reported as a clock jump.
+     */
+    private static final long CLOCK_JUMP_THRESHOLD = 500;
+
+    /**
+     * Tolerated disagreement (ms) between the wall clock and the monotonic clock
+     * time elapsed since the persisted state was saved.
+     * Above it the device was rebooted or its clock was changed, the state is dropped.
+     */
+    private static final long RESTORE_TOLERANCE = 1000;
+
+    /**
+     * Time window (ms) during which a parent in the aggregated Ack mode collects
+     * the Sync-Pulse messages, before answering them with a single aggregated Ack message.
+     */
+    private static final long ACK_AGGREGATION_WINDOW = 50;
+
+    /**
+     * The delay (ms) before a synchronized parent sends the imitated Ack packet
+     * to a newly connected child, to let it process the Level-Discovery message first.
+     */
+    private static final long NEW_CHILD_ACK_DELAY = 3 * 1000;
+
+    /**
+     * Time (ms) a node waits after its level changed before flooding its children,
+     * so the level changes of one Level-Discovery wave are forwarded once.
+     */
+    private static final long DISCOVERY_SETTLE_TIME = 100;
+
+    /**
+     * Time period (ms) between the sync health reports of a node to its parent.
+     * The reports of a subtree reach the root within a period per tree level.
+     */
+    private static final long HEALTH_REPORT_PERIOD = 30 * 1000;
+
+    /**
+     * Time (ms) after which the last health report of a child is dropped,
+     * e.g. the child left or switched to another parent.
+     */
+    private static final long HEALTH_REPORT_TIMEOUT = 3 * HEALTH_REPORT_PERIOD;
+
+    /**
+     * Assumed clock error (ms) added by a tree level whose round trip delay is not known yet.
+     */
+    private static final long DEFAULT_HOP_ERROR = 10;
+
+    /**
+     * Minimal improvement (ms) of the expected clock error for switching to another parent
+     * that is not closer to the root. The switch also requires at least 20% improvement.
+     */
+    private static final long PARENT_SWITCH_MARGIN = 2;
+
+    /**
+     * Bound of the skew to the parent, two clocks within the drift bound in opposite directions.
+     */
+    private static final double MAX_PARENT_SKEW = 2 * ClockSnapshot.CLOCK_DRIFT_BOUND_PPM / 1e6;
+
+
+    private static final Logger LOGGER = Logger.getLogger(TpsnSyncManager.class.getName());
+
+    private Random random = new Random();
+    private TpsnTransport transport;
+    private BaseTpsnMessageFactory messagesFactory;
+    private final TpsnScheduler scheduler;
+    private HashedWheelScheduler ownScheduler = null;
+    private final OffsetEstimator.Factory estimatorFactory;
+    private final OffsetEstimator offsetEstimator;
+    private final TpsnScheduler.Timeout treeConstructionTimeout;
+    private final TpsnScheduler.Timeout pulseTimeout;
+    private final TpsnScheduler.Timeout delayedSyncTimeout;
+    private final TpsnScheduler.Timeout ackFlushTimeout;
+    private final TpsnScheduler.Timeout newChildAckTimeout;
+    private final Set<String> newChildren = new LinkedHashSet<>();
+    private final TpsnScheduler.Timeout probeTimeout;
+    private final Set<String> alternateParents = new LinkedHashSet<>();
+    private final Set<String> probedParents = new LinkedHashSet<>();
+    private final LinkAsymmetry linkAsymmetry = new LinkAsymmetry();
+    private final TpsnScheduler.Timeout discoveryFloodTimeout;
+    private final DiscoveryWaves discoveryWaves = new DiscoveryWaves();
+    private String waveOriginId = null;
+    private int waveSequence = 0;
+    //Not cleared by reset(), the packets of the previous run are still dropped after it
+    private volatile int epoch = 0;
+    private boolean aggregatedAck = false;
+    private boolean linkReports = false;
+    private long lastResidual = 0;
+    private final Map<String, ChildLinkQuality> childLinks = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, PiggybackPeer> piggybackPeers =
+            new ConcurrentHashMap<>();
+    private final Map<String, ChildHealth> childHealth = new ConcurrentHashMap<>();
+    private final TpsnScheduler.Timeout healthReportTimeout;
+    private volatile ApplicationDataListener applicationDataListener = null;
+    private volatile SendListener sendListener = null;
+    private final PacedSender pacedSender;
+    private final PendingAcks pendingAcks = new PendingAcks();
+    private short retransmitsCount = 0;
+    private volatile TpsnConfig config = TpsnConfig.DEFAULT;
+    private volatile TpsnAutoTuner autoTuner = null;
+    private final TpsnScheduler.Timeout autoTuneTimeout;
+    private boolean pulsePending = false;
+    private boolean levelDiscovery = true;
+    //The root starts the Sync Phase once the tree is built and its clock is synchronized
+    private boolean treeConstructed = false;
+    private boolean syncPhaseStarted = false;
+    private String parentId = null;
+    private long parentError = SyncedTime.UNKNOWN_ERROR;
+    private long parentExpectedError = SyncedTime.UNKNOWN_ERROR;
+    private long roundTripDelay = 0;
+    private String ownId = null;
+    private int treeLevel = Integer.MAX_VALUE;
+    private boolean root = false;
+    private boolean clockSynchronized = false;
+    private long clockOffset = 0;
+    private volatile ClockSnapshot snapshot = ClockSnapshot.UNSYNCHRONIZED;
+    private final OffsetHistory history = new OffsetHistory(OffsetHistory.DEFAULT_CAPACITY);
+    //Orders the snapshot updates and their publishing
+    private final Object snapshotLock = new Object();
+    private SyncStateStore stateStore = null;
+    private volatile MonotonicClock monotonicClock = MonotonicClock.SYSTEM;
+    private SyncState restoredState = null;
+    private int domainId;
+    private boolean backboneEnabled = false;
+    private boolean backboneRoot = false;
+    private TpsnSyncManager backbone = null;
+    //The manager of the domain this backbone member belongs to
+    private TpsnSyncManager domain = null;
+    private ClockDiscipline clockDiscipline = new ClockDiscipline();
+    private volatile SharedClockPublisher sharedClockPublisher = null;
+
+    /**
+     * Listens to the backbone tree member of this root node.
+     */
+    private final EventListener backboneListener = new EventListener() {
+        @Override
+        public void clockSyncOffsetChanged(long clockOffset) {
+            //Every backbone synchronization is followed in backboneOffsetChanged()
+        }
+
+        @Override
+        public void debugMessagereceived(String message) {
+            sendMessageEvent("[backbone] " + message);
+        }
+    };
+
+    private CopyOnWriteArraySet<EventListener> eventListeners = new CopyOnWriteArraySet<>();
+
+
+    private static volatile TpsnSyncManager instance = null;
+
+    /**
+     * Gets the process wide TpsnSync manager.
+     *
+     * @param transport         The network transport.
+     * @param messagesFactory   The messages factory.
+     * @return                  The TpsnSync manager object.
+     */
+    public static TpsnSyncManager getInstance(TpsnTransport transport,
+                                              BaseTpsnMessageFactory messagesFactory) {
+        if (instance == null) {
+            synchronized (TpsnSyncManager.class) {
+                if (instance == null) {
+                    instance = new TpsnSyncManager(transport, messagesFactory);
+                }
+            }
+        }
+
+        return instance;
+    }
+
+    /**
+     * Creates the TpsnSync manager with its own timer thread.
+     *
+     * @param transport         The network transport.
+     * @param messagesFactory   The messages factory.
+     */
+    public TpsnSyncManager(TpsnTransport transport, BaseTpsnMessageFactory messagesFactory) {
+        this(transport, messagesFactory, new HashedWheelScheduler());
+        ownScheduler = (HashedWheelScheduler) scheduler;
+    }
+
+    /**
+     * Creates the TpsnSync manager. Many managers may run in one process,
+     * each over its own transport, sharing the scheduler.
+     *
+     * @param transport         The network transport.
+     * @param messagesFactory   The messages factory.
+     * @param scheduler         The scheduler of the protocol timeouts.
+     */
+    public TpsnSyncManager(TpsnTransport transport, BaseTpsnMessageFactory messagesFactory,
+                           TpsnScheduler scheduler) {
+        this(transport, messagesFactory, scheduler, TwoWayOffsetEstimator.FACTORY);
+    }
+
+    /**
+     * Creates the TpsnSync manager with the given offset estimator,
+     * e.g. {@link KalmanOffsetEstimator} for the more accurate clocks at a higher CPU cost.
+     *
+     * @param transport         The network transport.
+     * @param messagesFactory   The messages factory.
+     * @param scheduler         The scheduler of the protocol timeouts.
+     * @param estimatorFactory  Creates the offset estimators of the manager.
+     */
+    public TpsnSyncManager(TpsnTransport transport, BaseTpsnMessageFactory messagesFactory,
+                           TpsnScheduler scheduler, OffsetEstimator.Factory estimatorFactory) {
+        this(transport, messagesFactory, scheduler, estimatorFactory, DEFAULT_DOMAIN);
+
+        transport.setReceiver(new TpsnTransport.Receiver() {
+            @Override
+            public void onDataReceived(String peerId, byte[] data, long receiveTime) {
+                handleDataReceived(peerId, data, receiveTime);
+            }
+        });
+    }
+
+    /**
+     * Creates the manager without receiving from the transport,
+     * the received data is dispatched by the manager of the default domain.
+     */
+    private TpsnSyncManager(TpsnTransport transport, BaseTpsnMessageFactory messagesFactory,
+                            TpsnScheduler scheduler, OffsetEstimator.Factory estimatorFactory,
+                            int domainId) {
+        this.domainId = domainId;
+        this.transport = transport;
+        this.messagesFactory = messagesFactory;
+        this.scheduler = scheduler;
+        this.estimatorFactory = estimatorFactory;
+        this.offsetEstimator = estimatorFactory.create();
+
+        treeConstructionTimeout = scheduler.newTimeout(new Runnable() {
+            @Override
+            public void run() {
+                treeConstructed = true;
+                sync();
+            }
+        });
+        delayedSyncTimeout = scheduler.newTimeout(new Runnable() {
+            @Override
+            public void run() {
+                sync();
+            }
+        });
+        pulseTimeout = scheduler.newTimeout(new Runnable() {
+            @Override
+            public void run() {
+                syncPulseTimeout();
+            }
+        });
+        ackFlushTimeout = scheduler.newTimeout(new Runnable() {
+            @Override
+            public void run() {
+                flushAcks();
+            }
+        });
+        newChildAckTimeout = scheduler.newTimeout(new Runnable() {
+            @Override
+            public void run() {
+                sendNewChildrenAcks();
+            }
+        });
+        probeTimeout = scheduler.newTimeout(new Runnable() {
+            @Override
+            public void run() {
+                sendProbes();
+            }
+        });
+        discoveryFloodTimeout = scheduler.newTimeout(new Runnable() {
+            @Override
+            public void run() {
+                floodLevelDiscovery();
+            }
+        });
+        healthReportTimeout = scheduler.newTimeout(new Runnable() {
+            @Override
+            public void run() {
+                sendHealthReport();
+            }
+        });
+        autoTuneTimeout = scheduler.newTimeout(new Runnable() {
+            @Override
+            public void run() {
+                autoTune();
+            }
+        });
+        pacedSender = new PacedSender(scheduler, new PacedSender.Sink() {
+            @Override
+            public void send(String peerId, BaseTpsnMessage message, byte[] data,
+                             long queueDelay) {
+                sendDequeued(peerId, message, data, queueDelay);
+            }
+        });
+    }
+
+    /**
+     * Sets the Tpsn Algorithm isRoot status for the current node.
+     * @param isRoot    The is root status.
+     */
+    public void isRoot(boolean isRoot) {
+        this.root = isRoot;
+    }
+
+    /**
+     * Sets the sync domain of the node, only the nodes of the same domain
+     * are synchronized with each other. Should be set before start().
+     * @param domainId  The sync domain Id.
+     */
+    public void setDomainId(int domainId) {
+        if (domainId == BACKBONE_DOMAIN) {
+            throw new IllegalArgumentException("The backbone domain is reserved for the roots.");
+        }
+        this.domainId = domainId;
+    }
+
+    /**
+     * Returns the sync domain of the node.
+     * @return The sync domain Id.
+     */
+    public int getDomainId() {
+        return domainId;
+    }
+
+    /**
+     * Sets the backbone participation of a root node.
+     * In large meshes the nodes can be split into several sync domains, each with its own root,
+     * which gives shallower trees converging in parallel. The roots then synchronize
+     * among each other over a backbone tree rooted at one of them,
+     * and the domains are synchronized only after their root.
+     * Has no effect on the non-root nodes.
+     * @param enabled       True if the root joins the backbone tree.
+     * @param backboneRoot  True if the root is the root of the backbone tree.
+     */
+    public void setBackbone(boolean enabled, boolean backboneRoot) {
+        this.backboneEnabled = enabled;
+        this.backboneRoot = backboneRoot;
+    }
+
+    /**
+     * Sets the aggregated Ack mode. In this mode a parent collects the Sync-Pulse messages
+     * arriving within a short window and answers them by a single message with
+     * per child (receiverId, T1, T2) entries and a shared T3,
+     * instead of sending an Ack message per child.
+     * @param aggregatedAck True to enable the aggregated Ack mode.
+     */
+    public void setAggregatedAck(boolean aggregatedAck) {
+        this.aggregatedAck = aggregatedAck;
+    }
+
+    /**
+     * Sets the listener of the application data received from the peers.
+     * @param listener  The listener, or null to drop the application data.
+     */
+    public void setApplicationDataListener(ApplicationDataListener listener) {
+        this.applicationDataListener = listener;
+    }
+
+    /**
+     * Sets the listener of the paced fan-out sends.
+     * @param listener  The listener, or null to remove it.
+     */
+    public void setSendListener(SendListener listener) {
+        this.sendListener = listener;
+    }
+
+    /**
+     * Sends application data to a peer over the Tpsn transport, with a 33 bytes header
+     * of Tpsn timestamps. The application frames exchanged with the parent
+     * synchronize the clock like the Sync-Pulse and Ack messages, without extra traffic.
+     * @param peerId                The Id of the peer.
+     * @param payload               The application payload.
+     * @throws TransportException   If failed to send.
+     */
+    public void sendApplicationData(String peerId, byte[] payload) throws TransportException {
+        long offset = clockOffset;
+        byte[] frame = getPiggybackPeer(peerId).stamp(domainId, epoch,
+                System.currentTimeMillis() + offset, offset, payload);
+        transport.send(peerId, frame);
+    }
+
+    /**
+     * Sets the timing parameters of the protocol, they take effect at once.
+     * @param config    The configuration.
+     */
+    public void setConfig(TpsnConfig config) {
+        if (config == null) {
+            throw new IllegalArgumentException("config must not be null.");
+        }
+        this.config = config;
+        if (backbone != null) {
+            backbone.setConfig(config);
+        }
+    }
+
+    /**
+     * Returns the timing parameters of the protocol.
+     * @return The configuration.
+     */
+    public TpsnConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * Sets the tuner of the timing parameters, it adjusts the configuration periodically
+     * while the synchronization runs. Should be set before start().
+     * @param autoTuner The auto tuner, or null to keep the configuration as set.
+     */
+    public void setAutoTuner(TpsnAutoTuner autoTuner) {
+        this.autoTuner = autoTuner;
+    }
+
+    /**
+     * Sets the publisher of the clock snapshots to the other processes of the device.
+     * The current snapshot is published at once.
+     * @param publisher The publisher, or null to stop publishing.
+     */
+    public void setSharedClockPublisher(SharedClockPublisher publisher) {
+        synchronized (snapshotLock) {
+            this.sharedClockPublisher = publisher;
+            if (publisher != null) {
+                publisher.publish(snapshot, epoch);
+            }
+        }
+    }
+
+    /**
+     * Sets the discipline of the synchronized clock, which decides between slewing
+     * to a new offset estimate and stepping to it.
+     * @param clockDiscipline   The clock discipline.
+     */
+    public void setClockDiscipline(ClockDiscipline clockDiscipline) {
+        this.clockDiscipline = clockDiscipline;
+    }
+
+    /**
+     * Sets the bidirectional exchange mode. In this mode a child reports the round trip delay
+     * and the offset residual of each Sync-Pulse exchange to the parent in a Link-Report
+     * message right after the offset is calculated, so the parent learns the quality
+     * of the link without extra probing traffic. The reports are kept in
+     * {@link #getChildLinks()}.
+     * @param linkReports   True to enable the bidirectional exchange mode.
+     */
+    public void setLinkReports(boolean linkReports) {
+        this.linkReports = linkReports;
+    }
+
+    /**
+     * Returns the quality of the links to the children, as reported by them.
+     * A child that switched to another parent is dropped once it floods this node with its
+     * new level. A switch to another parent of the same level floods nothing, so that report
+     * stays until this node is reset.
+     * @return The unmodifiable link qualities by the Ids of the children.
+     */
+    public Map<String, ChildLinkQuality> getChildLinks() {
+        return Collections.unmodifiableMap(childLinks);
+    }
+
+    /**
+     * Sets the monotonic clock the persisted state is validated with.
+     * It must count the time the device sleeps. Should be set before setStateStore().
+     * @param monotonicClock    The monotonic clock.
+     */
+    public void setMonotonicClock(MonotonicClock monotonicClock) {
+        if (monotonicClock == null) {
+            throw new IllegalArgumentException("monotonicClock must not be null.");
+        }
+        this.monotonicClock = monotonicClock;
+    }
+
+    /**
+     * Sets the store the synchronization state is persisted to on every synchronization.
+     * If the store holds a still valid state, the clock offset is restored from it right away
+     * as a provisional one, and the next start() verifies it with a single exchange
+     * with the persisted parent instead of joining the tree from scratch.
+     * While the synchronization runs, the store is only saved to, the live state is kept.
+     * @param stateStore    The state store, or null to disable the persistence.
+     */
+    public void setStateStore(SyncStateStore stateStore) {
+        this.stateStore = stateStore;
+        restoredState = null;
+        if (stateStore == null) {
+            return;
+        }
+
+        if (ownId != null) {
+            sendMessageEvent("The synchronization runs, the persisted state is not restored.");
+            return;
+        }
+
+        try {
+            stateStore.loadLinkAsymmetry(linkAsymmetry);
+        } catch (IOException e) {
+            sendMessageEvent("Failed to load the link asymmetry. See log for details.");
+            LOGGER.log(Level.SEVERE, "Failed to load the link asymmetry.", e);
+        }
+
+        if (root) {
+            return;
+        }
+
+        SyncState state;
+        try {
+            state = stateStore.load();
+        } catch (IOException e) {
+            sendMessageEvent("Failed to load the sync state. See log for details.");
+            LOGGER.log(Level.SEVERE, "Failed to load the sync state.", e);
+            return;
+        }
+
+        if (state == null) {
+            return;
+        }
+
+        long currentTime = System.currentTimeMillis();
+        long elapsed = state.getElapsedTime(currentTime, monotonicClock.nanoTime(),
+                RESTORE_TOLERANCE);
+        if (elapsed < 0) {
+            sendMessageEvent("The persisted sync state is not valid anymore.");
+            stateStore.clear();
+            return;
+        }
+
+        restoredState = state;
+        //The frames of the runs before the persisted one are stale
+        epoch = state.getEpoch();
+        clockOffset = state.getOffsetAfter(elapsed);
+        setSnapshot(new ClockSnapshot(currentTime, clockOffset, state.getErrorAfter(elapsed),
+                ClockSnapshot.CLOCK_DRIFT_BOUND_PPM, true).withSkew(boundSkew(state.getSkew())));
+        sendMessageEvent("Restored the provisional clock offset: " + clockOffset);
+        sendOffsetChangedEvent();
+    }
+
+    /**
+     * Returns the store the synchronization state is persisted to.
+     * @return The state store, or null if the persistence is disabled.
+     */
+    public SyncStateStore getStateStore() {
+        return stateStore;
+    }
+
+    /**
+     * Returns if a persisted state was restored and waits for the verification by start().
+     * @return True if restored, otherwise False.
+     */
+    public boolean hasRestoredState() {
+        return restoredState != null;
+    }
+
+    /**
+     * Starts the synchronization algorithm.
+     * @return Returns 'false' if no connection to Mesh Service, otherwise 'true'.
+     */
+    @Override
+    public boolean start() {
+        ownId = transport.getOwnId();
+        if (ownId == null) {
+            sendMessageEvent("No active connection to the Mesh Service.");
+            return false;
+        }
+
+        if (root) {
+            //A restarted root continues the wave sequence and the epoch of its previous run
+            waveSequence = (int) (System.currentTimeMillis() / 1000);
+            epoch = Math.max(epoch + 1, waveSequence);
+            treeLevel = 0;
+            clockSynchronized = true;
+            if (backboneEnabled && !backboneRoot) {
+                //The domain root is synchronized by the backbone tree
+                setSnapshot(ClockSnapshot.UNSYNCHRONIZED);
+            } else {
+                setSnapshot(new ClockSnapshot(System.currentTimeMillis(), 0, 0, 0, true));
+            }
+            startBackbone();
+        } else {
+            treeLevel = Integer.MAX_VALUE;
+            resumeRestoredState();
+        }
+
+        sendMessageEvent("Starting TPSN Clock Synchronization Algorithm.....");
+        healthReportTimeout.schedule(HEALTH_REPORT_PERIOD
+                + random.nextInt(config.getRandomIntervalBound()));
+        if (autoTuner != null) {
+            autoTuneTimeout.schedule(AUTO_TUNE_PERIOD);
+        }
+        sync();
+
+        return true;
+    }
+
+    /**
+     * Restarts the synchronization algorithm.
+     * Internally calls the resetBtnClicked() method and then the start() method.
+     * @return Returns 'false' if no connection to Mesh Service, otherwise 'true'.
+     */
+    @Override
+    public boolean restart() {
+        reset();
+        return start();
+    }
+
+    /**
+     * Resets the internal synchronization data.
+     */
+    @Override
+    public void reset() {
+        reset(true);
+    }
+
+    /**
+     * Resets the internal synchronization data.
+     *
+     * @param clearState    True to clear the persisted state too.
+     */
+    private void reset(boolean clearState) {
+        parentId = null;
+        parentError = SyncedTime.UNKNOWN_ERROR;
+        parentExpectedError = SyncedTime.UNKNOWN_ERROR;
+        roundTripDelay = 0;
+        lastResidual = 0;
+        childLinks.clear();
+        piggybackPeers.clear();
+        pacedSender.clear();
+        childHealth.clear();
+        healthReportTimeout.cancel();
+        autoTuneTimeout.cancel();
+        pulsePending = false;
+        offsetEstimator.reset();
+        ownId = null;
+        levelDiscovery = true;
+        treeConstructed = false;
+        syncPhaseStarted = false;
+        retransmitsCount = 0;
+        clockOffset = 0;
+        treeLevel = Integer.MAX_VALUE;
+        root = false;
+        clockSynchronized = false;
+        setSnapshot(ClockSnapshot.UNSYNCHRONIZED);
+        restoredState = null;
+        if (clearState && stateStore != null) {
+            stateStore.clear();
+        }
+        treeConstructionTimeout.cancel();
+        pulseTimeout.cancel();
+        delayedSyncTimeout.cancel();
+        ackFlushTimeout.cancel();
+        newChildAckTimeout.cancel();
+        synchronized (newChildren) {
+            newChildren.clear();
+        }
+        probeTimeout.cancel();
+        discoveryFloodTimeout.cancel();
+        discoveryWaves.clear();
+        waveOriginId = null;
+        synchronized (alternateParents) {
+            alternateParents.clear();
+            probedParents.clear();
+        }
+        pendingAcks.clear();
+        if (backbone != null) {
+            backbone.reset();
+        }
+
+        sendOffsetChangedEvent();
+        sendMessageEvent("The internal synchronization data was resetBtnClicked.");
+    }
+
+    /**
+     * Resets the synchronization and stops the timer thread of the manager,
+     * getInstance() creates a new manager after the singleton is shut down.
+     * The persisted state is kept for the next start of the app.
+     */
+    @Override
+    public void shutdown() {
+        reset(false);
+        if (ownScheduler != null) {
+            ownScheduler.shutdown();
+        }
+        synchronized (TpsnSyncManager.class) {
+            if (instance == this) {
+                instance = null;
+            }
+        }
+    }
+
+    /**
+     * Returns the clock offset applied now, it slews toward the last estimate.
+     * @return The clock offset in ms.
+     */
+    @Override
+    public long getClockOffset() {
+        return snapshot.getOffset(System.currentTimeMillis());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long now() {
+        return snapshot.getSyncedTime(System.currentTimeMillis());
+    }
+
+    /**
+     * {@inheritDoc}
+     * The error bound is the half of the last round trip delay accumulated over the tree levels,
+     * growing with the time elapsed since the last synchronization.
+     */
+    @Override
+    public SyncedTime now(SyncedTime result) {
+        return snapshot.fill(System.currentTimeMillis(), result);
+    }
+
+    /**
+     * {@inheritDoc}
+     * Timestamps before the first synchronization use the first known offset.
+     */
+    @Override
+    public void toSyncedTime(long[] timeStamps, int from, int to) {
+        history.toSyncedTime(timeStamps, from, to);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void nanoTimeToSyncedTime(long[] nanoTimes, int from, int to) {
+        history.nanoTimeToSyncedTime(nanoTimes, from, to, System.currentTimeMillis(),
+                System.nanoTime());
+    }
+
+    /**
+     * Returns the history of the clock synchronizations.
+     * @return The offset history.
+     */
+    public OffsetHistory getOffsetHistory() {
+        return history;
+    }
+
+    /**
+     * Sets the snapshot and publishes it under one lock,
+     * so the published snapshot is always the current one.
+     */
+    private void setSnapshot(ClockSnapshot newSnapshot) {
+        synchronized (snapshotLock) {
+            snapshot = newSnapshot;
+            SharedClockPublisher publisher = sharedClockPublisher;
+            if (publisher != null) {
+                publisher.publish(newSnapshot, epoch);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * The summary of the node's subtree, aggregated from the periodic reports of the children.
+     * The root of the backbone tree knows the subtrees of all the domains.
+     */
+    @Override
+    public SyncHealth getSyncHealth() {
+        TpsnSyncManager backboneMember = backbone;
+        if (backboneMember != null && backboneRoot && treeLevel == 0) {
+            return backboneMember.getSubtreeHealth();
+        }
+        return getSubtreeHealth();
+    }
+
+    /**
+     * Returns the health of this node and the latest reports of its children.
+     * A backbone member reports the subtree of its domain root instead of itself.
+     */
+    private SyncHealth getSubtreeHealth() {
+        long currentTime = System.currentTimeMillis();
+        SyncHealth health;
+        if (domain != null) {
+            health = domain.getSubtreeHealth();
+        } else {
+            ClockSnapshot current = snapshot;
+            health = SyncHealth.ofNode(treeLevel == Integer.MAX_VALUE ? 0 : treeLevel,
+                    current.getErrorBound(currentTime),
+                    clockSynchronized && current.isSynchronized());
+        }
+
+        for (Map.Entry<String, ChildHealth> entry : childHealth.entrySet()) {
+            if (currentTime - entry.getValue().receiveTime > HEALTH_REPORT_TIMEOUT) {
+                childHealth.remove(entry.getKey());
+            } else {
+                health = health.merge(entry.getValue().health);
+            }
+        }
+        return health;
+    }
+
+    /**
+     * Tunes the configuration by the observations of the last period.
+     */
+    private void autoTune() {
+        TpsnAutoTuner tuner = autoTuner;
+        if (tuner == null || ownId == null) {
+            return;
+        }
+        autoTuneTimeout.schedule(AUTO_TUNE_PERIOD);
+
+        if (treeLevel == 0) {
+            tuner.onTreeDepth(getSyncHealth().getMaxLevel());
+        }
+        TpsnConfig current = config;
+        TpsnConfig tuned = tuner.tune(current);
+        if (tuned != current) {
+            setConfig(tuned);
+            sendMessageEvent("Tuned the configuration: " + tuned);
+        }
+    }
+
+    /**
+     * Reports the health of the subtree to the parent.
+     */
+    private void sendHealthReport() {
+        healthReportTimeout.schedule(HEALTH_REPORT_PERIOD);
+
+        String parent = parentId;
+        if (ownId == null || treeLevel == 0 || parent == null) {
+            return;
+        }
+
+        BaseTpsnMessage msg = newMessage(TpsnMessageType.HEALTH_REPORT, treeLevel);
+        msg.setHealth(getSubtreeHealth());
+        msg.setReceiverId(parent);
+        sendMessageEvent("Sending HEALTH_REPORT to parent " + parent + ".");
+        sendData(parent, messagesFactory.encode(msg));
+    }
+
+    /**
+     * Returns the current state of the synchronized clock.
+     * @return The clock snapshot.
+     */
+    public ClockSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+
+    /**
+     * Handles Data received from the network.
+     * @param peerId        The Id of the sender.
+     * @param data          The received data.
+     * @param receiveTime   The local time of the reception.
+     */
+    private void handleDataReceived(String peerId, byte[] data, long receiveTime) {
+
+        if (PiggybackFrame.isFrame(data)) {
+            //The timestamps of the other sync domains and of the previous runs are dropped
+            //like their Tpsn frames, the application payload is delivered anyway
+            boolean timed = ownId != null && PiggybackFrame.getDomainId(data) == domainId
+                    && acceptEpoch(PiggybackFrame.getEpoch(data));
+            handleApplicationData(peerId, data, receiveTime, timed);
+            return;
+        }
+
+        //This node haven't started the sync process yet.
+        if (ownId == null) {
+            return;
+        }
+
+        //The frame header is checked first, so the frames of the other sync domains
+        //and of the previous runs are dropped before decoding.
+        if (!TpsnFrame.isFrame(data)) {
+            return;
+        }
+
+        //Messages of the other sync domains are handled by their members only
+        int frameDomainId = TpsnFrame.getDomainId(data);
+        TpsnSyncManager member = frameDomainId == domainId ? this
+                : frameDomainId == BACKBONE_DOMAIN ? backbone : null;
+        if (member == null || !member.acceptEpoch(TpsnFrame.getEpoch(data))) {
+            return;
+        }
+
+        //decode the TPSN packet
+        BaseTpsnMessage recvMsg = messagesFactory.decode(data);
+
+        if (recvMsg == null) {
+            sendMessageEvent("FAiled to create the TpsnMessage from: " + peerId);
+            return;
+        }
+
+        member.handleMessage(recvMsg, peerId, receiveTime);
+    }
+
+    /**
+     * Handles the application frame. If it answers the last frame sent to the parent,
+     * the timestamps are used as a Sync-Pulse and Ack exchange.
+     * @param peerId        The Id of the sender.
+     * @param frame         The application frame.
+     * @param receiveTime   The local time of the reception.
+     * @param timed         True if the frame is of this sync domain and run.
+     */
+    private void handleApplicationData(String peerId, byte[] frame, long receiveTime,
+                                       boolean timed) {
+        if (timed) {
+            long offset = clockOffset;
+            long[] timeStamps = getPiggybackPeer(peerId).receive(frame, receiveTime + offset,
+                    offset);
+
+            if (timeStamps != null && clockSynchronized && treeLevel != 0
+                    && peerId.equals(parentId)) {
+                sendMessageEvent("Calculating the clock offset from the application data...");
+                offsetCalculated(calculateTheOffset(timeStamps[0], timeStamps[1],
+                        timeStamps[2], timeStamps[3]));
+            }
+        }
+
+        ApplicationDataListener listener = applicationDataListener;
+        if (listener == null) {
+            return;
+        }
+
+        try {
+            listener.applicationDataReceived(peerId,
+                    Arrays.copyOfRange(frame, PiggybackFrame.HEADER_LENGTH, frame.length));
+            // CHECKSTYLE IGNORE IllegalCatchCheck
+        } catch (Exception ex) {
+            // CHECKSTYLE END IGNORE IllegalCatchCheck
+            sendMessageEvent("Failed to invoke applicationDataReceived. See log for details.");
+            LOGGER.log(Level.SEVERE, ex.getMessage(), ex);
+        }
+    }
+
+    private PiggybackPeer getPiggybackPeer(String peerId) {
+        PiggybackPeer peer = piggybackPeers.get(peerId);
+        if (peer == null) {
+            peer = new PiggybackPeer();
+            PiggybackPeer existing = piggybackPeers.putIfAbsent(peerId, peer);
+            if (existing != null) {
+                peer = existing;
+            }
+        }
+        return peer;
+    }
+
+    /**
+     * Checks the sync epoch of a received frame. A newer epoch means the root restarted,
+     * it's adopted and the node joins the tree of the new run from scratch.
+     * A node that doesn't know the epoch yet takes the first one it receives, a stale one
+     * is replaced as soon as a frame of the current run arrives. The epoch is persisted
+     * with the sync state, so a restarted node doesn't fall back to the stale runs.
+     * @param frameEpoch    The sync epoch of the frame.
+     * @return              False if the frame is from a previous run, otherwise True.
+     */
+    private boolean acceptEpoch(int frameEpoch) {
+        //The sender doesn't know the epoch yet
+        if (frameEpoch == 0 || frameEpoch == epoch) {
+            return true;
+        }
+
+        if (epoch != 0 && frameEpoch - epoch < 0) {
+            return false;
+        }
+
+        if (!root) {
+            if (epoch != 0) {
+                sendMessageEvent("New sync epoch " + frameEpoch
+                        + ", the root restarted, joining its new tree.");
+                leavePreviousRun();
+            }
+            epoch = frameEpoch;
+        }
+        return true;
+    }
+
+    /**
+     * Drops the tree and the synchronization state of the previous run.
+     * The clock keeps its current offset until the first exchange in the new run,
+     * it's the only segment of the history left.
+     */
+    private void leavePreviousRun() {
+        clockSynchronized = false;
+        offsetEstimator.reset();
+        parentId = null;
+        parentError = SyncedTime.UNKNOWN_ERROR;
+        parentExpectedError = SyncedTime.UNKNOWN_ERROR;
+        treeLevel = Integer.MAX_VALUE;
+        pulsePending = false;
+        retransmitsCount = 0;
+        restoredState = null;
+        pulseTimeout.cancel();
+        delayedSyncTimeout.cancel();
+        probeTimeout.cancel();
+        discoveryFloodTimeout.cancel();
+        discoveryWaves.clear();
+        waveOriginId = null;
+        synchronized (alternateParents) {
+            alternateParents.clear();
+            probedParents.clear();
+        }
+        childHealth.clear();
+
+        long currentTime = System.currentTimeMillis();
+        history.clear();
+        history.add(currentTime, clockOffset, snapshot.getErrorBound(currentTime));
+    }
+
+    /**
+     * Handles the Tpsn message of this node's sync domain.
+     * @param recvMsg       The received message.
+     * @param peerId        The Id of the sender.
+     * @param receiveTime   The local time of the reception.
+     */
+    private void handleMessage(BaseTpsnMessage recvMsg, String peerId, long receiveTime) {
+
+        //This node haven't started the sync process yet.
+        if (ownId == null) {
+            return;
+        }
+
+        //store the time-stamp if it's a Sync-Pulse or Ack packet
+        long localTimeStamp = receiveTime + clockOffset;
+
+        sendMessageEvent("Received data from: " + peerId);
+
+        switch (recvMsg.getType()) {
+            //Level-Discovery message from the parentId node
+            case LEVEL_DISCOVERY:
+                sendMessageEvent("Received LEVEL_DISCOVERY message with level "
+                        + recvMsg.getLevel() + ", from parent " + peerId);
+                //A node floods its children only, so the sender isn't a child of this node
+                if (childLinks.remove(peerId) != null) {
+                    sendMessageEvent("Node " + peerId + " switched to another parent,"
+                            + " dropped its link report.");
+                }
+                handleLevelDiscovery(recvMsg, peerId);
+                break;
+
+            //Level-Request message from the new connected child node
+            case LEVEL_REQUEST:
+                sendMessageEvent("Received LEVEL_REQUEST message from newly connected child node: "
+                        + peerId);
+                if (treeLevel == Integer.MAX_VALUE) {
+                    sendMessageEvent("No reply. As own level not set yet.");
+                    break;
+                }
+
+                byte[] levelDiscoveryPacket = messagesFactory.encode(createLevelDiscoveryMessage());
+                sendMessageEvent("Sending LEVEL_DISCOVERY message with level " + this.treeLevel
+                        + " to child: " + peerId);
+                sendData(peerId, levelDiscoveryPacket);
+
+                //If Clock already synchronized, send imitated Ack packet from parentId to this node
+                // in order the newly connected node will start sync phase,
+                //after it has processed the Level-Discovery message.
+                //A domain root has the time once its backbone member is synchronized.
+                if (clockSynchronized && snapshot.isSynchronized()) {
+                    synchronized (newChildren) {
+                        if (newChildren.add(peerId) && newChildren.size() == 1) {
+                            newChildAckTimeout.schedule(NEW_CHILD_ACK_DELAY);
+                        }
+                    }
+                } else {
+                    sendMessageEvent("clockSynchronized = false");
+                }
+                break;
+
+            //Time-Sync message from root node, nodes with level 1 should start the sync process.
+            case TIME_SYNC:
+                sendMessageEvent("Received Time-Sync message from ROOT node,"
+                        + " nodes with level 1 should start the sync process. from: "
+                        + peerId);
+                if (treeLevel == 1) {
+                    sendMessageEvent("Starting randomly delayed Sync Phase.");
+                    invokeDelayedSync();
+                }
+                break;
+
+            //Sync-Pulse message from the child node,
+            //the Ack-Message should be sent back as broadcast
+            case SYNC_PULSE:
+                sendMessageEvent("Received Sync-Pulse message from the child node: "
+                        + peerId);
+                if (aggregatedAck) {
+                    if (pendingAcks.add(peerId, recvMsg.getTimeStamp1(),
+                            localTimeStamp)) {
+                        invokeAckFlush();
+                    }
+                    break;
+                }
+                sendMessageEvent("Broadcasting ACK message.");
+                //The Ack sending time (T3) is stamped when the Ack leaves the pacing queue
+                BaseTpsnMessage ackMsg = createAckMessage(treeLevel, recvMsg.getTimeStamp1(),
+                        localTimeStamp, 0, peerId);
+                //TODO: Update the algorithm for our network, probably we don't need to cast data
+                castData(ackMsg);
+                break;
+
+            //Ack message from parentId node, a reply for Sync-Pulse message
+            case ACK:
+                handleAck(peerId, recvMsg.getReceiverId(), recvMsg.getTimeStamp1(),
+                        recvMsg.getTimeStamp2(), recvMsg.getTimeStamp3(), localTimeStamp,
+                        recvMsg.getError());
+                break;
+
+            //Aggregated Ack message from parentId node, a reply for several Sync-Pulse messages
+            case AGGREGATED_ACK:
+                sendMessageEvent("Received AGGREGATED_ACK message with " + recvMsg.getAckCount()
+                        + " entries.");
+                for (int i = 0; i < recvMsg.getAckCount(); i++) {
+                    handleAck(peerId, recvMsg.getReceiverId(i), recvMsg.getTimeStamp1(i),
+                            recvMsg.getTimeStamp2(i), recvMsg.getTimeStamp3(), localTimeStamp,
+                            recvMsg.getError());
+                }
+                break;
+
+            //Health report from a child node, the summary of its subtree
+            case HEALTH_REPORT:
+                handleHealthReport(peerId, recvMsg.getReceiverId(), recvMsg.getHealth(),
+                        receiveTime);
+                break;
+
+            //Link report from a child node, the quality of its last exchange with this node
+            case LINK_REPORT:
+                updateChildLink(peerId, recvMsg.getRoundTripDelay(), recvMsg.getResidual(),
+                        receiveTime);
+                break;
+
+            default:
+                LOGGER.severe("default case");
+                break;
+        }
+    }
+
+    /**
+     * Handles the Health report. Only the children's reports are aggregated: a node reporting
+     * to another parent has left this node's subtree, so its entries are dropped.
+     * @param senderId      The Id of the reporting node.
+     * @param parentId      The Id of the reporting node's parent.
+     * @param health        The sync health of the reporting node's subtree.
+     * @param receiveTime   The local time (ms) the report was received at.
+     */
+    private void handleHealthReport(String senderId, String parentId, SyncHealth health,
+                                    long receiveTime) {
+        if (health == null || ownId == null) {
+            return;
+        }
+
+        if (!ownId.equals(parentId)) {
+            childLinks.remove(senderId);
+            if (childHealth.remove(senderId) != null) {
+                sendMessageEvent("Node " + senderId + " reports to " + parentId
+                        + ", dropped it from the children.");
+            }
+            return;
+        }
+
+        sendMessageEvent("Received HEALTH_REPORT from child " + senderId + ": " + health);
+        childHealth.put(senderId, new ChildHealth(health, receiveTime));
+    }
+
+    /**
+     * Handles the Ack message, or an entry of the aggregated Ack message.
+     * @param senderId          The Id of the Ack sender.
+     * @param receiverId        The Id of the node the Ack is addressed to.
+     * @param timeStamp1        The Sync-Pulse sending time (T1).
+     * @param timeStamp2        The Sync-Pulse receiving time (T2).
+     * @param timeStamp3        The Ack sending time (T3).
+     * @param localTimeStamp    The Ack receiving time (T4).
+     * @param senderError       The cumulative clock error of the Ack sender.
+     */
+    private void handleAck(String senderId, String receiverId, long timeStamp1, long timeStamp2,
+                           long timeStamp3, long localTimeStamp, long senderError) {
+        TpsnAutoTuner tuner = autoTuner;
+        if (tuner != null && ownId != null && senderId.equals(parentId)
+                && !receiverId.equals(ownId)) {
+            tuner.onSiblingAck(receiverId, pulsePending);
+        }
+
+        if (ownId == null) {
+            sendMessageEvent("ownId is null, probably the Sync data was resetBtnClicked.");
+        } else if (receiverId.equals(ownId) && isProbed(senderId)) {
+            handleProbeAck(senderId, timeStamp1, timeStamp2, timeStamp3, localTimeStamp,
+                    senderError);
+        } else if (clockSynchronized) {
+            sendMessageEvent("Received ACK message. Already synchronized.");
+        } else if (receiverId.equals(ownId)) {
+            sendMessageEvent("Received ACK message that was addressed to me.");
+            stopTimer();
+            pulsePending = false;
+            retransmitsCount = 0;
+            sendMessageEvent("Calculating the clock offset...");
+            parentError = senderError;
+            offsetCalculated(calculateTheOffset(timeStamp1, timeStamp2, timeStamp3,
+                    localTimeStamp));
+            sendLinkReport();
+            invokeProbes();
+        } else if (parentId != null && receiverId.equals(parentId)) {
+            sendMessageEvent("Received ACK message that was addressed to my parent.");
+            sendMessageEvent("Starting randomly delayed Sync Phase.");
+            invokeDelayedSync();
+        }
+    }
+
+    /**
+     * Completes a synchronization with the parent, by a Sync-Pulse exchange
+     * or by the application frames.
+     * @param stepped   True if the clock was stepped, False if it's slewed.
+     */
+    private void offsetCalculated(boolean stepped) {
+        clockSynchronized = true;
+        //A slewed clock never jumps, the listeners are notified about the steps only
+        if (stepped) {
+            sendOffsetChangedEvent();
+        }
+        if (domain != null) {
+            domain.backboneOffsetChanged(stepped);
+        }
+    }
+
+    /**
+     * Answers the collected Sync-Pulse messages after the aggregation window.
+     */
+    private void invokeAckFlush() {
+        ackFlushTimeout.schedule(ACK_AGGREGATION_WINDOW);
+    }
+
+    private void flushAcks() {
+        BaseTpsnMessage msg = newMessage(TpsnMessageType.AGGREGATED_ACK, treeLevel);
+        if (pendingAcks.drainTo(msg)) {
+            msg.setError(getCumulativeError());
+            sendMessageEvent("Broadcasting AGGREGATED_ACK message.");
+            castData(msg);
+        }
+    }
+
+    /**
+     * Creates an empty Tpsn message of this node's sync domain.
+     * @param type  The Tpsn Message type.
+     * @param level The Tpsn Tree Level.
+     * @return The Tpsn Message Object.
+     */
+    private BaseTpsnMessage newMessage(TpsnMessageType type, int level) {
+        BaseTpsnMessage msg = messagesFactory.createMessage(type);
+        msg.setDomainId(domainId);
+        msg.setEpoch(epoch);
+        msg.setLevel(level);
+        return msg;
+    }
+
+    /**
+     * Creates the Ack message.
+     * @param level         The Tpsn Tree Level.
+     * @param timeStamp1    The Sync-Pulse sending time (T1).
+     * @param timeStamp2    The Sync-Pulse receiving time (T2).
+     * @param timeStamp3    The Ack sending time (T3), stamped again if the Ack is paced.
+     * @param receiverId    The Id of the receiver node.
+     * @return The Ack message.
+     */
+    private BaseTpsnMessage createAckMessage(int level, long timeStamp1, long timeStamp2,
+                                             long timeStamp3, String receiverId) {
+        BaseTpsnMessage msg = newMessage(TpsnMessageType.ACK, level);
+        msg.setTimeStamp1(timeStamp1);
+        msg.setTimeStamp2(timeStamp2);
+        msg.setTimeStamp3(timeStamp3);
+        msg.setReceiverId(receiverId);
+        msg.setError(getCumulativeError());
+        return msg;
+    }
+
+    /**
+     * Creates the Level-Discovery message, advertising this node's level,
+     * cumulative clock error and round trip delay to its parent.
+     * @return The Level-Discovery message.
+     */
+    private BaseTpsnMessage createLevelDiscoveryMessage() {
+        BaseTpsnMessage msg = newMessage(TpsnMessageType.LEVEL_DISCOVERY, treeLevel);
+        msg.setError(getCumulativeError());
+        msg.setRoundTripDelay(roundTripDelay);
+        msg.setWave(waveOriginId, waveSequence);
+        return msg;
+    }
+
+    /**
+     * Returns the current cumulative clock error estimate of this node.
+     * @return The error in ms, or {@link SyncedTime#UNKNOWN_ERROR}.
+     */
+    private long getCumulativeError() {
+        return snapshot.getErrorBound(System.currentTimeMillis());
+    }
+
+    /**
+     * Bounds an estimated skew, a noisy estimate may exceed what the clocks can drift.
+     * @param skew  The estimated skew in ms per local ms.
+     * @return The skew within {@link #MAX_PARENT_SKEW}.
+     */
+    private static double boundSkew(double skew) {
+        return Math.max(-MAX_PARENT_SKEW, Math.min(skew, MAX_PARENT_SKEW));
+    }
+
+    /**
+     * Returns the clock error expected when synchronizing with the sender of the
+     * Level-Discovery message: its cumulative error plus the error of one more tree level.
+     * Unknown values are estimated from the sender's level.
+     * @param msg   The Level-Discovery message.
+     * @return The expected error in ms.
+     */
+    private static long getExpectedError(BaseTpsnMessage msg) {
+        long hopError = msg.getRoundTripDelay() > 0
+                ? msg.getRoundTripDelay() / 2 : DEFAULT_HOP_ERROR;
+        long senderError = msg.getError() != SyncedTime.UNKNOWN_ERROR
+                ? msg.getError() : (long) msg.getLevel() * DEFAULT_HOP_ERROR;
+        return senderError + hopError;
+    }
+
+    /**
+     * Handles the Level-Discovery message. Only the senders closer to the root than this node
+     * are parent candidates, which keeps the tree loop free. Among them the one with
+     * the lowest expected clock error is chosen, a closer one is preferred unless it's worse,
+     * and a not closer one only if it's clearly better than the current parent.
+     * The echoes of older waves and the duplicates are dropped, and a changed level of the parent
+     * is followed even if it's worse, so only the subtree of a changed node is repaired.
+     * @param msg       The Level-Discovery message.
+     * @param senderId  The Id of the sender.
+     */
+    private void handleLevelDiscovery(BaseTpsnMessage msg, String senderId) {
+        if (msg.getWaveOriginId() != null && !discoveryWaves.accept(msg.getWaveOriginId(),
+                msg.getWaveSequence(), senderId, msg.getLevel())) {
+            sendMessageEvent("Dropped LEVEL_DISCOVERY echo of an older wave or a duplicate.");
+            return;
+        }
+
+        boolean fromParent = senderId.equals(parentId);
+        if (msg.getLevel() >= treeLevel && !fromParent) {
+            return;
+        }
+
+        long expectedError = getExpectedError(msg);
+        if (parentId != null && !senderId.equals(parentId)) {
+            boolean closer = msg.getLevel() < treeLevel - 1;
+            if (closer && expectedError > parentExpectedError) {
+                sendMessageEvent("Ignoring closer parent " + senderId
+                        + " with higher expected error " + expectedError + " ms.");
+                return;
+            }
+            if (!closer && !isClearlyBetterParent(expectedError)) {
+                //A parent candidate on another path, probed to estimate the link asymmetry
+                if (msg.getLevel() == treeLevel - 1) {
+                    synchronized (alternateParents) {
+                        alternateParents.add(senderId);
+                    }
+                }
+                return;
+            }
+        }
+
+        boolean parentChanged = !senderId.equals(parentId);
+        int previousLevel = treeLevel;
+        String previousParentId = parentId;
+        treeLevel = msg.getLevel() + 1;
+        parentId = senderId;
+        synchronized (alternateParents) {
+            if (treeLevel != previousLevel) {
+                alternateParents.clear();
+            } else if (parentChanged && previousParentId != null) {
+                alternateParents.add(previousParentId);
+            }
+            alternateParents.remove(parentId);
+            //The Ack of the new parent completes the sync, even if it was probed
+            probedParents.remove(parentId);
+        }
+        parentExpectedError = expectedError;
+        if (msg.getError() != SyncedTime.UNKNOWN_ERROR) {
+            parentError = msg.getError();
+        }
+
+        if (parentChanged) {
+            sendMessageEvent("Selected parent " + parentId + " with level " + msg.getLevel()
+                    + ", expected error " + expectedError + " ms.");
+            //Resynchronize with the better parent
+            if (clockSynchronized && treeLevel > 0) {
+                clockSynchronized = false;
+                sendMessageEvent("Starting randomly delayed Sync Phase with the new parent.");
+                invokeDelayedSync();
+            }
+        }
+
+        if (treeLevel != previousLevel) {
+            if (msg.getWaveOriginId() != null) {
+                waveOriginId = msg.getWaveOriginId();
+                waveSequence = msg.getWaveSequence();
+            }
+            discoveryFloodTimeout.schedule(DISCOVERY_SETTLE_TIME);
+        }
+    }
+
+    /**
+     * Floods the children with the settled level of this node.
      */
-    private static final int TREE_CONSTRUCTION_TIME = 5 * 1000;
+    private void floodLevelDiscovery() {
+        BaseTpsnMessage msg = createLevelDiscoveryMessage();
+        sendMessageEvent("Sending LEVEL_DISCOVERY message with level "
+                + this.treeLevel + " to children.");
+        sendToChildren(msg);
+    }
 
     /**
-     * The time for starting the synchronization will be a random value (ms)
-     * between 0 and this bound.
+     * Checks if a parent candidate is clearly better than the current parent.
+     * @param expectedError The expected clock error with the candidate parent.
+     * @return True if the expected error improves by the switch margin and by 20%.
      */
-    private static final int RANDOM_INTERVAL_BOUND = 5 * 1000;
+    private boolean isClearlyBetterParent(long expectedError) {
+        if (parentExpectedError == SyncedTime.UNKNOWN_ERROR) {
+            return false;
+        }
 
-    /**
-     * Waiting timeout ms,
-     * after which the sent message will be considered lost.
-     */
-    private static final long TIMEOUT = 60 * 1000;
+        long margin = Math.max(PARENT_SWITCH_MARGIN, parentExpectedError / 5);
+        return expectedError + margin < parentExpectedError;
+    }
 
     /**
-     * Number of retransmits,
-     * after this number of retransmits with no answer the parentId node will be considered DEAD.
+     * Starts the backbone tree member of this root node, if the backbone is enabled.
      */
-    private static final short RETRANSMITS = 3;
-
+    private void startBackbone() {
+        if (!backboneEnabled || domainId == BACKBONE_DOMAIN) {
+            return;
+        }
 
-    private static String TAG = TpsnSyncManager.class.getCanonicalName();
+        if (backbone == null) {
+            backbone = new TpsnSyncManager(transport, messagesFactory, scheduler,
+                    estimatorFactory, BACKBONE_DOMAIN);
+            backbone.domain = this;
+            backbone.config = config;
+            backbone.registerEventListener(backboneListener);
+        }
 
-    private Random random = new Random();
-    private int appPort;
-    private MeshManager meshManager;
-    private BaseTpsnMessageFactory messagesFactory;
-    private Timer timer = new Timer(true);
-    private TimerTask timerElapsedTask;
-    private TimerTask syncDelayedTask;
-    private short retransmitsCount = 0;
-    private boolean levelDiscovery = true;
-    private MeshId parentId = null;
-    private MeshId ownId = null;
-    private int treeLevel = Integer.MAX_VALUE;
-    private boolean root = false;
-    private boolean clockSynchronized = false;
-    private long clockOffset = 0;
+        backbone.reset();
+        backbone.isRoot(backboneRoot);
+        sendMessageEvent("Joining the backbone tree"
+                + (backboneRoot ? " as its root." : "."));
+        backbone.start();
+    }
 
-    private CopyOnWriteArraySet<EventListener> eventListeners = new CopyOnWriteArraySet<>();
+    /**
+     * The root follows the clock of its backbone tree member, including its slews.
+     * Once it's synchronized, the sync phase of the root's own domain can be started.
+     */
+    private void backboneOffsetChanged(boolean stepped) {
+        ClockSnapshot backboneSnapshot = backbone.getSnapshot();
+        if (treeLevel != 0 || !backboneSnapshot.isSynchronized()) {
+            return;
+        }
 
+        clockOffset = backbone.clockOffset;
+        history.add(backboneSnapshot);
+        setSnapshot(backboneSnapshot);
+        if (stepped) {
+            sendOffsetChangedEvent();
+        }
 
-    private static volatile TpsnSyncManager instance = null;
+        //The domain Sync Phase starts on the later of the tree construction and this event
+        if (treeConstructed && !syncPhaseStarted) {
+            sendMessageEvent("Synchronized with the backbone, starting the domain Sync Phase.");
+            sync();
+        }
+    }
 
     /**
-     * Gets the TpsnSync manager.
-     *
-     * @param meshManager       The mesh manager object.
-     * @param appPort           The application port number.
-     * @param messagesFactory   The messages factory.
-     * @return                  The TpsnSync manager object.
+     * Rejoins the tree at the persisted level and parent, if the parent is still reachable,
+     * so the following sync() only verifies the restored offset with the parent.
      */
-    public static TpsnSyncManager getInstance(MeshManager meshManager, int appPort,
-                                              BaseTpsnMessageFactory messagesFactory) {
-        if (instance == null) {
-            synchronized (TpsnSyncManager.class) {
-                if (instance == null) {
-                    instance = new TpsnSyncManager(meshManager, appPort, messagesFactory);
-                }
-            }
+    private void resumeRestoredState() {
+        SyncState state = restoredState;
+        restoredState = null;
+        if (state == null || state.getParentId() == null) {
+            return;
         }
 
-        return instance;
-    }
-
-    private TpsnSyncManager(MeshManager meshManager, int appPort,
-                            BaseTpsnMessageFactory messagesFactory) {
-        this.appPort = appPort;
-        this.meshManager = meshManager;
-        this.messagesFactory = messagesFactory;
+        Set<String> peers = getPeers();
+        if (peers == null) {
+            return;
+        }
 
-        meshManager.on(DATA_RECEIVED, new Consumer() {
-            @Override
-            public void accept(Object o) throws Exception {
-                handleDataReceived((MeshManager.RightMeshEvent) o);
+        for (String peerId : peers) {
+            if (peerId.equals(state.getParentId())) {
+                parentId = peerId;
+                treeLevel = state.getLevel();
+                sendMessageEvent("Resuming at level " + treeLevel + " with parent " + parentId
+                        + ", verifying the restored clock offset.");
+                return;
             }
-        });
+        }
+
+        sendMessageEvent("The persisted parent is not reachable, joining the tree.");
     }
 
     /**
-     * Sets the Tpsn Algorithm isRoot status for the current node.
-     * @param isRoot    The is root status.
+     * Persists the current synchronization state.
      */
-    public void isRoot(boolean isRoot) {
-        this.root = isRoot;
+    private void saveState() {
+        if (stateStore == null || root || parentId == null) {
+            return;
+        }
+
+        long currentTime = System.currentTimeMillis();
+        SyncState state = new SyncState(currentTime, monotonicClock.nanoTime(), clockOffset,
+                snapshot.getSkew(), snapshot.getErrorBound(currentTime),
+                treeLevel, parentId, epoch);
+        try {
+            stateStore.save(state);
+        } catch (IOException e) {
+            sendMessageEvent("Failed to save the sync state. See log for details.");
+            LOGGER.log(Level.SEVERE, "Failed to save the sync state.", e);
+        }
     }
 
     /**
-     * Starts the synchronization algorithm.
-     * @return Returns 'false' if no connection to Mesh Service, otherwise 'true'.
+     * Sends imitated Ack packets from this node's parent to the newly connected children.
      */
-    @Override
-    public boolean start() {
-        ownId = meshManager.getUuid();
-        if (ownId == null) {
-            sendMessageEvent("No active connection to the Mesh Service.");
-            return false;
+    private void sendNewChildrenAcks() {
+        String[] children;
+        synchronized (newChildren) {
+            children = newChildren.toArray(new String[newChildren.size()]);
+            newChildren.clear();
         }
 
-        if (root) {
-            treeLevel = 0;
-            clockSynchronized = true;
-        } else {
-            treeLevel = Integer.MAX_VALUE;
+        byte[] dummyAckPacket = messagesFactory.encode(
+                createAckMessage(treeLevel - 1, 0, 0, 0, ownId));
+        for (String childId : children) {
+            sendMessageEvent("If already Synchronized, "
+                    + "send imitated Ack packet from parentId to a new child: " + childId);
+            sendData(childId, dummyAckPacket);
         }
-
-        sendMessageEvent("Starting TPSN Clock Synchronization Algorithm.....");
-        sync();
-
-        return true;
     }
 
     /**
-     * Restarts the synchronization algorithm.
-     * Internally calls the resetBtnClicked() method and then the start() method.
-     * @return Returns 'false' if no connection to Mesh Service, otherwise 'true'.
+     * Probes the alternate parent candidates after a randomly delayed time,
+     * to compare the offsets obtained over their paths with the one of the parent.
      */
-    @Override
-    public boolean restart() {
-        reset();
-        return start();
+    private void invokeProbes() {
+        synchronized (alternateParents) {
+            if (alternateParents.isEmpty()) {
+                return;
+            }
+        }
+        probeTimeout.schedule(random.nextInt(config.getRandomIntervalBound()));
     }
 
     /**
-     * Resets the internal synchronization data.
+     * Sends a Sync-Pulse message to each alternate parent candidate.
      */
-    @Override
-    public void reset() {
-        parentId = null;
-        ownId = null;
-        levelDiscovery = true;
-        retransmitsCount = 0;
-        clockOffset = 0;
-        treeLevel = Integer.MAX_VALUE;
-        root = false;
-        clockSynchronized = false;
-
-        //Clean all canceled Tasks
-        timer.purge();
+    private void sendProbes() {
+        String[] candidates;
+        synchronized (alternateParents) {
+            candidates = alternateParents.toArray(new String[alternateParents.size()]);
+            probedParents.addAll(alternateParents);
+        }
 
-        sendOffsetChangedEvent();
-        sendMessageEvent("The internal synchronization data was resetBtnClicked.");
+        for (String candidateId : candidates) {
+            BaseTpsnMessage pulseMsg = newMessage(TpsnMessageType.SYNC_PULSE, treeLevel);
+            pulseMsg.setTimeStamp1(getCurrentTimeMillis());
+            sendMessageEvent("Sending probe SYNC_PULSE to parent candidate: " + candidateId);
+            sendData(candidateId, messagesFactory.encode(pulseMsg));
+        }
     }
 
-    /**
-     * Returns the clock drift.
-     * @return
-     */
-    @Override
-    public long getClockOffset() {
-        return clockOffset;
+    private boolean isProbed(String senderId) {
+        synchronized (alternateParents) {
+            return probedParents.contains(senderId);
+        }
     }
 
-
     /**
-     * Handles Data received from the Mesh Network.
-     * @param e The right mesh event.
+     * Handles the Ack message of a probed parent candidate. The offset obtained
+     * over its path is only compared with the other paths, it isn't applied.
+     * @param candidateId       The Id of the parent candidate.
+     * @param timeStamp1        The Sync-Pulse sending time (T1).
+     * @param timeStamp2        The Sync-Pulse receiving time (T2).
+     * @param timeStamp3        The Ack sending time (T3).
+     * @param timeStamp4        The Ack receiving time (T4).
+     * @param candidateError    The cumulative clock error of the parent candidate.
      */
-    private void handleDataReceived(MeshManager.RightMeshEvent e) {
-
-        //store the time-stamp if it's a Sync-Pulse or Ack packet
-        long localTimeStamp = getCurrentTimeMillis();
-
-        sendMessageEvent("Received data from: " + e.peerUuid);
+    private void handleProbeAck(String candidateId, long timeStamp1, long timeStamp2,
+                                long timeStamp3, long timeStamp4, long candidateError) {
+        synchronized (alternateParents) {
+            probedParents.remove(candidateId);
+        }
 
-        //This node haven't started the sync process yet.
-        if (ownId == null) {
+        //The candidate isn't synchronized, its path can't be compared
+        if (candidateError == SyncedTime.UNKNOWN_ERROR) {
             return;
         }
 
-        final MeshManager.DataReceivedEvent event = (MeshManager.DataReceivedEvent) e;
+        long offsetCorrection = ((timeStamp2 - timeStamp1) - (timeStamp4 - timeStamp3)) / 2;
+        linkAsymmetry.addSample(candidateId, timeStamp4 - clockOffset,
+                clockOffset + offsetCorrection, candidateError);
+        sendMessageEvent("Probed parent candidate " + candidateId + ", offset difference: "
+                + offsetCorrection + ", parent link correction: "
+                + (parentId == null ? 0 : linkAsymmetry.getCorrection(parentId)));
 
-        //decode the TPSN packet
-        BaseTpsnMessage recvMsg = messagesFactory.createFromByteArray(event.data);
+        if (stateStore != null) {
+            try {
+                stateStore.saveLinkAsymmetry(linkAsymmetry);
+            } catch (IOException e) {
+                sendMessageEvent("Failed to save the link asymmetry. See log for details.");
+                LOGGER.log(Level.SEVERE, "Failed to save the link asymmetry.", e);
+            }
+        }
+    }
 
-        if (recvMsg == null) {
-            sendMessageEvent("FAiled to create the TpsnMessage from: " + event.peerUuid);
+    /**
+     * Reports the round trip delay and the offset residual of the exchange just completed
+     * to the parent, in the bidirectional exchange mode.
+     */
+    private void sendLinkReport() {
+        String parent = parentId;
+        if (!linkReports || parent == null) {
             return;
         }
 
-        switch (recvMsg.getType()) {
-            //Level-Discovery message from the parentId node
-            case LEVEL_DISCOVERY:
-                sendMessageEvent("Received LEVEL_DISCOVERY message with level "
-                        + recvMsg.getLevel() + ", from parent " + event.peerUuid);
-                if (recvMsg.getLevel() < this.treeLevel) {
-                    this.treeLevel = recvMsg.getLevel() + 1;
-                    parentId = event.peerUuid;
-                    byte[] packet = messagesFactory.create(TpsnMessageType.LEVEL_DISCOVERY,
-                            this.treeLevel);
-                    sendMessageEvent("Sending LEVEL_DISCOVERY message with level "
-                            + this.treeLevel + " to children.");
-                    sendToChildren(packet);
-                }
-                break;
-
-            //Level-Request message from the new connected child node
-            case LEVEL_REQUEST:
-                sendMessageEvent("Received LEVEL_REQUEST message from newly connected child node: "
-                        + event.peerUuid);
-                if (treeLevel == Integer.MAX_VALUE) {
-                    sendMessageEvent("No reply. As own level not set yet.");
-                    break;
-                }
-
-                byte[] levelDiscoveryPacket
-                        = messagesFactory.create(TpsnMessageType.LEVEL_DISCOVERY, treeLevel);
-                try {
-                    sendMessageEvent("Sending LEVEL_DISCOVERY message with level " + this.treeLevel
-                            + " to child: " + event.peerUuid);
-                    meshManager.sendDataReliable(event.peerUuid, appPort, levelDiscoveryPacket);
-                } catch (RightMeshException e1) {
-                    sendMessageEvent("Failed to sendDataReliable: peerUuid:" + event.peerUuid
-                            + " appPort:" + appPort + ". See log for details.");
-                    Log.e(TAG, "Failed to sendDataReliable: peerUuid:" + event.peerUuid
-                            + " appPort:" + appPort, e1);
-                }
-
-                //If Clock already synchronized, send imitated Ack packet from parentId to this node
-                // in order the newly connected node will start sync phase
-                if (clockSynchronized) {
-                    try {
-                        Thread.sleep(3000);
-                    } catch (InterruptedException e1) {
-                        sendMessageEvent("Thread.sleep failed. See log for details.");
-                        Log.e(TAG, "Thread.sleep failed.", e1);
-                    }
-
-                    byte[] dummyAckPacket = messagesFactory.create(TpsnMessageType.ACK,
-                            treeLevel - 1, 0,0,0,
-                            ownId.toString());
-                    try {
-                        sendMessageEvent("If already Synchronized, "
-                                + "send imitated Ack packet from parentId to a new child: "
-                                + event.peerUuid);
-                        meshManager.sendDataReliable(event.peerUuid, appPort, dummyAckPacket);
-                    } catch (RightMeshException e1) {
-                        sendMessageEvent("Failed to sendDataReliable: peerUuid:" + event.peerUuid
-                                + " appPort:" + appPort + ("See log for details"));
-                        Log.e(TAG, "Failed to sendDataReliable: peerUuid:" + event.peerUuid
-                                + " appPort:" + appPort, e1);
-                    }
-                } else {
-                    sendMessageEvent("clockSynchronized = false");
-                }
-                break;
-
-            //Time-Sync message from root node, nodes with level 1 should start the sync process.
-            case TIME_SYNC:
-                sendMessageEvent("Received Time-Sync message from ROOT node,"
-                        + " nodes with level 1 should start the sync process. from: "
-                        + event.peerUuid);
-                if (treeLevel == 1) {
-                    sendMessageEvent("Starting randomly delayed Sync Phase.");
-                    invokeDelayedSync();
-                }
-                break;
-
-            //Sync-Pulse message from the child node,
-            //the Ack-Message should be sent back as broadcast
-            case SYNC_PULSE:
-                sendMessageEvent("Received Sync-Pulse message from the child node: "
-                        + event.peerUuid);
-                sendMessageEvent("Broadcasting ACK message.");
-                byte[] ackPacket = messagesFactory.create(TpsnMessageType.ACK, treeLevel,
-                        recvMsg.getTimeStamp1(), localTimeStamp, getCurrentTimeMillis(),
-                        event.peerUuid.toString());
-                //TODO: Update the algorithm for our network, probably we don't need to cast data
-                castData(ackPacket);
-                break;
-
-            //Ack message from parentId node, a reply for Sync-Pulse message
-            case ACK:
-                if (ownId == null) {
-                    sendMessageEvent("ownId is null, probably the Sync data was resetBtnClicked.");
-                } else if (clockSynchronized) {
-                    sendMessageEvent("Received ACK message. Already synchronized.");
-                } else if (recvMsg.getReceiverId().equals(ownId.toString())) {
-                    sendMessageEvent("Received ACK message that was addressed to me.");
-                    stopTimer();
-                    sendMessageEvent("Calculating the clock offset...");
-                    calculateTheOffset(recvMsg, localTimeStamp);
-                    clockSynchronized = true;
-                    sendOffsetChangedEvent();
-                } else if (parentId != null
-                        && recvMsg.getReceiverId().equals(parentId.toString())) {
-                    sendMessageEvent("Received ACK message that was addressed to my parent.");
-                    sendMessageEvent("Starting randomly delayed Sync Phase.");
-                    invokeDelayedSync();
-                }
-                break;
+        BaseTpsnMessage msg = newMessage(TpsnMessageType.LINK_REPORT, treeLevel);
+        msg.setRoundTripDelay(roundTripDelay);
+        msg.setResidual(lastResidual);
+        sendMessageEvent("Sending LINK_REPORT to parent " + parent + ".");
+        sendData(parent, messagesFactory.encode(msg));
+    }
 
-            default:
-                Log.e(TAG, "default case");
-                break;
+    /**
+     * Records the link quality reported by the child.
+     * @param childId           The Id of the child node.
+     * @param childRoundTrip    The round trip delay (ms) observed by the child.
+     * @param childResidual     The offset residual (ms) observed by the child.
+     * @param receiveTime       The local time (ms) of the report.
+     */
+    private void updateChildLink(String childId, long childRoundTrip, long childResidual,
+                                 long receiveTime) {
+        ChildLinkQuality quality = childLinks.get(childId);
+        quality = quality == null
+                ? ChildLinkQuality.create(childRoundTrip, childResidual, receiveTime)
+                : quality.update(childRoundTrip, childResidual, receiveTime);
+        childLinks.put(childId, quality);
+        TpsnAutoTuner tuner = autoTuner;
+        if (tuner != null) {
+            tuner.onRoundTripDelay(childRoundTrip);
         }
+        sendMessageEvent("Link to child " + childId + ": " + quality);
     }
 
     private void invokeDelayedSync() {
-        syncDelayedTask = new TimerTask() {
-            @Override
-            public void run() {
-                sync();
-            }
-        };
-
-        long rand = random.nextInt(RANDOM_INTERVAL_BOUND);
+        long rand = random.nextInt(config.getRandomIntervalBound());
 
         //The Sync Phase will be started after waiting Random time.
-        timer.schedule(syncDelayedTask, rand);
+        delayedSyncTimeout.schedule(rand);
     }
 
     /**
      * Calculates the Clock's Offset.
-     * @param msg           The Ack Tpsn Message.
+     * @param timeStamp1   The Sync-Pulse sending time (T1).
+     * @param timeStamp2   The Sync-Pulse receiving time (T2).
+     * @param timeStamp3   The Ack sending time (T3).
      * @param timeStamp4   Current local Timestamp (T4).
+     * @return             True if the clock was stepped, False if it's slewed.
      */
-    private void calculateTheOffset(BaseTpsnMessage msg, long timeStamp4) {
+    private boolean calculateTheOffset(long timeStamp1, long timeStamp2, long timeStamp3,
+                                    long timeStamp4) {
+        long localTimeStamp4 = timeStamp4 - clockOffset;
+
         //Offset = ((T2 - T1) - (T4 - T3)) / 2
-        clockOffset = ((msg.getTimeStamp2() - msg.getTimeStamp1())
-                - (timeStamp4 - msg.getTimeStamp3())) / 2;
-        sendMessageEvent("--> Clock Offset: " + clockOffset);
+        //T1 and T4 already include the current offset, so it's corrected by the result.
+        long offsetCorrection = ((timeStamp2 - timeStamp1) - (timeStamp4 - timeStamp3)) / 2;
+
+        //The symmetric delay assumption is biased on an asymmetric link,
+        //the bias estimated by comparing the paths to the other parent candidates is removed.
+        //A parent of an unknown error can't be compared, like in handleProbeAck().
+        long linkOffset = clockOffset + offsetCorrection;
+        long sampleOffset = linkOffset;
+        if (parentId != null) {
+            if (parentError != SyncedTime.UNKNOWN_ERROR) {
+                linkAsymmetry.addSample(parentId, localTimeStamp4, linkOffset, parentError);
+            }
+            sampleOffset = linkOffset - linkAsymmetry.getCorrection(parentId);
+        }
+
+        //Round trip delay = (T4 - T1) - (T3 - T2),
+        //the offset error of the symmetric delay assumption is at most the half of it.
+        roundTripDelay = Math.max((timeStamp4 - timeStamp1) - (timeStamp3 - timeStamp2), 0);
+        TpsnAutoTuner tuner = autoTuner;
+        if (tuner != null) {
+            tuner.onRoundTripDelay(roundTripDelay);
+        }
+        offsetEstimator.addSample(localTimeStamp4, sampleOffset, roundTripDelay);
+        clockOffset = offsetEstimator.getOffset();
+
+        //Each tree level adds a similar error.
+        long estimatorError = offsetEstimator.getError();
+        long error = parentError != SyncedTime.UNKNOWN_ERROR
+                ? parentError + estimatorError
+                : estimatorError * Math.max(treeLevel, 1);
+
+        long currentTime = System.currentTimeMillis();
+        boolean stepped = clockDiscipline.isStep(snapshot, currentTime, clockOffset);
+        //The snapshot runs at the estimated skew, so the offset follows the drift between the
+        //exchanges
+        double skew = boundSkew(offsetEstimator.getSkew());
+        setSnapshot(clockDiscipline.discipline(snapshot, currentTime, clockOffset, error)
+                .withSkew(skew));
+        long residual = history.add(localTimeStamp4, clockOffset, error);
+        lastResidual = residual;
+        if (Math.abs(residual) > CLOCK_JUMP_THRESHOLD + error) {
+            sendMessageEvent("--> Clock jump detected: " + residual + " ms.");
+        }
+        saveState();
+        sendMessageEvent("--> Clock Offset: " + clockOffset + ", error: " + error
+                + ", RTT: " + roundTripDelay + ", skew: " + skew
+                + (stepped ? ", stepped." : ", slewing."));
+        return stepped;
     }
 
     /**
      * Stops the timeout timer.
      */
     private void stopTimer() {
-        if (timerElapsedTask != null) {
-            timerElapsedTask.cancel();
-        }
+        pulseTimeout.cancel();
     }
 
     /**
@@ -372,7 +1793,12 @@ public final class TpsnSyncManager implements ClockSyncManager {
      * after waiting for Ack message timeout.
      */
     private void syncPulseTimeout() {
-        if (++retransmitsCount == RETRANSMITS) {
+        pulsePending = false;
+        TpsnAutoTuner tuner = autoTuner;
+        if (tuner != null) {
+            tuner.onPulseTimeout();
+        }
+        if (++retransmitsCount >= config.getRetransmits()) {
             reset();
         } else {
             sync();
@@ -389,197 +1815,234 @@ public final class TpsnSyncManager implements ClockSyncManager {
 
             //Start the Level Discovery phase
             if (levelDiscovery) {
-                byte[] msg = messagesFactory.create(TpsnMessageType.LEVEL_DISCOVERY, treeLevel);
+                waveOriginId = ownId;
+                waveSequence++;
+                BaseTpsnMessage msg = createLevelDiscoveryMessage();
                 sendMessageEvent("Sending LEVEL_DISCOVERY to children.");
                 sendToChildren(msg);
                 levelDiscovery = false;
 
-                timerElapsedTask = new TimerTask() {
-                    @Override
-                    public void run() {
-                        sync();
-                    }
-                };
-
                 //The Sync Phase will be started after waiting Tree Construction time.
-                timer.schedule(timerElapsedTask, TREE_CONSTRUCTION_TIME);
+                treeConstructionTimeout.schedule(config.getTreeConstructionTime());
+            } else if (!treeConstructed || syncPhaseStarted) {
+                sendMessageEvent("Sync Phase not due.");
+            } else if (!snapshot.isSynchronized()) {
+                sendMessageEvent("Waiting for the backbone synchronization.");
             } else { //Start the Sync Phase
-                byte[] msg = messagesFactory.create(TpsnMessageType.TIME_SYNC);
+                syncPhaseStarted = true;
+                BaseTpsnMessage msg = newMessage(TpsnMessageType.TIME_SYNC, 0);
                 sendMessageEvent("Sending TIME_SYNC to children.");
                 sendToChildren(msg);
             }
         } else { //if not root
             //not a root and doesn't have a parentId
             if (treeLevel == Integer.MAX_VALUE) {
-                byte[] msg = messagesFactory.create(TpsnMessageType.LEVEL_REQUEST);
+                BaseTpsnMessage msg = newMessage(TpsnMessageType.LEVEL_REQUEST, 0);
                 sendMessageEvent("Sending LEVEL_REQUEST to parent.");
                 sendToParent(msg);
             } else { //has parentId, request sync
-                timerElapsedTask = new TimerTask() {
-                    @Override
-                    public void run() {
-                        syncPulseTimeout();
-                    }
-                };
-
-                timer.schedule(timerElapsedTask, TIMEOUT);
-                byte[] msg = messagesFactory.create(TpsnMessageType.SYNC_PULSE, treeLevel,
-                        getCurrentTimeMillis());
+                pulseTimeout.schedule(config.getTimeout());
+                pulsePending = true;
+                TpsnAutoTuner tuner = autoTuner;
+                if (tuner != null) {
+                    tuner.onPulseSent();
+                }
+                BaseTpsnMessage pulseMsg = newMessage(TpsnMessageType.SYNC_PULSE, treeLevel);
+                pulseMsg.setTimeStamp1(getCurrentTimeMillis());
                 sendMessageEvent("Sending SYNC_PULSE to parent.");
-                sendToParent(msg);
+                sendToParent(pulseMsg);
             }
         }
     }
 
-    private void castData(byte[] message) {
+    private void castData(BaseTpsnMessage message) {
 
         //Get peers that listening to the specific port
-        Set<MeshId> peers = null;
-        try {
-            peers = meshManager.getPeers(appPort);
-        } catch (RightMeshException e) {
-            sendMessageEvent("Failed to get Peers. See log for details.");
-            Log.e(TAG, "Failed to get Peers.", e);
-        }
-
+        Set<String> peers = getPeers();
         if (peers == null) {
             return;
         }
 
-        for (MeshId peerMeshId : peers) {
-            if (peerMeshId.equals(ownId) || peerMeshId.equals(parentId)) {
+        List<String> targets = new ArrayList<>(peers.size());
+        for (String peerId : peers) {
+            if (peerId.equals(ownId) || peerId.equals(parentId)) {
                 continue;
             }
-
-            try {
-                sendMessageEvent("Sending to: " + peerMeshId);
-                meshManager.sendDataReliable(peerMeshId, appPort, message);
-            } catch (RightMeshException e1) {
-                sendMessageEvent("Failed to sendDataReliable: peerUuid:" + peerMeshId + " appPort:"
-                        + appPort + ". See log for details.");
-                Log.e(TAG, "Failed to sendDataReliable: peerUuid:" + peerMeshId + " appPort:"
-                        + appPort, e1);
-            }
+            targets.add(peerId);
         }
+        sendPaced(targets, message);
     }
 
-    private void sendToChildren(byte[] message) {
+    private void sendToChildren(BaseTpsnMessage message) {
 
-        //Get peers that listening to the specific port
-        Set<MeshId> peers = null;
-        try {
-            peers = meshManager.getPeers(appPort);
-        } catch (RightMeshException e) {
-            sendMessageEvent("Failed to get Peers. See log for details.");
-            Log.e(TAG, "Failed to get Peers.", e);
+        //The backbone members are roots anywhere in the mesh, not direct neighbors
+        if (domainId == BACKBONE_DOMAIN) {
+            castData(message);
+            return;
         }
 
+        //Get peers that listening to the specific port
+        Set<String> peers = getPeers();
         if (peers == null) {
             return;
         }
 
         try {
             //If a Client, there are no children.
-            HashMap<String, MeshDnsProtos.MeshRequest.Role> role
-                    = meshManager.getRole(meshManager.getUuid());
-            if (role.containsValue(MeshDnsProtos.MeshRequest.Role.CLIENT)) {
+            if (transport.getRoles(ownId).contains(TpsnTransport.Role.CLIENT)) {
                 return;
             }
-        } catch (RightMeshException e) {
-            e.printStackTrace();
+        } catch (TransportException e) {
+            LOGGER.log(Level.SEVERE, "Failed to get the roles of node: " + ownId, e);
         }
 
         //find out direct children and send the level discovery message
-        for (MeshId peerMeshId : peers) {
-            if (peerMeshId.equals(ownId) || peerMeshId.equals(parentId)) {
+        List<String> children = new ArrayList<>(peers.size());
+        for (String peerId : peers) {
+            if (peerId.equals(ownId) || peerId.equals(parentId)) {
                 continue;
             }
 
-            MeshId nextHopPeer = null;
+            String nextHopPeer = null;
             try {
-                nextHopPeer = meshManager.getNextHopPeer(peerMeshId);
-            } catch (RightMeshException e) {
-                sendMessageEvent("Failed to getNextHopPeer for node: " + peerMeshId
+                nextHopPeer = transport.getNextHopPeer(peerId);
+            } catch (TransportException e) {
+                sendMessageEvent("Failed to getNextHopPeer for node: " + peerId
                         + ". See log for details.");
-                Log.e(TAG, "Failed to getNextHopPeer for node: " + peerMeshId, e);
+                LOGGER.log(Level.SEVERE, "Failed to getNextHopPeer for node: " + peerId, e);
                 continue;
             }
 
             //Direct child
-            if (nextHopPeer.equals(peerMeshId)) {
-                try {
-                    sendMessageEvent("Sending to children: " + peerMeshId);
-                    meshManager.sendDataReliable(peerMeshId, appPort, message);
-                } catch (RightMeshException e) {
-                    sendMessageEvent("Failed to send data to node: " + peerMeshId
-                            + ". See log for details.");
-                    Log.e(TAG, "Failed to send data to node: " + peerMeshId, e);
-                }
+            if (peerId.equals(nextHopPeer)) {
+                children.add(peerId);
             }
         }
+        sendPaced(children, message);
     }
 
 
-    private void sendToParent(byte[] message) {
+    private void sendToParent(BaseTpsnMessage msg) {
 
         if (parentId != null) {
-            try {
-                meshManager.sendDataReliable(parentId, appPort, message);
-            } catch (RightMeshException e) {
-                sendMessageEvent("Failed to sendDataReliable: parentId:" + parentId + "appPort:"
-                        + appPort + ". See log for details.");
-                Log.e(TAG, "Failed to sendDataReliable: parentId:" + parentId + " appPort:"
-                        + appPort, e);
-            }
+            sendData(parentId, messagesFactory.encode(msg));
             return;
         }
 
-        //Get peers that listening to the a specific port
-        Set<MeshId> peers = null;
-        try {
-            peers = meshManager.getPeers(appPort);
-        } catch (RightMeshException e) {
-            sendMessageEvent("Failed to get Peers. See log for details.");
-            Log.e(TAG, "Failed to get Peers.", e);
+        //The backbone members are roots anywhere in the mesh, not direct neighbors
+        if (domainId == BACKBONE_DOMAIN) {
+            castData(msg);
+            return;
         }
 
+        //Get peers that listening to the a specific port
+        Set<String> peers = getPeers();
         if (peers == null) {
             return;
         }
 
+        byte[] message = messagesFactory.encode(msg);
+
         //find out a direct parentId
-        for (MeshId peerMeshId : peers) {
-            if (peerMeshId.equals(ownId)) {
+        for (String peerId : peers) {
+            if (peerId.equals(ownId)) {
                 continue;
             }
 
             try {
-                HashMap<String, MeshDnsProtos.MeshRequest.Role> role
-                        = meshManager.getRole(peerMeshId);
+                Set<TpsnTransport.Role> roles = transport.getRoles(peerId);
 
                 //TODO: There are maybe different Masters on different interfaces,
                 //to which one we want to send the message.
-                if ((role.containsValue(MeshDnsProtos.MeshRequest.Role.MASTER)
-                        || role.containsValue(MeshDnsProtos.MeshRequest.Role.ROUTER))
-                        && meshManager.getNextHopPeer(peerMeshId).equals(peerMeshId)) {
-                    try {
-                        sendMessageEvent("Sending to parent: " + peerMeshId);
-                        meshManager.sendDataReliable(peerMeshId, appPort, message);
-                    } catch (RightMeshException e) {
-                        sendMessageEvent("Failed to sendDataReliable: peerMeshId:" + peerMeshId
-                                + " appPort:" + appPort + ". See log for details.");
-                        Log.e(TAG, "Failed to sendDataReliable: peerMeshId:" + peerMeshId
-                                + " appPort:" + appPort, e);
-                    }
+                if ((roles.contains(TpsnTransport.Role.MASTER)
+                        || roles.contains(TpsnTransport.Role.ROUTER))
+                        && peerId.equals(transport.getNextHopPeer(peerId))) {
+                    sendMessageEvent("Sending to parent: " + peerId);
+                    sendData(peerId, message);
                 }
-            } catch (RightMeshException e) {
-                sendMessageEvent("Failed to Role for node: " + peerMeshId + "."
+            } catch (TransportException e) {
+                sendMessageEvent("Failed to Role for node: " + peerId + "."
                         + " See log for details.");
-                Log.e(TAG, "Failed to Role for node: " + peerMeshId, e);
+                LOGGER.log(Level.SEVERE, "Failed to Role for node: " + peerId, e);
             }
         }
     }
 
+    /**
+     * Queues the message to the peers, to be sent spread across the pacing window.
+     * The Ack messages are encoded at dequeue, to stamp their sending time (T3) then.
+     * @param peerIds   The Ids of the destination peers.
+     * @param msg       The message.
+     */
+    private void sendPaced(List<String> peerIds, BaseTpsnMessage msg) {
+        TpsnMessageType type = msg.getType();
+        byte[] data = type == TpsnMessageType.ACK || type == TpsnMessageType.AGGREGATED_ACK
+                ? null : messagesFactory.encode(msg);
+        pacedSender.send(peerIds, msg, data, config.getPacingWindow());
+    }
+
+    /**
+     * Sends a message dequeued by the paced sender.
+     * @param peerId        The Id of the peer.
+     * @param msg           The message.
+     * @param data          The encoded message, or null to stamp the Ack and encode it now.
+     * @param queueDelay    The time (ms) the message waited in the queue.
+     */
+    private void sendDequeued(String peerId, BaseTpsnMessage msg, byte[] data,
+                              long queueDelay) {
+        byte[] message = data;
+        if (message == null) {
+            //The paced sender sends one message at a time, so the shared message can be stamped
+            msg.setTimeStamp3(getCurrentTimeMillis());
+            message = messagesFactory.encode(msg);
+        }
+
+        sendMessageEvent("Sending to: " + peerId + " (queued " + queueDelay + " ms)");
+        sendData(peerId, message);
+
+        SendListener listener = sendListener;
+        if (listener == null) {
+            return;
+        }
+
+        try {
+            listener.messageSent(peerId, msg.getType(), queueDelay);
+            // CHECKSTYLE IGNORE IllegalCatchCheck
+        } catch (Exception ex) {
+            // CHECKSTYLE END IGNORE IllegalCatchCheck
+            sendMessageEvent("Failed to invoke messageSent. See log for details.");
+            LOGGER.log(Level.SEVERE, ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Returns the peers reachable through the transport.
+     * @return The Ids of the peers, or null if failed to get them.
+     */
+    private Set<String> getPeers() {
+        try {
+            return transport.getPeers();
+        } catch (TransportException e) {
+            sendMessageEvent("Failed to get Peers. See log for details.");
+            LOGGER.log(Level.SEVERE, "Failed to get Peers.", e);
+            return null;
+        }
+    }
+
+    /**
+     * Sends the message to the peer.
+     * @param peerId    The Id of the peer.
+     * @param message   The message.
+     */
+    private void sendData(String peerId, byte[] message) {
+        try {
+            transport.send(peerId, message);
+        } catch (TransportException e) {
+            sendMessageEvent("Failed to send data to node: " + peerId + ". See log for details.");
+            LOGGER.log(Level.SEVERE, "Failed to send data to node: " + peerId, e);
+        }
+    }
+
     private void sendMessageEvent(String message) {
         for (EventListener listener : eventListeners) {
             try {
@@ -589,7 +2052,7 @@ public final class TpsnSyncManager implements ClockSyncManager {
                 // CHECKSTYLE END IGNORE IllegalCatchCheck
                 sendMessageEvent("Failed to invoke debugMessageReceived Event. "
                         + "See log for details.");
-                Log.e(TAG, ex.getMessage(), ex);
+                LOGGER.log(Level.SEVERE, ex.getMessage(), ex);
                 unregisterEventListener(listener);
             }
         }
@@ -604,7 +2067,7 @@ public final class TpsnSyncManager implements ClockSyncManager {
                 // CHECKSTYLE END IGNORE IllegalCatchCheck
                 sendMessageEvent("Failed to invoke clockSyncOffsetChanged event. "
                         + "See log for details.");
-                Log.e(TAG, ex.getMessage(), ex);
+                LOGGER.log(Level.SEVERE, ex.getMessage(), ex);
                 unregisterEventListener(listener);
             }
         }
@@ -620,6 +2083,19 @@ public final class TpsnSyncManager implements ClockSyncManager {
         return eventListeners.remove(listener);
     }
 
+    /**
+     * The last health report of a child.
+     */
+    private static final class ChildHealth {
+        private final SyncHealth health;
+        private final long receiveTime;
+
+        ChildHealth(SyncHealth health, long receiveTime) {
+            this.health = health;
+            this.receiveTime = receiveTime;
+        }
+    }
+
     private long getCurrentTimeMillis() {
         return (System.currentTimeMillis() + clockOffset);
     }
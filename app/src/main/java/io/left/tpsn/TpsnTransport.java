@@ -0,0 +1,87 @@
+package io.left.tpsn;
+
+import java.util.Set;
+
+/**
+ * The network transport the Tpsn protocol runs over.
+ * Peers are identified by their string Ids, the transport maps them to its own addresses.
+ */
+public interface TpsnTransport {
+
+    /**
+     * Roles of the nodes in the network topology.
+     * A CLIENT node has no children, the parents are chosen among MASTER and ROUTER nodes.
+     */
+    enum Role {
+        CLIENT,
+        MASTER,
+        ROUTER
+    }
+
+    /**
+     * Receives the data sent by the peers.
+     */
+    interface Receiver {
+
+        /**
+         * Called when data is received from a peer.
+         * The transport may reuse the data array after the call returns.
+         *
+         * @param peerId        The Id of the sender.
+         * @param data          The received data.
+         * @param receiveTime   Local System.currentTimeMillis() of the data reception,
+         *                      taken as close to the network as the transport allows.
+         */
+        void onDataReceived(String peerId, byte[] data, long receiveTime);
+    }
+
+    /**
+     * Returns the Id of this node.
+     *
+     * @return  The own Id, or null if the transport is not connected.
+     */
+    String getOwnId();
+
+    /**
+     * Returns the peers reachable through the transport.
+     *
+     * @return                      The Ids of the peers.
+     * @throws TransportException   If failed to get the peers.
+     */
+    Set<String> getPeers() throws TransportException;
+
+    /**
+     * Returns the peer the data to the given peer is forwarded through.
+     *
+     * @param peerId                The Id of the destination peer.
+     * @return                      The Id of the next hop peer, equals to peerId for neighbors,
+     *                              or null if the peer has no route.
+     * @throws TransportException   If failed to get the next hop.
+     */
+    String getNextHopPeer(String peerId) throws TransportException;
+
+    /**
+     * Returns the roles of the node.
+     *
+     * @param peerId                The Id of the node, may be the own Id.
+     * @return                      The roles of the node.
+     * @throws TransportException   If failed to get the roles.
+     */
+    Set<Role> getRoles(String peerId) throws TransportException;
+
+    /**
+     * Sends the data to the peer.
+     *
+     * @param peerId                The Id of the destination peer.
+     * @param data                  The data to send.
+     * @throws TransportException   If failed to send.
+     */
+    void send(String peerId, byte[] data) throws TransportException;
+
+    /**
+     * Sets the receiver of the data sent by the peers.
+     *
+     * @param receiver  The receiver, or null to stop receiving.
+     */
+    void setReceiver(Receiver receiver);
+}
@@ -0,0 +1,28 @@
+package io.left.tpsn;
+
+/**
+ * Thrown by the {@link TpsnTransport} when a network operation fails.
+ */
+public class TransportException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Creates the exception.
+     *
+     * @param message   The error message.
+     */
+    public TransportException(String message) {
+        super(message);
+    }
+
+    /**
+     * Creates the exception.
+     *
+     * @param message   The error message.
+     * @param cause     The cause of the failure.
+     */
+    public TransportException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,59 @@
+package io.left.tpsn;
+
+/**
+ * The classic Tpsn estimator, the offset is the one of the last exchange
+ * and its error is the half of the round trip delay.
+ * The skew is the offset change between the last two samples.
+ */
+public final class TwoWayOffsetEstimator implements OffsetEstimator {
+
+    /**
+     * Creates the two-way estimators.
+     */
+    public static final Factory FACTORY = new Factory() {
+        @Override
+        public OffsetEstimator create() {
+            return new TwoWayOffsetEstimator();
+        }
+    };
+
+    private boolean hasSample = false;
+    private long sampleTime;
+    private long offset;
+    private long error;
+    private double skew;
+
+    @Override
+    public void addSample(long localTime, long offset, long roundTripDelay) {
+        skew = hasSample && localTime > sampleTime
+                ? (double) (offset - this.offset) / (localTime - sampleTime)
+                : 0;
+        hasSample = true;
+        this.sampleTime = localTime;
+        this.offset = offset;
+        this.error = Math.max(roundTripDelay, 0) / 2;
+    }
+
+    @Override
+    public long getOffset() {
+        return offset;
+    }
+
+    @Override
+    public double getSkew() {
+        return skew;
+    }
+
+    @Override
+    public long getError() {
+        return error;
+    }
+
+    @Override
+    public void reset() {
+        hasSample = false;
+        offset = 0;
+        error = 0;
+        skew = 0;
+    }
+}
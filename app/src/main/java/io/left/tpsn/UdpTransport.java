@@ -0,0 +1,226 @@
+package io.left.tpsn;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * {@link TpsnTransport} over UDP, used to run many nodes on one host and measure
+ * the protocol with real socket latency.
+ * All peers are neighbors with the ROUTER role, they are added by {@link #addPeer}.
+ * The channel is non-blocking and served by one selector thread, the datagrams are
+ * received into and sent from direct buffers reused for every packet.
+ * The data handed to the receiver is copied to an array reused while the datagrams keep
+ * their length, so the receiver must not keep it after the call.
+ * The JVM doesn't expose the kernel receive timestamps (SO_TIMESTAMPNS), so the receive
+ * time is taken right after the receive call, before the data is copied and dispatched.
+ */
+public class UdpTransport implements TpsnTransport {
+
+    /**
+     * The maximum size of a datagram.
+     */
+    public static final int MAX_DATAGRAM_SIZE = 65507;
+
+    private static final Logger LOGGER = Logger.getLogger(UdpTransport.class.getName());
+
+    private final String ownId;
+    private final DatagramChannel channel;
+    private final Selector selector;
+    private final ByteBuffer receiveBuffer = ByteBuffer.allocateDirect(MAX_DATAGRAM_SIZE);
+    private final ByteBuffer sendBuffer = ByteBuffer.allocateDirect(MAX_DATAGRAM_SIZE);
+    //Used by the receive thread only
+    private byte[] receiveData = new byte[0];
+    private final Map<String, SocketAddress> peerAddresses = new ConcurrentHashMap<>();
+    private final Map<SocketAddress, String> peerIds = new ConcurrentHashMap<>();
+    private final Thread receiveThread;
+    private volatile Receiver receiver;
+
+    /**
+     * Creates the transport and starts receiving.
+     *
+     * @param ownId         The Id of this node.
+     * @param address       The local address to bind to.
+     * @throws IOException  If failed to open the socket.
+     */
+    public UdpTransport(String ownId, InetSocketAddress address) throws IOException {
+        this.ownId = ownId;
+        this.channel = DatagramChannel.open();
+        channel.socket().bind(address);
+        channel.configureBlocking(false);
+        this.selector = Selector.open();
+        channel.register(selector, SelectionKey.OP_READ);
+
+        receiveThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                receive();
+            }
+        }, "UdpTransport-" + ownId);
+        receiveThread.setDaemon(true);
+        receiveThread.start();
+    }
+
+    /**
+     * Adds a neighbor.
+     *
+     * @param peerId    The Id of the peer.
+     * @param address   The address the peer is bound to.
+     */
+    public void addPeer(String peerId, InetSocketAddress address) {
+        peerAddresses.put(peerId, address);
+        peerIds.put(address, peerId);
+    }
+
+    /**
+     * Returns the local address of the socket.
+     *
+     * @return  The bound address.
+     */
+    public InetSocketAddress getLocalAddress() {
+        return (InetSocketAddress) channel.socket().getLocalSocketAddress();
+    }
+
+    /**
+     * Closes the socket and stops receiving.
+     */
+    public void close() {
+        try {
+            selector.close();
+            channel.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Failed to close the channel.", e);
+        }
+    }
+
+    @Override
+    public String getOwnId() {
+        return ownId;
+    }
+
+    @Override
+    public Set<String> getPeers() {
+        return new HashSet<>(peerAddresses.keySet());
+    }
+
+    @Override
+    public String getNextHopPeer(String peerId) {
+        return peerAddresses.containsKey(peerId) ? peerId : null;
+    }
+
+    @Override
+    public Set<Role> getRoles(String peerId) {
+        return EnumSet.of(Role.ROUTER);
+    }
+
+    @Override
+    public void send(String peerId, byte[] data) throws TransportException {
+        SocketAddress address = peerAddresses.get(peerId);
+        if (address == null) {
+            throw new TransportException("Unknown peer: " + peerId);
+        }
+
+        if (data.length > MAX_DATAGRAM_SIZE) {
+            throw new TransportException("The data is too large for a datagram: " + data.length);
+        }
+
+        synchronized (sendBuffer) {
+            sendBuffer.clear();
+            sendBuffer.put(data);
+            sendBuffer.flip();
+            try {
+                //A non-blocking send drops the datagram if the socket buffer is full,
+                //like a loss on the network.
+                if (channel.send(sendBuffer, address) == 0) {
+                    throw new TransportException("The socket buffer is full, dropped data to: "
+                            + peerId);
+                }
+            } catch (IOException e) {
+                throw new TransportException("Failed to send data to: " + peerId, e);
+            }
+        }
+    }
+
+    @Override
+    public void setReceiver(Receiver receiver) {
+        this.receiver = receiver;
+    }
+
+    private void receive() {
+        while (channel.isOpen()) {
+            try {
+                selector.select();
+                selector.selectedKeys().clear();
+            } catch (ClosedSelectorException e) {
+                return;
+            } catch (IOException e) {
+                LOGGER.log(Level.SEVERE, "Failed to select the channel.", e);
+                return;
+            }
+
+            //drain all the queued datagrams before selecting again
+            while (receiveDatagram()) {
+                continue;
+            }
+        }
+    }
+
+    /**
+     * Receives one datagram and dispatches it to the receiver.
+     *
+     * @return  False if there was no datagram to receive, otherwise True.
+     */
+    private boolean receiveDatagram() {
+        SocketAddress address;
+        receiveBuffer.clear();
+        try {
+            address = channel.receive(receiveBuffer);
+        } catch (IOException e) {
+            if (channel.isOpen()) {
+                LOGGER.log(Level.SEVERE, "Failed to receive data.", e);
+            }
+            return false;
+        }
+        long receiveTime = System.currentTimeMillis();
+
+        if (address == null) {
+            return false;
+        }
+
+        String peerId = peerIds.get(address);
+        Receiver currentReceiver = receiver;
+        if (peerId == null || currentReceiver == null) {
+            return true;
+        }
+
+        //The frames of a message type mostly have the same length
+        receiveBuffer.flip();
+        if (receiveData.length != receiveBuffer.remaining()) {
+            receiveData = new byte[receiveBuffer.remaining()];
+        }
+        byte[] data = receiveData;
+        receiveBuffer.get(data);
+
+        // CHECKSTYLE IGNORE IllegalCatchCheck
+        try {
+            currentReceiver.onDataReceived(peerId, data, receiveTime);
+        } catch (Exception e) {
+            LOGGER.log(Level.SEVERE, "Failed to handle data from: " + peerId, e);
+        }
+        // CHECKSTYLE END IGNORE IllegalCatchCheck
+
+        return true;
+    }
+}
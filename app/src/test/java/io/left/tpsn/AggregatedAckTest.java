@@ -0,0 +1,110 @@
+package io.left.tpsn;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the aggregated Ack mode of a parent with many children.
+ */
+public class AggregatedAckTest {
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    //The children pulse at once, within the aggregation window
+    private static final TpsnConfig CONFIG = TpsnConfig.DEFAULT.withRandomIntervalBound(1);
+    private static final int CHILDREN = 3;
+
+    private final TpsnMessageFactory factory = new TpsnMessageFactory();
+    private final LoopbackNetwork network = new LoopbackNetwork();
+    private final ManualScheduler scheduler = new ManualScheduler();
+
+    @Test
+    public void pulsesWithinTheWindow_areAnsweredByOneAggregatedAck() {
+        TpsnSyncManager root = new TpsnSyncManager(network.addNode("root", DIRECT), factory,
+                scheduler);
+        root.isRoot(true);
+        root.setAggregatedAck(true);
+        root.setConfig(CONFIG);
+
+        List<TpsnSyncManager> children = new ArrayList<>();
+        final List<List<String>> childMessages = new ArrayList<>();
+        for (int i = 0; i < CHILDREN; i++) {
+            TpsnSyncManager child = new TpsnSyncManager(network.addNode("c" + i, DIRECT),
+                    factory, scheduler);
+            child.setConfig(CONFIG);
+            network.connect("root", "c" + i);
+            final List<String> messages = new CopyOnWriteArrayList<>();
+            child.registerEventListener(new ClockSyncManager.EventListener() {
+                @Override
+                public void clockSyncOffsetChanged(long clockOffset) {
+                }
+
+                @Override
+                public void debugMessagereceived(String debugMessage) {
+                    messages.add(debugMessage);
+                }
+            });
+            children.add(child);
+            childMessages.add(messages);
+        }
+
+        //A bystander of the root records its fan-out
+        TpsnTransport observer = network.addNode("observer", DIRECT);
+        network.connect("root", "observer");
+        final List<BaseTpsnMessage> acks = new CopyOnWriteArrayList<>();
+        observer.setReceiver(new TpsnTransport.Receiver() {
+            @Override
+            public void onDataReceived(String peerId, byte[] data, long receiveTime) {
+                BaseTpsnMessage msg = factory.decode(data);
+                if (msg.getType() == TpsnMessageType.ACK
+                        || msg.getType() == TpsnMessageType.AGGREGATED_ACK) {
+                    acks.add(msg);
+                }
+            }
+        });
+
+        //The children join the tree by the root's Level-Discovery and sync on its Time-Sync
+        for (TpsnSyncManager child : children) {
+            assertTrue(child.start());
+        }
+        assertTrue(root.start());
+        scheduler.advance(CONFIG.getTreeConstructionTime() + 1000);
+
+        assertEquals(1, acks.size());
+        BaseTpsnMessage ack = acks.get(0);
+        assertEquals(TpsnMessageType.AGGREGATED_ACK, ack.getType());
+        HashSet<String> receivers = new HashSet<>();
+        for (int i = 0; i < ack.getAckCount(); i++) {
+            receivers.add(ack.getReceiverId(i));
+        }
+        assertEquals(new HashSet<>(Arrays.asList("c0", "c1", "c2")), receivers);
+
+        //Each child takes its own entry only
+        for (int i = 0; i < CHILDREN; i++) {
+            TpsnSyncManager child = children.get(i);
+            assertTrue(child.getSnapshot().isSynchronized());
+            int own = 0;
+            for (String message : childMessages.get(i)) {
+                if (message.equals("Received ACK message that was addressed to me.")) {
+                    own++;
+                }
+            }
+            assertEquals(1, own);
+            long errorBound = child.getSnapshot().getErrorBound(System.currentTimeMillis());
+            assertTrue(Math.abs(child.getClockOffset()) <= errorBound + 1);
+        }
+    }
+}
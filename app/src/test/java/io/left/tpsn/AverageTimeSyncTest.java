@@ -0,0 +1,200 @@
+package io.left.tpsn;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the Average TimeSync virtual clock.
+ */
+public class AverageTimeSyncTest {
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private static final long INTERVAL = 100 * 1000;
+    //Enough broadcast periods of 1 s for a few nodes to agree
+    private static final long CONVERGENCE_TIME = 60 * 1000;
+    //The nodes share the local clock, the disagreement left is of the ms timestamps
+    //and of the messages delayed by the pauses of the JVM
+    private static final long CONVERGED_SPREAD = 10;
+
+    private final TpsnMessageFactory factory = new TpsnMessageFactory();
+    private final FakeTransport transport = new FakeTransport();
+
+    @Test
+    public void snapshot_runsAtTheSkewOfTheVirtualClock() {
+        AverageTimeSyncManager manager = new AverageTimeSyncManager(transport, factory,
+                new ManualScheduler());
+        assertTrue(manager.start());
+
+        //The neighbor's clock runs 50 ppm faster
+        long receiveTime = 1000000;
+        long sendTime = 2000000;
+        for (int i = 0; i < 20; i++) {
+            receive(sendTime, receiveTime);
+            receiveTime += INTERVAL;
+            sendTime += INTERVAL + INTERVAL * 50 / 1000000;
+        }
+
+        ClockSnapshot snapshot = manager.getSnapshot();
+        assertTrue(manager.getSkew() > 1);
+        assertEquals(manager.getSkew() - 1, snapshot.getSkew(), 0);
+        //The virtual clock and the snapshot agree far after the last update
+        long later = snapshot.getAnchor() + 1000 * 1000;
+        double expectedOffset = snapshot.getOffset() + (manager.getSkew() - 1) * 1000 * 1000;
+        assertEquals(expectedOffset, snapshot.getOffset(later), 1);
+    }
+
+    @Test
+    public void ring_convergesAndStaysConvergedOnJoinAndLeave() throws TransportException {
+        LoopbackNetwork network = new LoopbackNetwork();
+        ManualScheduler scheduler = new ManualScheduler();
+        Map<String, AverageTimeSyncManager> nodes = new LinkedHashMap<>();
+        for (String nodeId : new String[] {"a", "b", "c", "d"}) {
+            nodes.put(nodeId, new AverageTimeSyncManager(network.addNode(nodeId, DIRECT),
+                    factory, scheduler));
+        }
+        network.connect("a", "b");
+        network.connect("b", "c");
+        network.connect("c", "d");
+        network.connect("d", "a");
+
+        for (AverageTimeSyncManager node : nodes.values()) {
+            assertTrue(node.start());
+        }
+        //The node a starts ahead of the others
+        pullAhead(network, "a", 1000);
+        assertTrue(getSpread(nodes) >= 400);
+
+        scheduler.advance(CONVERGENCE_TIME);
+        assertTrue(getSpread(nodes) <= CONVERGED_SPREAD);
+
+        //The new node joins ahead of the others
+        AverageTimeSyncManager joined = new AverageTimeSyncManager(network.addNode("e", DIRECT),
+                factory, scheduler);
+        assertTrue(joined.start());
+        pullAhead(network, "e", 2000);
+        nodes.put("e", joined);
+        network.connect("e", "a");
+        network.connect("e", "c");
+        assertTrue(getSpread(nodes) >= 400);
+        scheduler.advance(CONVERGENCE_TIME);
+        assertTrue(getSpread(nodes) <= CONVERGED_SPREAD);
+
+        //The ring stays connected through e without b
+        AverageTimeSyncManager left = nodes.remove("b");
+        network.disconnect("b", "a");
+        network.disconnect("b", "c");
+        left.shutdown();
+        scheduler.advance(CONVERGENCE_TIME);
+        assertTrue(getSpread(nodes) <= CONVERGED_SPREAD);
+    }
+
+    @Test
+    public void runnerNodes_synchronizeWithTheirNeighbors() throws InterruptedException {
+        TpsnNodeRunner runner = new TpsnNodeRunner(factory, 2);
+        try {
+            AverageTimeSyncManager first = runner.addAverageTimeSyncNode("first");
+            AverageTimeSyncManager second = runner.addAverageTimeSyncNode("second");
+            runner.connect("first", "second");
+            runner.start();
+
+            long deadline = System.currentTimeMillis() + 5000;
+            while (!(first.getSnapshot().isSynchronized()
+                    && second.getSnapshot().isSynchronized())
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+
+            assertTrue(first.getSnapshot().isSynchronized());
+            assertTrue(second.getSnapshot().isSynchronized());
+            assertTrue(Math.abs(first.getClockOffset() - second.getClockOffset())
+                    <= CONVERGED_SPREAD);
+        } finally {
+            runner.shutdown(1000);
+        }
+    }
+
+    /**
+     * Pulls the virtual clock of the node ahead by the half of the given time,
+     * with a single message of a passing node.
+     */
+    private void pullAhead(LoopbackNetwork network, String nodeId, long ahead)
+            throws TransportException {
+        String seedId = "seed-" + nodeId;
+        TpsnTransport seed = network.addNode(seedId, DIRECT);
+        network.connect(seedId, nodeId);
+        long time = System.currentTimeMillis();
+        BaseTpsnMessage msg = factory.createMessage(TpsnMessageType.AVERAGE_SYNC);
+        msg.setDomainId(TpsnSyncManager.DEFAULT_DOMAIN);
+        msg.setTimeStamp1(time);
+        msg.setTimeStamp2(time + ahead);
+        msg.setSkew(1);
+        seed.send(nodeId, factory.encode(msg));
+        network.disconnect(seedId, nodeId);
+    }
+
+    private static long getSpread(Map<String, AverageTimeSyncManager> nodes) {
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (AverageTimeSyncManager node : nodes.values()) {
+            min = Math.min(min, node.getClockOffset());
+            max = Math.max(max, node.getClockOffset());
+        }
+        return max - min;
+    }
+
+    private void receive(long sendTime, long receiveTime) {
+        BaseTpsnMessage msg = factory.createMessage(TpsnMessageType.AVERAGE_SYNC);
+        msg.setDomainId(TpsnSyncManager.DEFAULT_DOMAIN);
+        msg.setTimeStamp1(sendTime);
+        msg.setTimeStamp2(sendTime);
+        msg.setSkew(1);
+        transport.receiver.onDataReceived("peer", factory.encode(msg), receiveTime);
+    }
+
+    private static final class FakeTransport implements TpsnTransport {
+        private Receiver receiver;
+
+        @Override
+        public String getOwnId() {
+            return "node";
+        }
+
+        @Override
+        public Set<String> getPeers() {
+            return Collections.singleton("peer");
+        }
+
+        @Override
+        public String getNextHopPeer(String peerId) {
+            return peerId;
+        }
+
+        @Override
+        public Set<Role> getRoles(String peerId) {
+            return EnumSet.of(Role.ROUTER);
+        }
+
+        @Override
+        public void send(String peerId, byte[] data) {
+        }
+
+        @Override
+        public void setReceiver(Receiver receiver) {
+            this.receiver = receiver;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package io.left.tpsn;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the sync domains joined by the backbone of their roots.
+ */
+public class BackboneTest {
+
+    private static final TpsnConfig FAST = TpsnConfig.DEFAULT.withTreeConstructionTime(500)
+            .withRandomIntervalBound(200).withTimeout(2000);
+
+    private final TpsnNodeRunner runner = new TpsnNodeRunner(new TpsnMessageFactory(), 2);
+
+    @After
+    public void tearDown() throws InterruptedException {
+        runner.shutdown(1000);
+    }
+
+    @Test
+    public void domainRoots_startTheSyncPhaseOnceAfterTheBackbone() throws InterruptedException {
+        List<TpsnSyncManager> nodes = new ArrayList<>();
+        AtomicInteger[] timeSyncs = new AtomicInteger[2];
+        for (int domain = 0; domain < 2; domain++) {
+            TpsnSyncManager root = addNode("root" + domain, true, domain, nodes);
+            root.setBackbone(true, domain == 0);
+            timeSyncs[domain] = countMessages(root, "Sending TIME_SYNC to children.");
+            for (int i = 0; i < 4; i++) {
+                addNode("d" + domain + "n" + i, false, domain, nodes);
+                runner.connect("d" + domain + "n" + i, i < 2 ? "root" + domain
+                        : "d" + domain + "n" + (i - 2));
+            }
+        }
+        runner.connect("root0", "root1");
+
+        runner.start();
+        waitForSync(nodes, 20000);
+        //A later backbone resync doesn't start the Sync Phase again
+        Thread.sleep(FAST.getTreeConstructionTime() + FAST.getRandomIntervalBound());
+
+        assertEquals(1, timeSyncs[0].get());
+        assertEquals(1, timeSyncs[1].get());
+        long reference = nodes.get(0).now();
+        for (TpsnSyncManager node : nodes) {
+            assertTrue(Math.abs(node.now() - reference) < 100);
+        }
+    }
+
+    private TpsnSyncManager addNode(String nodeId, boolean root, int domain,
+                                    List<TpsnSyncManager> nodes) {
+        TpsnSyncManager node = runner.addNode(nodeId, root);
+        node.setDomainId(domain);
+        node.setConfig(FAST);
+        nodes.add(node);
+        return node;
+    }
+
+    private static AtomicInteger countMessages(TpsnSyncManager node, final String message) {
+        final AtomicInteger count = new AtomicInteger();
+        node.registerEventListener(new ClockSyncManager.EventListener() {
+            @Override
+            public void clockSyncOffsetChanged(long clockOffset) {
+            }
+
+            @Override
+            public void debugMessagereceived(String debugMessage) {
+                if (debugMessage.equals(message)) {
+                    count.incrementAndGet();
+                }
+            }
+        });
+        return count;
+    }
+
+    private static void waitForSync(List<TpsnSyncManager> nodes, long timeout)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeout;
+        while (System.currentTimeMillis() < deadline) {
+            int synced = 0;
+            for (TpsnSyncManager node : nodes) {
+                if (node.getSnapshot().isSynchronized()) {
+                    synced++;
+                }
+            }
+            if (synced == nodes.size()) {
+                return;
+            }
+            Thread.sleep(50);
+        }
+        throw new AssertionError("Not synchronized within " + timeout + " ms.");
+    }
+}
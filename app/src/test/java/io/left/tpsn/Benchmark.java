@@ -0,0 +1,7 @@
+package io.left.tpsn;
+
+/**
+ * JUnit category of the long running benchmarks, left out of the unit test run.
+ */
+public interface Benchmark {
+}
@@ -0,0 +1,115 @@
+package io.left.tpsn;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the clock discipline and the slewing snapshots.
+ */
+public class ClockDisciplineTest {
+
+    private final ClockDiscipline discipline = new ClockDiscipline();
+
+    @Test
+    public void discipline_stepsTheFirstSynchronization() {
+        ClockSnapshot snapshot = discipline.discipline(ClockSnapshot.UNSYNCHRONIZED, 1000, 50, 2);
+
+        assertTrue(snapshot.isSynchronized());
+        assertEquals(50, snapshot.getOffset(1000));
+        assertEquals(1050, snapshot.getSyncedTime(1000));
+    }
+
+    @Test
+    public void discipline_stepsALargeDifference() {
+        ClockSnapshot current = discipline.discipline(ClockSnapshot.UNSYNCHRONIZED, 1000, 0, 2);
+
+        assertTrue(discipline.isStep(current, 2000,
+                ClockDiscipline.DEFAULT_STEP_THRESHOLD + 1));
+        ClockSnapshot stepped = discipline.discipline(current, 2000, 500, 2);
+        assertEquals(500, stepped.getOffset(2000));
+    }
+
+    @Test
+    public void discipline_slewsASmallDifferenceAtTheBoundedRate() {
+        ClockSnapshot current = discipline.discipline(ClockSnapshot.UNSYNCHRONIZED, 0, 0, 2);
+        assertFalse(discipline.isStep(current, 1000, 100));
+        ClockSnapshot slewing = discipline.discipline(current, 1000, 100, 2);
+
+        assertEquals(0, slewing.getOffset(1000));
+        //500 ppm is 0.5 ms per second
+        assertEquals(5, slewing.getOffset(11000));
+        assertEquals(100, slewing.getOffset(1000 + 200 * 1000));
+        assertEquals(100, slewing.getOffset(Long.MAX_VALUE / 1000000));
+        assertEquals(100, slewing.getOffset());
+    }
+
+    @Test
+    public void slewBack_keepsTheSyncedTimeMonotonic() {
+        ClockSnapshot current = discipline.discipline(ClockSnapshot.UNSYNCHRONIZED, 0, 100, 2);
+        ClockSnapshot slewing = discipline.discipline(current, 1000, 0, 2);
+
+        long previous = slewing.getSyncedTime(0);
+        for (long localTime = 1; localTime < 300 * 1000; localTime++) {
+            long syncedTime = slewing.getSyncedTime(localTime);
+            assertTrue("time went back at " + localTime, syncedTime >= previous);
+            previous = syncedTime;
+        }
+        assertEquals(0, slewing.getOffset(300 * 1000));
+    }
+
+    @Test
+    public void reSlew_startsFromTheAppliedOffset() {
+        ClockSnapshot current = discipline.discipline(ClockSnapshot.UNSYNCHRONIZED, 0, 0, 2);
+        ClockSnapshot slewing = discipline.discipline(current, 0, 100, 2);
+        //Half way through a new estimate arrives
+        ClockSnapshot reslewing = discipline.discipline(slewing, 100 * 1000, 20, 2);
+
+        assertEquals(50, reslewing.getStartOffset());
+        assertEquals(50, reslewing.getOffset(100 * 1000));
+        assertEquals(45, reslewing.getOffset(110 * 1000));
+        assertEquals(20, reslewing.getOffset(200 * 1000));
+    }
+
+    @Test
+    public void getErrorBound_includesTheRestOfTheSlew() {
+        ClockSnapshot current = discipline.discipline(ClockSnapshot.UNSYNCHRONIZED, 0, 0, 2);
+        ClockSnapshot slewing = discipline.discipline(current, 0, 100, 2);
+
+        assertEquals(2 + 100, slewing.getErrorBound(0));
+        //10 s of the 100 ppm drift and of the 500 ppm slew
+        assertEquals(2 + 1 + 95, slewing.getErrorBound(10 * 1000));
+        assertEquals(SyncedTime.UNKNOWN_ERROR,
+                ClockSnapshot.UNSYNCHRONIZED.getErrorBound(0));
+    }
+
+    @Test
+    public void withSkew_extrapolatesTheOffset() {
+        ClockSnapshot snapshot = new ClockSnapshot(1000, 50, 2,
+                ClockSnapshot.CLOCK_DRIFT_BOUND_PPM, true).withSkew(1e-5);
+
+        assertEquals(50, snapshot.getOffset());
+        assertEquals(50, snapshot.getOffset(1000));
+        assertEquals(60, snapshot.getOffset(1000 + 1000 * 1000));
+        assertEquals(1e-5, snapshot.getSkew(), 0);
+        //The skew is no error, only the drift bound grows it
+        assertEquals(2 + 100, snapshot.getErrorBound(1000 + 1000 * 1000));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void withSkew_rejectsASkewOutOfTheBound() {
+        ClockSnapshot.UNSYNCHRONIZED.withSkew(0.5);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_rejectsASlewRateBreakingTheMonotonicity() {
+        new ClockDiscipline(1000000, ClockDiscipline.DEFAULT_STEP_THRESHOLD);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_rejectsANegativeStepThreshold() {
+        new ClockDiscipline(ClockDiscipline.DEFAULT_MAX_SLEW_RATE_PPM, -1);
+    }
+}
@@ -0,0 +1,69 @@
+package io.left.tpsn;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the Level-Discovery wave filter.
+ */
+public class DiscoveryWavesTest {
+
+    @Test
+    public void accept_dropsTheOlderWaves() {
+        DiscoveryWaves waves = new DiscoveryWaves();
+
+        assertTrue(waves.accept("root", 5, "a", 0));
+        assertFalse(waves.accept("root", 4, "b", 0));
+        assertTrue(waves.accept("root", 6, "a", 0));
+    }
+
+    @Test
+    public void accept_dropsTheExactDuplicates() {
+        DiscoveryWaves waves = new DiscoveryWaves();
+
+        assertTrue(waves.accept("root", 5, "a", 1));
+        assertFalse(waves.accept("root", 5, "a", 1));
+        //The same wave from another neighbor is a parent candidate
+        assertTrue(waves.accept("root", 5, "b", 1));
+        //A changed level of the sender in the same wave
+        assertTrue(waves.accept("root", 5, "a", 2));
+        assertFalse(waves.accept("root", 5, "a", 2));
+    }
+
+    @Test
+    public void accept_newWaveForgetsTheSenders() {
+        DiscoveryWaves waves = new DiscoveryWaves();
+
+        assertTrue(waves.accept("root", 5, "a", 1));
+        assertTrue(waves.accept("root", 6, "a", 1));
+    }
+
+    @Test
+    public void accept_sequenceWrapsAround() {
+        DiscoveryWaves waves = new DiscoveryWaves();
+
+        assertTrue(waves.accept("root", Integer.MAX_VALUE, "a", 0));
+        assertTrue(waves.accept("root", Integer.MIN_VALUE, "a", 0));
+        assertFalse(waves.accept("root", Integer.MAX_VALUE, "a", 0));
+    }
+
+    @Test
+    public void accept_keepsTheWavesOfEachRoot() {
+        DiscoveryWaves waves = new DiscoveryWaves();
+
+        assertTrue(waves.accept("root1", 5, "a", 0));
+        assertTrue(waves.accept("root2", 1, "a", 0));
+        assertFalse(waves.accept("root1", 4, "a", 0));
+    }
+
+    @Test
+    public void clear_forgetsTheWaves() {
+        DiscoveryWaves waves = new DiscoveryWaves();
+        waves.accept("root", 5, "a", 0);
+        waves.clear();
+
+        assertTrue(waves.accept("root", 5, "a", 0));
+    }
+}
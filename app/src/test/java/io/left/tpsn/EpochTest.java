@@ -0,0 +1,125 @@
+package io.left.tpsn;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the sync epochs, the runs of the root.
+ */
+public class EpochTest {
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private final TpsnMessageFactory factory = new TpsnMessageFactory();
+    private final List<String> messages = new CopyOnWriteArrayList<>();
+    private TpsnSyncManager node;
+    private TpsnTransport parent;
+    private TpsnTransport other;
+
+    @Before
+    public void setUp() {
+        LoopbackNetwork network = new LoopbackNetwork();
+        node = new TpsnSyncManager(network.addNode("node", DIRECT), factory,
+                new ManualScheduler());
+        parent = network.addNode("parent", DIRECT);
+        other = network.addNode("other", DIRECT);
+        network.connect("node", "parent");
+        network.connect("node", "other");
+        node.registerEventListener(new ClockSyncManager.EventListener() {
+            @Override
+            public void clockSyncOffsetChanged(long clockOffset) {
+            }
+
+            @Override
+            public void debugMessagereceived(String debugMessage) {
+                messages.add(debugMessage);
+            }
+        });
+    }
+
+    @Test
+    public void newEpoch_dropsTheTreeOfThePreviousRun() throws TransportException {
+        assertTrue(node.start());
+        sendLevelDiscovery(parent, 0, 100);
+        assertTrue(hasMessageStartingWith("Selected parent parent with level 0"));
+
+        //A farther node is no parent candidate in the same run
+        sendLevelDiscovery(other, 2, 100);
+        assertFalse(hasMessageStartingWith("Selected parent other"));
+
+        //In the new run the node joins the tree from scratch
+        sendLevelDiscovery(other, 2, 101);
+        assertTrue(hasMessageStartingWith("Selected parent other with level 2"));
+    }
+
+    @Test
+    public void newEpoch_dropsTheFramesOfThePreviousRun() throws TransportException {
+        assertTrue(node.start());
+        sendLevelDiscovery(other, 2, 101);
+        messages.clear();
+
+        sendLevelDiscovery(parent, 0, 100);
+        assertFalse(hasMessageStartingWith("Selected parent"));
+    }
+
+    @Test
+    public void restoredEpoch_dropsTheStaleRuns() throws IOException, TransportException {
+        File file = File.createTempFile("tpsn_state", null);
+        SyncStateStore store = new SyncStateStore(file);
+        try {
+            long monotonicNow = 7000000000000L;
+            store.save(new SyncState(System.currentTimeMillis(), monotonicNow, 0, 0, 3, 1,
+                    "parent", 100));
+            node.setMonotonicClock(new MonotonicClock() {
+                @Override
+                public long nanoTime() {
+                    return 7000000000000L;
+                }
+            });
+            node.setStateStore(store);
+            assertTrue(node.start());
+
+            //A node without the epoch would take 99 and then see 100 as a new run
+            sendLevelDiscovery(other, 0, 99);
+            sendLevelDiscovery(other, 0, 100);
+            assertFalse(hasMessageStartingWith("New sync epoch"));
+            sendLevelDiscovery(other, 0, 101);
+            assertTrue(hasMessageStartingWith("New sync epoch 101"));
+        } finally {
+            store.clear();
+            new File(file.getPath() + ".links").delete();
+        }
+    }
+
+    private void sendLevelDiscovery(TpsnTransport sender, int level, int epoch)
+            throws TransportException {
+        BaseTpsnMessage msg = factory.createMessage(TpsnMessageType.LEVEL_DISCOVERY);
+        msg.setDomainId(TpsnSyncManager.DEFAULT_DOMAIN);
+        msg.setEpoch(epoch);
+        msg.setLevel(level);
+        msg.setWave(sender.getOwnId(), epoch);
+        sender.send("node", factory.encode(msg));
+    }
+
+    private boolean hasMessageStartingWith(String prefix) {
+        for (String message : messages) {
+            if (message.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
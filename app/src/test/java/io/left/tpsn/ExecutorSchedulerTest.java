@@ -0,0 +1,76 @@
+package io.left.tpsn;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests of the timeouts the runner hands to the serial executors of the nodes.
+ */
+public class ExecutorSchedulerTest {
+
+    private final ManualScheduler scheduler = new ManualScheduler();
+    //Holds the fired timeouts like a busy node's serial executor
+    private final Queue<Runnable> queued = new ArrayDeque<>();
+    private int runs = 0;
+
+    private final TpsnScheduler.Timeout timeout = new TpsnNodeRunner.ExecutorScheduler(scheduler,
+            new Executor() {
+                @Override
+                public void execute(Runnable command) {
+                    queued.add(command);
+                }
+            }).newTimeout(new Runnable() {
+                @Override
+                public void run() {
+                    runs++;
+                }
+            });
+
+    @Test
+    public void firedTimeout_runsOnTheExecutor() {
+        timeout.schedule(10);
+        scheduler.advance(10);
+        assertEquals(0, runs);
+
+        runQueued();
+        assertEquals(1, runs);
+    }
+
+    @Test
+    public void cancelAfterFire_discardsTheQueuedTask() {
+        timeout.schedule(10);
+        scheduler.advance(10);
+        assertEquals(1, queued.size());
+
+        timeout.cancel();
+        runQueued();
+        assertEquals(0, runs);
+    }
+
+    @Test
+    public void rescheduleAfterFire_runsTheNewScheduleOnly() {
+        timeout.schedule(10);
+        scheduler.advance(10);
+        timeout.schedule(20);
+        runQueued();
+        assertEquals(0, runs);
+
+        scheduler.advance(20);
+        runQueued();
+        assertEquals(1, runs);
+        scheduler.advance(100);
+        runQueued();
+        assertEquals(1, runs);
+    }
+
+    private void runQueued() {
+        Runnable task;
+        while ((task = queued.poll()) != null) {
+            task.run();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package io.left.tpsn;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the timing wheel scheduler.
+ */
+public class HashedWheelSchedulerTest {
+
+    private final HashedWheelScheduler scheduler = new HashedWheelScheduler(10, 4);
+
+    @After
+    public void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void schedule_runsTheTimeoutsInTheDeadlineOrder() throws InterruptedException {
+        final List<Integer> order = new CopyOnWriteArrayList<>();
+        final CountDownLatch done = new CountDownLatch(3);
+        long[] delays = {150, 50, 100};
+        for (int i = 0; i < delays.length; i++) {
+            final int index = i;
+            scheduler.newTimeout(new Runnable() {
+                @Override
+                public void run() {
+                    order.add(index);
+                    done.countDown();
+                }
+            }).schedule(delays[i]);
+        }
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(1, (int) order.get(0));
+        assertEquals(2, (int) order.get(1));
+        assertEquals(0, (int) order.get(2));
+    }
+
+    @Test
+    public void schedule_waitsTheTurnsOfALongTimeout() throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(1);
+        long start = System.nanoTime();
+        //Longer than the 40 ms turn of the wheel
+        scheduler.newTimeout(latchTask(done)).schedule(200);
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 200);
+    }
+
+    @Test
+    public void cancel_dropsTheTimeout() throws InterruptedException {
+        CountDownLatch cancelled = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+        TpsnScheduler.Timeout timeout = scheduler.newTimeout(latchTask(cancelled));
+        timeout.schedule(50);
+        timeout.cancel();
+        scheduler.newTimeout(latchTask(done)).schedule(100);
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(1, cancelled.getCount());
+    }
+
+    @Test
+    public void emptyWheel_parksTheThread() throws InterruptedException {
+        waitForParked();
+
+        CountDownLatch done = new CountDownLatch(1);
+        scheduler.newTimeout(latchTask(done)).schedule(20);
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        waitForParked();
+    }
+
+    @Test
+    public void schedule_wakesTheThreadSleepingToALaterDeadline() throws InterruptedException {
+        CountDownLatch late = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+        scheduler.newTimeout(latchTask(late)).schedule(60 * 1000);
+        Thread.sleep(50);
+        assertFalse(scheduler.isParked());
+
+        long start = System.nanoTime();
+        scheduler.newTimeout(latchTask(done)).schedule(20);
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000);
+        assertEquals(1, late.getCount());
+    }
+
+    private void waitForParked() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!scheduler.isParked()) {
+            assertTrue("The thread isn't parked.", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private static Runnable latchTask(final CountDownLatch latch) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                latch.countDown();
+            }
+        };
+    }
+}
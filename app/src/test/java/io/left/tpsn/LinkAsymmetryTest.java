@@ -0,0 +1,79 @@
+package io.left.tpsn;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the link asymmetry estimation.
+ */
+public class LinkAsymmetryTest {
+
+    @Test
+    public void addSample_singlePathKeepsNoCorrection() {
+        LinkAsymmetry asymmetry = new LinkAsymmetry();
+        asymmetry.addSample("a", 1000, 100, 0);
+
+        assertEquals(0, asymmetry.getCorrection("a"));
+        assertEquals(0, asymmetry.getCorrection("unknown"));
+    }
+
+    @Test
+    public void addSample_deviationWithinTheCandidateErrorsIsNoAsymmetry() {
+        LinkAsymmetry asymmetry = new LinkAsymmetry();
+        //The candidates' own clocks are 10 ms apart, within their errors
+        for (int i = 0; i < 50; i++) {
+            asymmetry.addSample("a", 1000 + i, 100, 5);
+            asymmetry.addSample("b", 1000 + i, 110, 6);
+        }
+
+        assertEquals(0, asymmetry.getCorrection("a"));
+        assertEquals(0, asymmetry.getCorrection("b"));
+    }
+
+    @Test
+    public void addSample_correctsTheDeviationBeyondTheErrors() {
+        LinkAsymmetry asymmetry = new LinkAsymmetry();
+        for (int i = 0; i < 100; i++) {
+            asymmetry.addSample("a", 1000 + i, 100, 2);
+            asymmetry.addSample("b", 1000 + i, 140, 2);
+        }
+
+        //The deviation 20 from the mean 120, less the link error 2 and the mean error 2
+        assertEquals(-16, asymmetry.getCorrection("a"));
+        assertEquals(16, asymmetry.getCorrection("b"));
+    }
+
+    @Test
+    public void addSample_ignoresTheOutdatedSamples() {
+        LinkAsymmetry asymmetry = new LinkAsymmetry();
+        asymmetry.addSample("a", 1000, 100, 0);
+        asymmetry.addSample("b", 1000 + LinkAsymmetry.MAX_SAMPLE_AGE + 1, 200, 0);
+
+        assertEquals(0, asymmetry.getCorrection("b"));
+    }
+
+    @Test
+    public void writeTo_readFrom_keepsTheCorrections() throws IOException {
+        LinkAsymmetry asymmetry = new LinkAsymmetry();
+        for (int i = 0; i < 100; i++) {
+            asymmetry.addSample("a", 1000 + i, 100, 0);
+            asymmetry.addSample("b", 1000 + i, 140, 0);
+        }
+        assertTrue(asymmetry.getCorrection("b") > 0);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        asymmetry.writeTo(new DataOutputStream(bytes));
+        LinkAsymmetry restored = new LinkAsymmetry();
+        restored.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        assertEquals(asymmetry.getCorrection("a"), restored.getCorrection("a"));
+        assertEquals(asymmetry.getCorrection("b"), restored.getCorrection("b"));
+    }
+}
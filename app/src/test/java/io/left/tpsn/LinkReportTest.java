@@ -0,0 +1,88 @@
+package io.left.tpsn;
+
+import java.util.concurrent.Executor;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the link reports of the bidirectional exchange mode.
+ */
+public class LinkReportTest {
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private static final TpsnConfig FAST = TpsnConfig.DEFAULT.withTreeConstructionTime(500)
+            .withRandomIntervalBound(200).withTimeout(2000);
+
+    private final TpsnNodeRunner runner = new TpsnNodeRunner(new TpsnMessageFactory(), 2);
+
+    @After
+    public void tearDown() throws InterruptedException {
+        runner.shutdown(1000);
+    }
+
+    @Test
+    public void firstExchange_isReportedToTheParent() throws InterruptedException {
+        TpsnSyncManager root = addNode("root", true);
+        TpsnSyncManager child = addNode("child", false);
+        child.setLinkReports(true);
+        TpsnSyncManager silent = addNode("silent", false);
+        runner.connect("child", "root");
+        runner.connect("silent", "root");
+
+        runner.start();
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!root.getChildLinks().containsKey("child")
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+
+        assertTrue(child.getSnapshot().isSynchronized());
+        ChildLinkQuality quality = root.getChildLinks().get("child");
+        assertNotNull(quality);
+        assertEquals(1, root.getChildLinks().size());
+        assertFalse(root.getChildLinks().containsKey("silent"));
+    }
+
+    @Test
+    public void childFloodingItsNewLevel_isDroppedFromTheLinks() throws TransportException {
+        TpsnMessageFactory factory = new TpsnMessageFactory();
+        LoopbackNetwork network = new LoopbackNetwork();
+        TpsnSyncManager parent = new TpsnSyncManager(network.addNode("parent", DIRECT), factory,
+                new ManualScheduler());
+        parent.isRoot(true);
+        TpsnTransport child = network.addNode("child", DIRECT);
+        network.connect("parent", "child");
+        assertTrue(parent.start());
+
+        BaseTpsnMessage report = factory.createMessage(TpsnMessageType.LINK_REPORT);
+        report.setDomainId(TpsnSyncManager.DEFAULT_DOMAIN);
+        report.setLevel(1);
+        report.setRoundTripDelay(4);
+        child.send("parent", factory.encode(report));
+        assertTrue(parent.getChildLinks().containsKey("child"));
+
+        //The child moved below another node and floods its neighbors with its new level
+        BaseTpsnMessage discovery = factory.createMessage(TpsnMessageType.LEVEL_DISCOVERY);
+        discovery.setDomainId(TpsnSyncManager.DEFAULT_DOMAIN);
+        discovery.setLevel(2);
+        child.send("parent", factory.encode(discovery));
+        assertFalse(parent.getChildLinks().containsKey("child"));
+    }
+
+    private TpsnSyncManager addNode(String nodeId, boolean root) {
+        TpsnSyncManager node = runner.addNode(nodeId, root);
+        node.setConfig(FAST);
+        return node;
+    }
+}
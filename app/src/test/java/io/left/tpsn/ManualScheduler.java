@@ -0,0 +1,82 @@
+package io.left.tpsn;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Scheduler driven by the test, the timeouts run when the test advances the time.
+ */
+final class ManualScheduler implements TpsnScheduler {
+
+    private final List<ManualTimeout> timeouts = new ArrayList<>();
+    private long time = 0;
+
+    @Override
+    public synchronized Timeout newTimeout(Runnable task) {
+        ManualTimeout timeout = new ManualTimeout(task);
+        timeouts.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * Returns the current time of the scheduler.
+     *
+     * @return  The time in ms.
+     */
+    synchronized long getTime() {
+        return time;
+    }
+
+    /**
+     * Advances the time, running the timeouts that elapse in order.
+     *
+     * @param delay The time to advance by, in ms.
+     */
+    void advance(long delay) {
+        long end;
+        synchronized (this) {
+            end = time + delay;
+        }
+        while (true) {
+            ManualTimeout next = null;
+            synchronized (this) {
+                for (ManualTimeout timeout : timeouts) {
+                    if (timeout.deadline >= 0 && timeout.deadline <= end
+                            && (next == null || timeout.deadline < next.deadline)) {
+                        next = timeout;
+                    }
+                }
+                if (next == null) {
+                    time = end;
+                    return;
+                }
+                time = next.deadline;
+                next.deadline = -1;
+            }
+            next.task.run();
+        }
+    }
+
+    private final class ManualTimeout implements Timeout {
+        private final Runnable task;
+        private long deadline = -1;
+
+        ManualTimeout(Runnable task) {
+            this.task = task;
+        }
+
+        @Override
+        public void schedule(long delay) {
+            synchronized (ManualScheduler.this) {
+                deadline = time + Math.max(delay, 0);
+            }
+        }
+
+        @Override
+        public void cancel() {
+            synchronized (ManualScheduler.this) {
+                deadline = -1;
+            }
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package io.left.tpsn;
+
+import java.util.Random;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the two-way and the Kalman offset estimators.
+ */
+public class OffsetEstimatorTest {
+
+    private static final long SYNC_PERIOD = 10 * 1000;
+    //The parent's clock runs 50 ppm faster
+    private static final double DRIFT = 50e-6;
+
+    @Test
+    public void twoWay_takesTheLastExchange() {
+        OffsetEstimator estimator = TwoWayOffsetEstimator.FACTORY.create();
+        estimator.addSample(1000, 100, 20);
+        assertEquals(100, estimator.getOffset());
+        assertEquals(10, estimator.getError());
+        assertEquals(0, estimator.getSkew(), 0);
+
+        estimator.addSample(11000, 101, 6);
+        assertEquals(101, estimator.getOffset());
+        assertEquals(3, estimator.getError());
+        assertEquals(1e-4, estimator.getSkew(), 1e-12);
+
+        estimator.reset();
+        assertEquals(0, estimator.getOffset());
+        assertEquals(0, estimator.getSkew(), 0);
+    }
+
+    @Test
+    public void kalman_convergesOnADriftingOffset() {
+        OffsetEstimator estimator = KalmanOffsetEstimator.FACTORY.create();
+        Random random = new Random(1);
+
+        long localTime = 0;
+        long trueOffset = 0;
+        for (int i = 0; i < 200; i++) {
+            localTime += SYNC_PERIOD;
+            trueOffset = 500 + Math.round(DRIFT * localTime);
+            //The measurement is off by at most the half of the round trip delay
+            long roundTripDelay = 2 + random.nextInt(30);
+            long sample = trueOffset + random.nextInt((int) roundTripDelay + 1)
+                    - roundTripDelay / 2;
+            estimator.addSample(localTime, sample, roundTripDelay);
+        }
+
+        assertEquals(DRIFT, estimator.getSkew(), 5e-6);
+        assertTrue(Math.abs(estimator.getOffset() - trueOffset) <= estimator.getError());
+        //Far below the 8 ms error of a single exchange on average
+        assertTrue(estimator.getError() < 8);
+    }
+
+    @Test
+    public void kalman_restartsOnAClockJump() {
+        OffsetEstimator estimator = new KalmanOffsetEstimator();
+        for (int i = 1; i <= 20; i++) {
+            estimator.addSample(i * SYNC_PERIOD, 100, 4);
+        }
+
+        estimator.addSample(21 * SYNC_PERIOD, 5000, 4);
+
+        assertEquals(5000, estimator.getOffset());
+        assertEquals(0, estimator.getSkew(), 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void kalman_rejectsANegativeNoise() {
+        new KalmanOffsetEstimator(-1, KalmanOffsetEstimator.DEFAULT_SKEW_NOISE);
+    }
+}
@@ -0,0 +1,145 @@
+package io.left.tpsn;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests of the offset history segments and conversions.
+ */
+public class OffsetHistoryTest {
+
+    @Test
+    public void add_closesThePreviousSegmentWithItsSkew() {
+        OffsetHistory history = new OffsetHistory(4);
+        assertEquals(0, history.add(1000, 100, 5));
+        //Predicted 100 at the skew 0, the residual is the whole change
+        assertEquals(10, history.add(2000, 110, 5));
+
+        assertEquals(0.01, history.getSkew(1500), 1e-12);
+        assertEquals(105, history.getOffset(1500));
+        //The last segment extrapolates the skew of the previous one
+        assertEquals(120, history.getOffset(3000));
+        assertEquals(0, history.add(3000, 120, 5));
+    }
+
+    @Test
+    public void getOffset_beforeTheFirstSegmentUsesTheFirstOffset() {
+        OffsetHistory history = new OffsetHistory(4);
+        history.add(1000, 100, 5);
+        history.add(2000, 200, 6);
+
+        assertEquals(100, history.getOffset(0));
+        assertEquals(0, history.getSkew(0), 0);
+        assertEquals(5, history.getError(0));
+        assertEquals(6, history.getError(2500));
+    }
+
+    @Test
+    public void add_evictsTheOldestSegmentsWhenFull() {
+        OffsetHistory history = new OffsetHistory(2);
+        history.add(1000, 100, 1);
+        history.add(2000, 200, 1);
+        history.add(3000, 300, 1);
+
+        assertEquals(2, history.size());
+        //The segment of 1000 was evicted, the oldest kept one starts at 2000
+        assertEquals(200, history.getOffset(1500));
+    }
+
+    @Test
+    public void add_dropsTheSegmentsAfterABackwardClockJump() {
+        OffsetHistory history = new OffsetHistory(4);
+        history.add(1000, 100, 1);
+        history.add(2000, 200, 1);
+        history.add(3000, 300, 1);
+        history.add(1500, 150, 1);
+
+        assertEquals(2, history.size());
+        //The segments of 2000 and 3000 are gone, 1500 extrapolates the skew 50 / 500
+        assertEquals(250, history.getOffset(2500));
+    }
+
+    @Test
+    public void toSyncedTime_convertsUnsortedTimestamps() {
+        OffsetHistory history = new OffsetHistory(4);
+        history.add(1000, 100, 1);
+        history.add(2000, 110, 1);
+
+        long[] timeStamps = {0, 2500, 1500, 1000};
+        history.toSyncedTime(timeStamps, 0, 4);
+
+        assertArrayEquals(new long[] {100, 2500 + 115, 1500 + 105, 1000 + 100}, timeStamps);
+    }
+
+    @Test
+    public void writeTo_readFrom_keepsTheSegments() throws IOException {
+        OffsetHistory history = new OffsetHistory(4);
+        history.add(1000, 100, 1);
+        history.add(2000, 110, 2);
+        history.add(4000, 130, 3);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        history.writeTo(new DataOutputStream(bytes));
+        OffsetHistory restored = new OffsetHistory(4);
+        restored.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        assertEquals(3, restored.size());
+        for (long localTime = 0; localTime < 6000; localTime += 250) {
+            assertEquals(history.getOffset(localTime), restored.getOffset(localTime));
+            assertEquals(history.getSkew(localTime), restored.getSkew(localTime), 0);
+            assertEquals(history.getError(localTime), restored.getError(localTime));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_rejectsZeroCapacity() {
+        new OffsetHistory(0);
+    }
+
+    @Test
+    public void nanoTimeToSyncedTime_mapsNanoTimesThroughTheHistory() {
+        OffsetHistory history = new OffsetHistory(4);
+        history.add(1000, 50, 1);
+
+        long[] nanoTimes = {9000000000L, 9500000000L};
+        history.nanoTimeToSyncedTime(nanoTimes, 0, 2, 2000, 10000000000L);
+
+        assertArrayEquals(new long[] {1000 + 50, 1500 + 50}, nanoTimes);
+    }
+
+    @Test
+    public void nanoTimeToSyncedTime_badRangeLeavesTheInputIntact() {
+        OffsetHistory history = new OffsetHistory(4);
+        history.add(1000, 50, 1);
+
+        long[] nanoTimes = {1, 2, 3};
+        try {
+            history.nanoTimeToSyncedTime(nanoTimes, 1, 4, 2000, 10000000000L);
+            fail("The range is out of the array.");
+        } catch (ArrayIndexOutOfBoundsException expected) {
+            assertArrayEquals(new long[] {1, 2, 3}, nanoTimes);
+        }
+    }
+
+    @Test(expected = ArrayIndexOutOfBoundsException.class)
+    public void toSyncedTime_rejectsReversedRange() {
+        new OffsetHistory(4).toSyncedTime(new long[2], 2, 1);
+    }
+
+    @Test
+    public void toSyncedTime_emptyHistoryKeepsTheTimestamps() {
+        long[] timeStamps = {10, 20};
+        new OffsetHistory(4).toSyncedTime(timeStamps, 0, 2);
+
+        assertEquals(10, timeStamps[0]);
+        assertEquals(20, timeStamps[1]);
+    }
+}
@@ -0,0 +1,110 @@
+package io.left.tpsn;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the pacing of the fan-out sends.
+ */
+public class PacedSenderTest {
+
+    private final TpsnMessageFactory factory = new TpsnMessageFactory();
+    private final ManualScheduler scheduler = new ManualScheduler();
+    private final List<String> sent = new CopyOnWriteArrayList<>();
+
+    private final PacedSender sender = new PacedSender(scheduler, new PacedSender.Sink() {
+        @Override
+        public void send(String peerId, BaseTpsnMessage message, byte[] data, long queueDelay) {
+            sent.add(peerId);
+        }
+    });
+
+    @Test
+    public void noWindow_sendsTheBurstAtOnceInOrder() {
+        sender.send(Arrays.asList("a", "b", "c"), message(TpsnMessageType.TIME_SYNC), null, 0);
+
+        assertEquals(Arrays.asList("a", "b", "c"), sent);
+    }
+
+    @Test
+    public void burst_isSpreadAcrossTheWindow() throws InterruptedException {
+        //Due at 0, 500, 1000 and 1500 ms
+        sender.send(Arrays.asList("a", "b", "c", "d"), message(TpsnMessageType.TIME_SYNC),
+                null, 2000);
+        assertEquals(1, sent.size());
+
+        Thread.sleep(600);
+        scheduler.advance(600);
+        assertEquals(2, sent.size());
+
+        Thread.sleep(1000);
+        scheduler.advance(1000);
+        assertEquals(Arrays.asList("a", "b", "c", "d"), sent);
+    }
+
+    @Test
+    public void acks_overtakeTheQueuedMessages() throws InterruptedException {
+        sender.send(Arrays.asList("a", "b", "c"), message(TpsnMessageType.LEVEL_DISCOVERY),
+                null, 300);
+        sender.send(Arrays.asList("d"), message(TpsnMessageType.TIME_SYNC), null, 300);
+        sender.send(Arrays.asList("e"), message(TpsnMessageType.ACK), null, 300);
+
+        Thread.sleep(400);
+        scheduler.advance(400);
+
+        assertEquals(Arrays.asList("a", "e", "d", "b", "c"), sent);
+    }
+
+    @Test
+    public void clear_stopsTheDrainerInTheSink() throws InterruptedException {
+        final CountDownLatch inSink = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final PacedSender blocking = new PacedSender(scheduler, new PacedSender.Sink() {
+            @Override
+            public void send(String peerId, BaseTpsnMessage message, byte[] data,
+                             long queueDelay) {
+                sent.add(peerId);
+                if (peerId.equals("a")) {
+                    inSink.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        });
+        Thread drainer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                blocking.send(Arrays.asList("a", "b"), message(TpsnMessageType.ACK), null, 0);
+            }
+        });
+        drainer.start();
+        assertTrue(inSink.await(1000, TimeUnit.MILLISECONDS));
+
+        blocking.clear();
+        blocking.send(Arrays.asList("c", "d"), message(TpsnMessageType.ACK), null, 200);
+        Thread.sleep(300);
+        release.countDown();
+        drainer.join();
+
+        //The old drainer neither sends the cleared message nor the due one of the new burst
+        assertEquals(Arrays.asList("a", "c"), sent);
+        scheduler.advance(200);
+        assertEquals(Arrays.asList("a", "c", "d"), sent);
+    }
+
+    private BaseTpsnMessage message(TpsnMessageType type) {
+        BaseTpsnMessage msg = factory.createMessage(type);
+        msg.setDomainId(TpsnSyncManager.DEFAULT_DOMAIN);
+        return msg;
+    }
+}
@@ -0,0 +1,196 @@
+package io.left.tpsn;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the parent selection by the expected clock error.
+ * The node under test talks to scripted peers, which answer only what the test sends.
+ */
+public class ParentSelectionTest {
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private static final long RANDOM_DELAY = TpsnConfig.DEFAULT.getRandomIntervalBound();
+
+    private final TpsnMessageFactory factory = new TpsnMessageFactory();
+    private final LoopbackNetwork network = new LoopbackNetwork();
+    private final ManualScheduler scheduler = new ManualScheduler();
+    private final List<String> messages = new CopyOnWriteArrayList<>();
+    private TpsnSyncManager node;
+
+    @Before
+    public void setUp() {
+        node = new TpsnSyncManager(network.addNode("node", DIRECT), factory, scheduler);
+        node.registerEventListener(new ClockSyncManager.EventListener() {
+            @Override
+            public void clockSyncOffsetChanged(long clockOffset) {
+            }
+
+            @Override
+            public void debugMessagereceived(String debugMessage) {
+                messages.add(debugMessage);
+            }
+        });
+    }
+
+    @Test
+    public void deeperParent_winsWithALowerExpectedError() throws TransportException {
+        Peer deep = new Peer("deep");
+        Peer close = new Peer("close");
+        assertTrue(node.start());
+
+        //Error 2 + the half of 4 ms round trip, against 0 + the half of 200 ms
+        deep.sendLevelDiscovery(1, 2, 4);
+        close.sendLevelDiscovery(0, 0, 200);
+
+        assertTrue(hasMessageStartingWith("Selected parent deep with level 1"));
+        assertTrue(hasMessageStartingWith("Ignoring closer parent close"));
+        assertFalse(hasMessageStartingWith("Selected parent close"));
+    }
+
+    @Test
+    public void clearlyBetterParent_makesTheOldParentAnAlternate() throws TransportException {
+        Peer root = new Peer("root");
+        Peer old = new Peer("old");
+        Peer better = new Peer("better");
+        assertTrue(node.start());
+
+        old.sendLevelDiscovery(1, 30, 20);
+        better.sendLevelDiscovery(1, 2, 4);
+        assertTrue(hasMessageStartingWith("Selected parent better with level 1"));
+
+        //The Ack of the root to the new parent starts the node's sync phase
+        root.sendAck("better", 0);
+        scheduler.advance(RANDOM_DELAY);
+        better.answerPulse();
+        assertTrue(node.getSnapshot().isSynchronized());
+
+        //The old parent is probed as an alternate one
+        scheduler.advance(RANDOM_DELAY);
+        assertEquals(1, old.countPulses());
+    }
+
+    @Test
+    public void switchToAProbedCandidate_syncsWithItsAck() throws TransportException {
+        Peer parent = new Peer("parent");
+        Peer candidate = new Peer("candidate");
+        assertTrue(node.start());
+
+        parent.sendLevelDiscovery(0, 0, 20);
+        candidate.sendLevelDiscovery(0, 0, 20);
+        parent.sendTimeSync();
+        scheduler.advance(RANDOM_DELAY);
+        parent.answerPulse();
+        scheduler.advance(RANDOM_DELAY);
+        assertEquals(1, candidate.countPulses());
+
+        //The probe is still outstanding when the candidate becomes the parent
+        candidate.sendLevelDiscovery(0, 0, 2);
+        assertTrue(hasMessageStartingWith("Selected parent candidate with level 0"));
+        scheduler.advance(RANDOM_DELAY);
+        assertEquals(2, candidate.countPulses());
+        messages.clear();
+        candidate.answerPulse();
+
+        assertTrue(messages.contains("Received ACK message that was addressed to me."));
+        assertFalse(hasMessageStartingWith("Probed parent candidate"));
+    }
+
+    private boolean hasMessageStartingWith(String prefix) {
+        for (String message : messages) {
+            if (message.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A scripted peer of the node, it records the received messages.
+     */
+    private final class Peer {
+        private final TpsnTransport transport;
+        private final List<BaseTpsnMessage> received = new CopyOnWriteArrayList<>();
+
+        Peer(String peerId) {
+            transport = network.addNode(peerId, DIRECT);
+            network.connect("node", peerId);
+            transport.setReceiver(new TpsnTransport.Receiver() {
+                @Override
+                public void onDataReceived(String peerId, byte[] data, long receiveTime) {
+                    BaseTpsnMessage msg = factory.decode(data);
+                    if (msg != null) {
+                        received.add(msg);
+                    }
+                }
+            });
+        }
+
+        void sendLevelDiscovery(int level, long error, long roundTripDelay)
+                throws TransportException {
+            BaseTpsnMessage msg = newMessage(TpsnMessageType.LEVEL_DISCOVERY, level);
+            msg.setError(error);
+            msg.setRoundTripDelay(roundTripDelay);
+            transport.send("node", factory.encode(msg));
+        }
+
+        void sendTimeSync() throws TransportException {
+            transport.send("node", factory.encode(newMessage(TpsnMessageType.TIME_SYNC, 0)));
+        }
+
+        void sendAck(String receiverId, long timeStamp1) throws TransportException {
+            long time = System.currentTimeMillis();
+            BaseTpsnMessage msg = newMessage(TpsnMessageType.ACK, 1);
+            msg.setTimeStamp1(timeStamp1);
+            msg.setTimeStamp2(time);
+            msg.setTimeStamp3(time);
+            msg.setReceiverId(receiverId);
+            msg.setError(2);
+            transport.send("node", factory.encode(msg));
+        }
+
+        /**
+         * Answers the last Sync-Pulse received.
+         */
+        void answerPulse() throws TransportException {
+            BaseTpsnMessage pulse = null;
+            for (BaseTpsnMessage msg : received) {
+                if (msg.getType() == TpsnMessageType.SYNC_PULSE) {
+                    pulse = msg;
+                }
+            }
+            assertTrue(pulse != null);
+            sendAck("node", pulse.getTimeStamp1());
+        }
+
+        int countPulses() {
+            int count = 0;
+            for (BaseTpsnMessage msg : received) {
+                if (msg.getType() == TpsnMessageType.SYNC_PULSE) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        private BaseTpsnMessage newMessage(TpsnMessageType type, int level) {
+            BaseTpsnMessage msg = factory.createMessage(type);
+            msg.setDomainId(TpsnSyncManager.DEFAULT_DOMAIN);
+            msg.setLevel(level);
+            return msg;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package io.left.tpsn;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the application frames carrying the Tpsn timestamps.
+ */
+public class PiggybackFrameTest {
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private static final byte[] PAYLOAD = {1, 2, 3};
+
+    @Test
+    public void wrap_keepsTheHeaderAndThePayload() {
+        byte[] frame = PiggybackFrame.wrap(TpsnSyncManager.BACKBONE_DOMAIN, 1234567,
+                -1L, Long.MAX_VALUE, 1500000000000L, PAYLOAD);
+
+        assertTrue(PiggybackFrame.isFrame(frame));
+        assertEquals(PiggybackFrame.HEADER_LENGTH + PAYLOAD.length, frame.length);
+        assertEquals(TpsnSyncManager.BACKBONE_DOMAIN, PiggybackFrame.getDomainId(frame));
+        assertEquals(1234567, PiggybackFrame.getEpoch(frame));
+        assertEquals(-1L, PiggybackFrame.getOriginTime(frame));
+        assertEquals(Long.MAX_VALUE, PiggybackFrame.getReceiveTime(frame));
+        assertEquals(1500000000000L, PiggybackFrame.getTransmitTime(frame));
+        assertEquals(3, frame[PiggybackFrame.HEADER_LENGTH + 2]);
+    }
+
+    @Test
+    public void isFrame_rejectsOtherData() {
+        assertFalse(PiggybackFrame.isFrame(null));
+        assertFalse(PiggybackFrame.isFrame(new byte[PiggybackFrame.HEADER_LENGTH - 1]));
+        byte[] tpsnFrame = TpsnFrame.wrap(0, 1, new byte[PiggybackFrame.HEADER_LENGTH]);
+        assertFalse(PiggybackFrame.isFrame(tpsnFrame));
+        assertTrue(PiggybackFrame.isFrame(PiggybackFrame.wrap(0, 0, 0, 0, 1, new byte[0])));
+    }
+
+    @Test
+    public void peers_exchangeTheFourTimestamps() {
+        PiggybackPeer child = new PiggybackPeer();
+        PiggybackPeer parent = new PiggybackPeer();
+
+        byte[] request = child.stamp(0, 7, 1000, 10, PAYLOAD);
+        assertNull(parent.receive(request, 1105, 0));
+        byte[] answer = parent.stamp(0, 7, 1110, 0, PAYLOAD);
+        long[] timeStamps = child.receive(answer, 1020, 10);
+
+        assertArrayEquals(new long[] {1000, 1105, 1110, 1020}, timeStamps);
+        //Each sent frame is answered once
+        assertNull(child.receive(answer, 1030, 10));
+    }
+
+    @Test
+    public void peers_dropTheAnswerAfterAnOffsetChange() {
+        PiggybackPeer child = new PiggybackPeer();
+        PiggybackPeer parent = new PiggybackPeer();
+
+        parent.receive(child.stamp(0, 7, 1000, 10, PAYLOAD), 1105, 0);
+        byte[] answer = parent.stamp(0, 7, 1110, 0, PAYLOAD);
+
+        assertNull(child.receive(answer, 1025, 15));
+    }
+
+    @Test
+    public void offsetChangeBetweenReceiveAndAnswer_isNotAnswered() {
+        PiggybackPeer child = new PiggybackPeer();
+        PiggybackPeer parent = new PiggybackPeer();
+
+        parent.receive(child.stamp(0, 7, 1000, 10, PAYLOAD), 1105, 0);
+        byte[] answer = parent.stamp(0, 7, 1115, 5, PAYLOAD);
+
+        assertEquals(0, PiggybackFrame.getOriginTime(answer));
+        assertNull(child.receive(answer, 1020, 10));
+    }
+
+    @Test
+    public void otherDomainFrame_isDeliveredWithoutItsTimestamps() throws TransportException {
+        LoopbackNetwork network = new LoopbackNetwork();
+        TpsnSyncManager node = new TpsnSyncManager(network.addNode("node", DIRECT),
+                new TpsnMessageFactory(), new ManualScheduler());
+        TpsnTransport peer = network.addNode("peer", DIRECT);
+        network.connect("node", "peer");
+        final List<byte[]> payloads = new CopyOnWriteArrayList<>();
+        node.setApplicationDataListener(new TpsnSyncManager.ApplicationDataListener() {
+            @Override
+            public void applicationDataReceived(String peerId, byte[] payload) {
+                payloads.add(payload);
+            }
+        });
+        final List<byte[]> frames = new CopyOnWriteArrayList<>();
+        peer.setReceiver(new TpsnTransport.Receiver() {
+            @Override
+            public void onDataReceived(String peerId, byte[] data, long receiveTime) {
+                frames.add(data);
+            }
+        });
+        assertTrue(node.start());
+
+        peer.send("node", PiggybackFrame.wrap(5, 0, 0, 0, 4321, PAYLOAD));
+        node.sendApplicationData("peer", PAYLOAD);
+
+        assertEquals(1, payloads.size());
+        assertArrayEquals(PAYLOAD, payloads.get(0));
+        //The frame of another domain isn't answered
+        byte[] answer = frames.get(frames.size() - 1);
+        assertEquals(0, PiggybackFrame.getOriginTime(answer));
+        assertEquals(TpsnSyncManager.DEFAULT_DOMAIN, PiggybackFrame.getDomainId(answer));
+    }
+}
@@ -0,0 +1,119 @@
+package io.left.tpsn;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the seqlocked shared clock file.
+ */
+public class SharedClockTest {
+
+    private static final int READERS = 3;
+    private static final long RUN_TIME = 1000;
+
+    private File file;
+    private SharedClockPublisher publisher;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("tpsn_clock", null);
+        publisher = new SharedClockPublisher(file);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        publisher.close();
+        file.delete();
+    }
+
+    @Test
+    public void publish_isReadWithAllTheFields() throws IOException {
+        SharedClockReader reader = new SharedClockReader(file);
+        assertFalse(reader.getSnapshot().isSynchronized());
+
+        publisher.publish(new ClockSnapshot(1000, 10, 30, 500, 4, 100, true).withSkew(2e-5), 7);
+        ClockSnapshot snapshot = reader.getSnapshot();
+
+        assertTrue(snapshot.isSynchronized());
+        assertEquals(1000, snapshot.getAnchor());
+        assertEquals(10, snapshot.getStartOffset());
+        assertEquals(30, snapshot.getOffset());
+        assertEquals(500, snapshot.getSlewRatePpm());
+        assertEquals(4, snapshot.getError());
+        assertEquals(100, snapshot.getDriftPpm());
+        assertEquals(2e-5, reader.getSkew(), 0);
+        assertEquals(7, reader.getEpoch());
+    }
+
+    @Test
+    public void concurrentReads_seeNoTornSnapshots() throws Exception {
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final AtomicReference<String> failure = new AtomicReference<>();
+        final AtomicLong reads = new AtomicLong();
+
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                //All the fields of a snapshot derive from one counter
+                for (long i = 1; running.get(); i++) {
+                    publisher.publish(new ClockSnapshot(i, i, i, i, i, i, true)
+                            .withSkew((i % 1000) * 1e-7), (int) i);
+                }
+            }
+        });
+
+        Thread[] readers = new Thread[READERS];
+        for (int r = 0; r < READERS; r++) {
+            final SharedClockReader reader = new SharedClockReader(file);
+            readers[r] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    long last = 0;
+                    while (running.get()) {
+                        ClockSnapshot snapshot = reader.getSnapshot();
+                        long i = snapshot.getAnchor();
+                        if (i == 0) {
+                            continue;
+                        }
+                        if (snapshot.getStartOffset() != i || snapshot.getOffset() != i
+                                || snapshot.getSlewRatePpm() != i || snapshot.getError() != i
+                                || snapshot.getDriftPpm() != i
+                                || snapshot.getSkew() != (i % 1000) * 1e-7) {
+                            failure.compareAndSet(null, "Torn snapshot of " + i);
+                        }
+                        if (i < last) {
+                            failure.compareAndSet(null, "Snapshot " + i + " after " + last);
+                        }
+                        last = i;
+                        reads.incrementAndGet();
+                    }
+                }
+            });
+        }
+
+        writer.start();
+        for (Thread reader : readers) {
+            reader.start();
+        }
+        Thread.sleep(RUN_TIME);
+        running.set(false);
+        writer.join();
+        for (Thread reader : readers) {
+            reader.join();
+        }
+
+        assertNull(failure.get());
+        assertTrue(reads.get() > 0);
+    }
+}
@@ -0,0 +1,77 @@
+package io.left.tpsn;
+
+import java.util.concurrent.Executor;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests of the sync health summaries and their aggregation from the children's reports.
+ */
+public class SyncHealthTest {
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private final TpsnMessageFactory factory = new TpsnMessageFactory();
+
+    @Test
+    public void merge_keepsAllTheNodes() {
+        SyncHealth health = SyncHealth.ofNode(1, 4, true)
+                .merge(SyncHealth.ofNode(3, 10, true))
+                .merge(SyncHealth.ofNode(5, 100, false))
+                .merge(SyncHealth.EMPTY);
+
+        assertEquals(3, health.getNodeCount());
+        assertEquals(1, health.getUnsynchronizedCount());
+        assertEquals(3, health.getMaxLevel());
+        assertEquals(10, health.getMaxError());
+        assertEquals(14, health.getErrorSum());
+        assertEquals(7, health.getMeanError());
+    }
+
+    @Test
+    public void merge_ofUnsynchronizedNodesHasNoMeanError() {
+        SyncHealth health = SyncHealth.ofNode(2, SyncedTime.UNKNOWN_ERROR, true)
+                .merge(SyncHealth.ofNode(2, 5, false));
+
+        assertEquals(2, health.getUnsynchronizedCount());
+        assertEquals(0, health.getMaxLevel());
+        assertEquals(SyncedTime.UNKNOWN_ERROR, health.getMeanError());
+    }
+
+    @Test
+    public void healthReports_ofTheChildrenOnlyAreAggregated() throws TransportException {
+        LoopbackNetwork network = new LoopbackNetwork();
+        TpsnSyncManager node = new TpsnSyncManager(network.addNode("node", DIRECT), factory,
+                new ManualScheduler());
+        TpsnTransport child = network.addNode("child", DIRECT);
+        TpsnTransport stranger = network.addNode("stranger", DIRECT);
+        network.connect("node", "child");
+        network.connect("node", "stranger");
+        node.start();
+        int ownCount = node.getSyncHealth().getNodeCount();
+
+        sendHealthReport(child, "node", new SyncHealth(3, 0, 4, 20, 30));
+        sendHealthReport(stranger, "other", new SyncHealth(5, 0, 4, 20, 50));
+        assertEquals(ownCount + 3, node.getSyncHealth().getNodeCount());
+
+        //The child has switched to another parent
+        sendHealthReport(child, "other", new SyncHealth(3, 0, 4, 20, 30));
+        assertEquals(ownCount, node.getSyncHealth().getNodeCount());
+    }
+
+    private void sendHealthReport(TpsnTransport sender, String parentId, SyncHealth health)
+            throws TransportException {
+        BaseTpsnMessage msg = factory.createMessage(TpsnMessageType.HEALTH_REPORT);
+        msg.setDomainId(TpsnSyncManager.DEFAULT_DOMAIN);
+        msg.setLevel(2);
+        msg.setHealth(health);
+        msg.setReceiverId(parentId);
+        sender.send("node", factory.encode(msg));
+    }
+}
@@ -0,0 +1,146 @@
+package io.left.tpsn;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the persisted sync state and its restore.
+ */
+public class SyncStateTest {
+
+    private static final long SLEEP = 10 * 60 * 1000;
+    private static final long OFFSET = 1234;
+    private static final int EPOCH = 77;
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private File file;
+    private SyncStateStore store;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("tpsn_state", null);
+        store = new SyncStateStore(file);
+    }
+
+    @After
+    public void tearDown() {
+        store.clear();
+        new File(file.getPath() + ".links").delete();
+    }
+
+    @Test
+    public void getElapsedTime_acceptsAgreeingClocks() {
+        SyncState state = new SyncState(1000, 5000000000L, OFFSET, 0, 3, 2, "parent", EPOCH);
+
+        assertEquals(SLEEP, state.getElapsedTime(1000 + SLEEP,
+                5000000000L + SLEEP * 1000000, 1000));
+    }
+
+    @Test
+    public void getElapsedTime_rejectsAMonotonicClockStoppedInTheSleep() {
+        SyncState state = new SyncState(1000, 5000000000L, OFFSET, 0, 3, 2, "parent", EPOCH);
+
+        assertEquals(-1, state.getElapsedTime(1000 + SLEEP, 5000000000L + 1000000, 1000));
+    }
+
+    @Test
+    public void getElapsedTime_rejectsAReboot() {
+        SyncState state = new SyncState(1000, 5000000000L, OFFSET, 0, 3, 2, "parent", EPOCH);
+
+        assertEquals(-1, state.getElapsedTime(1000 + SLEEP, 1000000, 1000));
+    }
+
+    @Test
+    public void writeTo_readFrom_keepsTheState() throws IOException {
+        SyncState state = new SyncState(1000, 2000, OFFSET, 1e-5, 3, 2, null, EPOCH);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        state.writeTo(new DataOutputStream(bytes));
+        SyncState read = SyncState.readFrom(
+                new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        assertEquals(1000, read.getWallTime());
+        assertEquals(OFFSET, read.getOffset());
+        assertEquals(1e-5, read.getSkew(), 0);
+        assertEquals(3, read.getError());
+        assertEquals(2, read.getLevel());
+        assertNull(read.getParentId());
+        assertEquals(EPOCH, read.getEpoch());
+    }
+
+    @Test
+    public void setStateStore_restoresAfterADeviceSleep() throws IOException {
+        long monotonicNow = 7000000000000L;
+        store.save(new SyncState(System.currentTimeMillis() - SLEEP,
+                monotonicNow - SLEEP * 1000000, OFFSET, 0, 3, 2, "parent", EPOCH));
+
+        TpsnSyncManager manager = newManager();
+        manager.setMonotonicClock(fixedClock(monotonicNow));
+        manager.setStateStore(store);
+
+        assertTrue(manager.hasRestoredState());
+        assertEquals(OFFSET, manager.getClockOffset());
+    }
+
+    @Test
+    public void setStateStore_dropsAStateOfAnotherBoot() throws IOException {
+        store.save(new SyncState(System.currentTimeMillis() - SLEEP, 1000000, OFFSET, 0, 3, 2,
+                "parent", EPOCH));
+
+        TpsnSyncManager manager = newManager();
+        manager.setMonotonicClock(fixedClock(2000000));
+        manager.setStateStore(store);
+
+        assertFalse(manager.hasRestoredState());
+        assertNull(store.load());
+    }
+
+    @Test
+    public void setStateStore_keepsTheLiveStateWhileRunning() throws IOException {
+        long monotonicNow = 7000000000000L;
+        store.save(new SyncState(System.currentTimeMillis(), monotonicNow, OFFSET, 0, 3, 2,
+                "parent", EPOCH));
+
+        TpsnSyncManager manager = newManager();
+        manager.setMonotonicClock(fixedClock(monotonicNow));
+        assertTrue(manager.start());
+        manager.setStateStore(store);
+
+        assertFalse(manager.hasRestoredState());
+        assertEquals(0, manager.getClockOffset());
+        assertEquals(store, manager.getStateStore());
+    }
+
+    private static TpsnSyncManager newManager() {
+        LoopbackNetwork network = new LoopbackNetwork();
+        return new TpsnSyncManager(network.addNode("node", DIRECT), new TpsnMessageFactory(),
+                new ManualScheduler());
+    }
+
+    private static MonotonicClock fixedClock(final long nanoTime) {
+        return new MonotonicClock() {
+            @Override
+            public long nanoTime() {
+                return nanoTime;
+            }
+        };
+    }
+}
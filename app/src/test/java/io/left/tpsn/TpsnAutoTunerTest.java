@@ -0,0 +1,61 @@
+package io.left.tpsn;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the online tuning of the protocol timing.
+ */
+public class TpsnAutoTunerTest {
+
+    private final TpsnAutoTuner tuner = new TpsnAutoTuner();
+
+    @Test
+    public void tune_keepsTheConfigurationWithoutObservations() {
+        assertSame(TpsnConfig.DEFAULT, tuner.tune(TpsnConfig.DEFAULT));
+    }
+
+    @Test
+    public void timeout_followsTheRoundTripDelays() {
+        for (int i = 0; i < 100; i++) {
+            tuner.onRoundTripDelay(1000);
+        }
+
+        long timeout = tuner.tune(TpsnConfig.DEFAULT).getTimeout();
+        assertTrue(timeout >= 2000 && timeout < 2100);
+    }
+
+    @Test
+    public void retransmits_followTheLossRateOfEnoughPulses() {
+        for (int i = 0; i < 4; i++) {
+            tuner.onPulseSent();
+            tuner.onPulseTimeout();
+        }
+        TpsnConfig config = tuner.tune(TpsnConfig.DEFAULT);
+        assertEquals(TpsnConfig.DEFAULT.getRetransmits(), config.getRetransmits());
+
+        //The pulses are counted across the periods
+        tuner.onPulseSent();
+        config = tuner.tune(config);
+        //A loss rate of 0.2 needs 5 retransmits for the 0.1% dead parent error
+        assertEquals(5, config.getRetransmits());
+    }
+
+    @Test
+    public void randomInterval_growsWithTheCollisions() {
+        tuner.onRoundTripDelay(100);
+        for (int i = 0; i < 5; i++) {
+            tuner.onPulseSent();
+            tuner.onSiblingAck("sibling", true);
+        }
+
+        TpsnConfig config = tuner.tune(TpsnConfig.DEFAULT);
+
+        //Two children, 100 ms round trip and the doubled spread factor
+        assertEquals(2 * 100 * 8, config.getRandomIntervalBound());
+        assertEquals(2, config.getRetransmits());
+    }
+}
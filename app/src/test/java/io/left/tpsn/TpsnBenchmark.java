@@ -0,0 +1,110 @@
+package io.left.tpsn;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The long running benchmarks, they run with {@code ./gradlew test -Pbenchmark} only.
+ */
+@Category(Benchmark.class)
+public class TpsnBenchmark {
+
+    private static final int NODES = 1000;
+    private static final int FAN_OUT = 4;
+    private static final long SYNC_DEADLINE = 60 * 1000;
+
+    private static final long READ_TIME = 1000;
+    //Far below the about 20M reads a second of a desktop JVM
+    private static final long MIN_READS_PER_SECOND = 1000000;
+
+    private final TpsnNodeRunner runner = new TpsnNodeRunner(new TpsnMessageFactory());
+
+    @After
+    public void tearDown() throws InterruptedException {
+        runner.shutdown(1000);
+    }
+
+    /**
+     * A thousand nodes in a four-ary tree, all in one process, synchronize within a minute
+     * with the default configuration.
+     */
+    @Test
+    public void thousandNodes_synchronizeWithinAMinute() throws InterruptedException {
+        List<TpsnSyncManager> nodes = new ArrayList<>(NODES);
+        for (int i = 0; i < NODES; i++) {
+            nodes.add(runner.addNode("n" + i, i == 0));
+        }
+        for (int i = 1; i < NODES; i++) {
+            runner.connect("n" + i, "n" + ((i - 1) / FAN_OUT));
+        }
+
+        long start = System.currentTimeMillis();
+        runner.start();
+        int synced = 0;
+        while (synced < NODES && System.currentTimeMillis() - start < SYNC_DEADLINE) {
+            Thread.sleep(200);
+            synced = 0;
+            for (TpsnSyncManager node : nodes) {
+                if (node.getSnapshot().isSynchronized()) {
+                    synced++;
+                }
+            }
+        }
+
+        assertEquals(NODES, synced);
+        assertTrue(System.currentTimeMillis() - start <= SYNC_DEADLINE);
+        //All the nodes share the local clock, each offset must be within its error bound
+        long rootOffset = nodes.get(0).getClockOffset();
+        for (TpsnSyncManager node : nodes) {
+            long deviation = Math.abs(node.getClockOffset() - rootOffset);
+            long errorBound = node.getSnapshot().getErrorBound(System.currentTimeMillis());
+            assertTrue("deviation " + deviation + " > error bound " + errorBound,
+                    deviation <= errorBound + 1);
+        }
+    }
+
+    /**
+     * A thread reads the shared clock without system calls or locks.
+     */
+    @Test
+    public void sharedClockReads_needNoSystemCalls() throws IOException {
+        File file = File.createTempFile("tpsn_clock", null);
+        SharedClockPublisher publisher = new SharedClockPublisher(file);
+        try {
+            long publishTime = System.currentTimeMillis();
+            publisher.publish(new ClockSnapshot(publishTime, 10, 4, 100, true), 1);
+            SharedClockReader reader = new SharedClockReader(file);
+
+            //Warms up the JIT, then measures now() on an unchanged snapshot
+            long latest = 0;
+            for (int i = 0; i < 1000000; i++) {
+                latest = Math.max(latest, reader.now());
+            }
+            long reads = 0;
+            long start = System.nanoTime();
+            long end = start + READ_TIME * 1000000;
+            long current = start;
+            while (current < end) {
+                for (int i = 0; i < 1000; i++) {
+                    latest = Math.max(latest, reader.now());
+                }
+                reads += 1000;
+                current = System.nanoTime();
+            }
+
+            assertTrue(latest >= publishTime + 10);
+            assertTrue(reads * 1000000000L / (current - start) >= MIN_READS_PER_SECOND);
+        } finally {
+            publisher.close();
+            file.delete();
+        }
+    }
+}
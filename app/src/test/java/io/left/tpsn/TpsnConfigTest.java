@@ -0,0 +1,58 @@
+package io.left.tpsn;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Tests of the protocol timing configuration.
+ */
+public class TpsnConfigTest {
+
+    @Test
+    public void with_changesOneParameterOnly() {
+        TpsnConfig config = TpsnConfig.DEFAULT.withTimeout(2000).withRetransmits(7);
+
+        assertEquals(TpsnConfig.DEFAULT.getTreeConstructionTime(),
+                config.getTreeConstructionTime());
+        assertEquals(TpsnConfig.DEFAULT.getRandomIntervalBound(),
+                config.getRandomIntervalBound());
+        assertEquals(2000, config.getTimeout());
+        assertEquals(7, config.getRetransmits());
+    }
+
+    @Test
+    public void equals_comparesTheParameters() {
+        TpsnConfig config = TpsnConfig.DEFAULT.withTimeout(2000);
+
+        assertEquals(config, TpsnConfig.DEFAULT.withTimeout(2000));
+        assertEquals(config.hashCode(), TpsnConfig.DEFAULT.withTimeout(2000).hashCode());
+        assertFalse(config.equals(TpsnConfig.DEFAULT));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_rejectsANonPositiveTime() {
+        TpsnConfig.DEFAULT.withRandomIntervalBound(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_rejectsATimeAboveTheMaximum() {
+        TpsnConfig.DEFAULT.withTreeConstructionTime(TpsnConfig.MAX_TIME + 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_rejectsNoRetransmits() {
+        TpsnConfig.DEFAULT.withRetransmits(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_rejectsTooManyRetransmits() {
+        TpsnConfig.DEFAULT.withRetransmits(TpsnConfig.MAX_RETRANSMITS + 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_rejectsANegativePacingWindow() {
+        TpsnConfig.DEFAULT.withPacingWindow(-1);
+    }
+}
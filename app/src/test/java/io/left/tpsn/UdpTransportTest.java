@@ -0,0 +1,80 @@
+package io.left.tpsn;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of two nodes synchronizing over UDP sockets on the loopback interface.
+ */
+public class UdpTransportTest {
+
+    private static final TpsnConfig CONFIG = TpsnConfig.DEFAULT
+            .withTreeConstructionTime(500)
+            .withRandomIntervalBound(50);
+    private static final long SYNC_DEADLINE = 10 * 1000;
+
+    private final TpsnMessageFactory factory = new TpsnMessageFactory();
+    private UdpTransport rootTransport;
+    private UdpTransport childTransport;
+    private TpsnSyncManager root;
+    private TpsnSyncManager child;
+
+    @Before
+    public void setUp() throws IOException {
+        InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+        rootTransport = new UdpTransport("root", address);
+        childTransport = new UdpTransport("child", address);
+        rootTransport.addPeer("child", childTransport.getLocalAddress());
+        childTransport.addPeer("root", rootTransport.getLocalAddress());
+    }
+
+    @After
+    public void tearDown() {
+        if (root != null) {
+            root.shutdown();
+        }
+        if (child != null) {
+            child.shutdown();
+        }
+        rootTransport.close();
+        childTransport.close();
+    }
+
+    @Test
+    public void peers_areTheAddedNeighbors() {
+        assertEquals("child", rootTransport.getNextHopPeer("child"));
+        assertNull(rootTransport.getNextHopPeer("other"));
+        assertTrue(rootTransport.getPeers().contains("child"));
+        assertEquals(1, rootTransport.getPeers().size());
+    }
+
+    @Test
+    public void twoNodes_synchronizeOverUdp() throws InterruptedException {
+        root = new TpsnSyncManager(rootTransport, factory);
+        root.isRoot(true);
+        root.setConfig(CONFIG);
+        child = new TpsnSyncManager(childTransport, factory);
+        child.setConfig(CONFIG);
+
+        assertTrue(child.start());
+        assertTrue(root.start());
+        long start = System.currentTimeMillis();
+        while (!child.getSnapshot().isSynchronized()
+                && System.currentTimeMillis() - start < SYNC_DEADLINE) {
+            Thread.sleep(50);
+        }
+
+        assertTrue(child.getSnapshot().isSynchronized());
+        //Both nodes share the local clock, the offset must be within the error bound
+        long errorBound = child.getSnapshot().getErrorBound(System.currentTimeMillis());
+        assertTrue(Math.abs(child.getClockOffset()) <= errorBound + 1);
+    }
+}